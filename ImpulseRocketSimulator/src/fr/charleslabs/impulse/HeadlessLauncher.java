@@ -0,0 +1,126 @@
+package fr.charleslabs.impulse;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.rocket.motor.MotorDataBase;
+import fr.charleslabs.impulse.simulation.BatchSimulation;
+import fr.charleslabs.impulse.simulation.FlightConfiguration;
+import fr.charleslabs.impulse.simulation.FlightRecorder;
+import fr.charleslabs.impulse.simulation.FlightResult;
+import fr.charleslabs.impulse.simulation.HeadlessSimulation;
+import fr.charleslabs.impulse.simulation.TelemetryReader;
+import fr.charleslabs.impulse.simulation.TelemetryWriter;
+
+/**
+ * Command line launcher that runs flights without the user
+ * interface, and reports the simulation throughput.
+ * <br><br>
+ * Usage: HeadlessLauncher [number of flights] [motor name] [batch | record [file]]
+ * <br>
+ * With "batch", the flights are simulated all at once by the
+ * BatchSimulation engine. With "record", every step of the first
+ * flight is streamed in a file (default: flight.imt, compressed
+ * telemetry; CSV if the name ends with .csv). If this flight fails,
+ * its last seconds are also dumped in the current directory by a
+ * FlightRecorder.
+ *
+ * @author Charles Grassin
+ */
+public final class HeadlessLauncher {
+	/** Duration dumped when a recorded flight fails, in s. */
+	private static final double FAILURE_DUMP_DURATION = 5;
+
+	public static void main(String[] args) throws Exception {
+		final int flights = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+		final String motorName = (args.length > 1) ? args[1]
+				: MotorDataBase.getInstance().getMotorList()[0];
+		final FlightConfiguration configuration = new FlightConfiguration(motorName);
+		if (args.length > 2 && args[2].equals("batch")) {
+			runBatch(flights, motorName, configuration);
+			return;
+		}
+		final File recordFile = (args.length > 2 && args[2].equals("record"))
+				? new File((args.length > 3) ? args[3] : "flight.imt") : null;
+
+		double simulatedTime = 0;
+		long wallTime = 0;
+		for (int i = 0; i < flights; i++) {
+			final FlightResult result = (i == 0 && recordFile != null)
+					? runRecorded(configuration, recordFile)
+					: HeadlessSimulation.run(configuration);
+			simulatedTime += result.getFlightTime();
+			wallTime += result.getWallTime();
+			if (i == 0)
+				System.out.println(motorName + ": " + result);
+		}
+		System.out.println(String.format(
+				"%d flight(s), %.1f simulated s in %.3f s (%.0f simulated s/s)",
+				flights, simulatedTime, wallTime / 1000000000.0d,
+				simulatedTime / (wallTime / 1000000000.0d)));
+	}
+
+	/** Simulates a flight and streams every step of it in a telemetry
+	 * file (exported to CSV afterwards for a .csv file). Only the last
+	 * seconds are kept in memory, by a flight recorder that dumps them
+	 * if the flight fails. */
+	private static FlightResult runRecorded(
+			final FlightConfiguration configuration, final File file)
+			throws Exception {
+		final boolean isCsv = file.getName().endsWith(".csv");
+		final File telemetryFile = isCsv ? File.createTempFile("flight",
+				".imt") : file;
+		try {
+			final Rocket rocket = configuration.buildRocket();
+			final FlightRecorder recorder = new FlightRecorder(rocket,
+					FlightRecorder.getCapacity(FAILURE_DUMP_DURATION,
+							configuration.getEngineFrequency()));
+			recorder.setAutoDump(new File("."), FAILURE_DUMP_DURATION);
+			final FlightResult result;
+			final long records;
+			try (TelemetryWriter writer = new TelemetryWriter(
+					new FileOutputStream(telemetryFile), rocket,
+					TelemetryWriter.FULL_PRECISION)) {
+				result = HeadlessSimulation.run(rocket, configuration,
+						recorder, writer);
+				records = writer.getRecordCount();
+			}
+			if (isCsv)
+				try (TelemetryReader reader = new TelemetryReader(telemetryFile);
+						OutputStream out = new BufferedOutputStream(
+								new FileOutputStream(file))) {
+					reader.exportCsv(null, Double.NEGATIVE_INFINITY,
+							Double.POSITIVE_INFINITY, 17, out);
+				}
+			System.out.println(String.format("%d steps recorded in %s",
+					records, file));
+			return result;
+		} finally {
+			if (isCsv)
+				telemetryFile.delete();
+		}
+	}
+
+	/** Simulates the flights in a single BatchSimulation. */
+	private static void runBatch(final int flights, final String motorName,
+			final FlightConfiguration configuration) throws Exception {
+		final FlightConfiguration[] configurations = new FlightConfiguration[flights];
+		for (int i = 0; i < flights; i++)
+			configurations[i] = configuration;
+		final BatchSimulation batch = new BatchSimulation(configurations);
+		final FlightResult[] results = batch.run();
+
+		double simulatedTime = 0;
+		for (FlightResult result : results)
+			simulatedTime += result.getFlightTime();
+		System.out.println(motorName + ": " + results[0]);
+		System.out.println(String.format(
+				"%d flight(s) in batch, %.1f simulated s in %.3f s (%.0f simulated s/s, %.0f rocket steps/s)",
+				flights, simulatedTime, batch.getWallTime() / 1000000000.0d,
+				simulatedTime / (batch.getWallTime() / 1000000000.0d),
+				batch.getRocketStepsPerSecond()));
+	}
+}
@@ -9,7 +9,6 @@ import fr.charleslabs.impulse.ui.UserInterface;
 
 //---
 // Before next release:
-//TODO Aerodynamic forces simulation
 //TODO Save/Load rocket
 //TODO Sensor simulation
 //TODO Graphical rocket creator (?)
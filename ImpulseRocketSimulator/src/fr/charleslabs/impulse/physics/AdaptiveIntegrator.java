@@ -0,0 +1,45 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * An integrator with an embedded error estimate, which lets the
+ * PhysicsEngine adapt its time step: large steps while the motion
+ * is smooth, small steps during the transients.
+ * <br><br>
+ * When the engine is not in real time mode, it tries a step with
+ * {@link #attempt(PhysicalObject, double, double)}, rejects it
+ * (and restores the objects) if the error is too large, and gets
+ * the next step size from {@link #getNextStep(double, double)}.
+ * 
+ * @author Charles Grassin
+ */
+public interface AdaptiveIntegrator extends Integrator {
+	/**
+	 * Advances the motion of an object by one step, and estimates the
+	 * local error of the step.
+	 * 
+	 * @param object The object to move.
+	 * @param currentT The time since epoch at the end of the step.
+	 * @param deltaT The duration of the step.
+	 * @return The error of the step, normalized by the tolerances: the
+	 * step is acceptable if it is below or equal to 1.
+	 */
+	public double attempt(final PhysicalObject object, final double currentT,
+			final double deltaT);
+
+	/**
+	 * Computes the size of the next step (or of the next attempt, if
+	 * the step is rejected).
+	 * 
+	 * @param deltaT The size of the step that has just been attempted.
+	 * @param error The normalized error of that step.
+	 * @return The new step size, within the step bounds.
+	 */
+	public double getNextStep(final double deltaT, final double error);
+
+	/** Returns the smallest allowed step, in s. A step of this size is
+	 * always accepted. */
+	public double getMinStep();
+
+	/** Returns the largest allowed step, in s. */
+	public double getMaxStep();
+}
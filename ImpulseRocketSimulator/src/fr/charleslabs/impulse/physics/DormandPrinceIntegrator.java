@@ -0,0 +1,156 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * The Dormand-Prince 5(4) embedded Runge-Kutta scheme (the method
+ * behind ode45). Each step costs seven force evaluations, and gives
+ * a fifth order solution along with a fourth order one: their
+ * difference is the error estimate that drives the step size.
+ * <br><br>
+ * Used with a fixed step (real time mode), it behaves as a plain
+ * fifth order Runge-Kutta scheme.
+ * 
+ * @author Charles Grassin
+ */
+public class DormandPrinceIntegrator implements AdaptiveIntegrator {
+	// Step size controller
+	private static final double SAFETY = 0.9, MIN_FACTOR = 0.2,
+			MAX_FACTOR = 5;
+
+	// Butcher tableau
+	private static final double C2 = 1.0 / 5, C3 = 3.0 / 10, C4 = 4.0 / 5,
+			C5 = 8.0 / 9;
+	private static final double A21 = 1.0 / 5;
+	private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+	private static final double A41 = 44.0 / 45, A42 = -56.0 / 15,
+			A43 = 32.0 / 9;
+	private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187,
+			A53 = 64448.0 / 6561, A54 = -212.0 / 729;
+	private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33,
+			A63 = 46732.0 / 5247, A64 = 49.0 / 176, A65 = -5103.0 / 18656;
+	private static final double B1 = 35.0 / 384, B3 = 500.0 / 1113,
+			B4 = 125.0 / 192, B5 = -2187.0 / 6784, B6 = 11.0 / 84;
+	// Difference between the fifth and the fourth order weights
+	private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695,
+			E4 = 71.0 / 1920, E5 = -17253.0 / 339200, E6 = 22.0 / 525,
+			E7 = -1.0 / 40;
+
+	// Layout of the object's scratch array
+	private static final int N = PhysicalObject.STATE_SIZE;
+	private static final int INITIAL = 0, STAGE = N, K1 = 2 * N, K2 = 3 * N,
+			K3 = 4 * N, K4 = 5 * N, K5 = 6 * N, K6 = 7 * N, K7 = 8 * N;
+
+	private final double absoluteTolerance, relativeTolerance;
+	private double minStep = 1e-6, maxStep = 0.1;
+
+	/**
+	 * Constructs a Dormand-Prince integrator.
+	 * 
+	 * @param absoluteTolerance The absolute error tolerance (in m, m/s,
+	 * degrees or degrees/s, depending on the state component).
+	 * @param relativeTolerance The error tolerance relative to the
+	 * magnitude of each state component.
+	 */
+	public DormandPrinceIntegrator(final double absoluteTolerance,
+			final double relativeTolerance) {
+		this.absoluteTolerance = absoluteTolerance;
+		this.relativeTolerance = relativeTolerance;
+	}
+
+	@Override
+	public void integrate(final PhysicalObject object, final double currentT,
+			final double deltaT) {
+		attempt(object, currentT, deltaT);
+	}
+
+	@Override
+	public double attempt(final PhysicalObject object, final double currentT,
+			final double deltaT) {
+		final double[] b = object.getIntegrationBuffer(9 * N);
+		final double startT = currentT - deltaT, h = deltaT;
+		object.getState(b, INITIAL);
+
+		object.getDerivative(startT, h, b, K1);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * A21 * b[K1 + i];
+		object.setState(b, STAGE);
+
+		object.getDerivative(startT + C2 * h, h, b, K2);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * (A31 * b[K1 + i] + A32 * b[K2 + i]);
+		object.setState(b, STAGE);
+
+		object.getDerivative(startT + C3 * h, h, b, K3);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * (A41 * b[K1 + i] + A42 * b[K2 + i]
+					+ A43 * b[K3 + i]);
+		object.setState(b, STAGE);
+
+		object.getDerivative(startT + C4 * h, h, b, K4);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * (A51 * b[K1 + i] + A52 * b[K2 + i]
+					+ A53 * b[K3 + i] + A54 * b[K4 + i]);
+		object.setState(b, STAGE);
+
+		object.getDerivative(startT + C5 * h, h, b, K5);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * (A61 * b[K1 + i] + A62 * b[K2 + i]
+					+ A63 * b[K3 + i] + A64 * b[K4 + i] + A65 * b[K5 + i]);
+		object.setState(b, STAGE);
+
+		object.getDerivative(currentT, h, b, K6);
+		for (int i = 0; i < N; i++)
+			b[STAGE + i] = b[INITIAL + i] + h * (B1 * b[K1 + i] + B3 * b[K3 + i]
+					+ B4 * b[K4 + i] + B5 * b[K5 + i] + B6 * b[K6 + i]);
+		object.setState(b, STAGE);
+
+		// Last evaluation, at the new state: leaves its accelerations in
+		// the motion matrices and gives the error estimate
+		object.getDerivative(currentT, h, b, K7);
+		double error = 0;
+		for (int i = 0; i < N; i++) {
+			final double localError = h * (E1 * b[K1 + i] + E3 * b[K3 + i]
+					+ E4 * b[K4 + i] + E5 * b[K5 + i] + E6 * b[K6 + i] + E7 * b[K7 + i]);
+			final double scale = absoluteTolerance + relativeTolerance
+					* Math.max(Math.abs(b[INITIAL + i]), Math.abs(b[STAGE + i]));
+			error += (localError / scale) * (localError / scale);
+		}
+		object.normalizeAttitude();
+		return Math.sqrt(error / N);
+	}
+
+	@Override
+	public double getNextStep(final double deltaT, final double error) {
+		final double factor = (error == 0) ? MAX_FACTOR : Math.min(MAX_FACTOR,
+				Math.max(MIN_FACTOR, SAFETY * Math.pow(error, -0.2)));
+		return Math.min(maxStep, Math.max(minStep, deltaT * factor));
+	}
+
+	// --- Getters and Setters ---
+	@Override
+	public double getMinStep() {
+		return minStep;
+	}
+
+	/** Sets the smallest allowed step, in s. */
+	public void setMinStep(final double minStep) {
+		this.minStep = minStep;
+	}
+
+	@Override
+	public double getMaxStep() {
+		return maxStep;
+	}
+
+	/** Sets the largest allowed step, in s. */
+	public void setMaxStep(final double maxStep) {
+		this.maxStep = maxStep;
+	}
+
+	public double getAbsoluteTolerance() {
+		return absoluteTolerance;
+	}
+
+	public double getRelativeTolerance() {
+		return relativeTolerance;
+	}
+}
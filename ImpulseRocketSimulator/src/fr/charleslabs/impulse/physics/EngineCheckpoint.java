@@ -0,0 +1,67 @@
+package fr.charleslabs.impulse.physics;
+
+import java.util.List;
+
+/**
+ * The full state of a PhysicsEngine at a given time: the simulation
+ * time, the adaptive step size, and the state of every object
+ * (motion matrices, gimbal, controller...), packed in a single
+ * array. Immutable.
+ * <br><br>
+ * A checkpoint can be restored in the engine it comes from, to go
+ * back in time, or in another engine whose objects are built the
+ * same way, to fork the simulation.
+ * 
+ * @author Charles Grassin
+ */
+public final class EngineCheckpoint {
+	/** Simulation time (time since ignition), in s. */
+	private final double time;
+	/** Size of the next adaptive step, in s. */
+	private final double adaptiveDeltaT;
+	/** Number of values of each object. */
+	private final int[] objectSizes;
+	/** The values of all the objects, one after the other. */
+	private final double[] data;
+
+	EngineCheckpoint(final double time, final double adaptiveDeltaT,
+			final int[] objectSizes, final double[] data) {
+		this.time = time;
+		this.adaptiveDeltaT = adaptiveDeltaT;
+		this.objectSizes = objectSizes;
+		this.data = data;
+	}
+
+	/** Checks whether the checkpoint fits the objects of an engine. */
+	boolean isCompatible(final List<PhysicalObject> objects) {
+		if (objects.size() != objectSizes.length)
+			return false;
+		for (int i = 0; i < objectSizes.length; i++)
+			if (objects.get(i).getCheckpointSize() != objectSizes[i])
+				return false;
+		return true;
+	}
+
+	double getAdaptiveDeltaT() {
+		return adaptiveDeltaT;
+	}
+
+	double[] getData() {
+		return data;
+	}
+
+	// --- Getters ---
+	/** Returns the simulation time of the checkpoint, in s. */
+	public double getTime() {
+		return time;
+	}
+
+	public int getObjectCount() {
+		return objectSizes.length;
+	}
+
+	/** Returns the number of values stored (8 bytes each). */
+	public int getSize() {
+		return data.length;
+	}
+}
@@ -0,0 +1,202 @@
+package fr.charleslabs.impulse.physics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects and locates the PhysicsEvents of an engine. After each
+ * step, the event functions are evaluated; on a sign change, the
+ * crossing time is located inside the step with the Illinois
+ * variant of the regula falsi, by integrating the object again
+ * from the beginning of the step with a shorter step.
+ * 
+ * @author Charles Grassin
+ */
+final class EventLocator {
+	/** Maximum number of iterations to locate a crossing. */
+	private static final int MAX_ITERATIONS = 100;
+
+	private final List<PhysicalObject> eventObjects = new ArrayList<PhysicalObject>();
+	private final List<PhysicsEvent> events = new ArrayList<PhysicsEvent>();
+	/** Values of the event functions at the end of the previous step. */
+	private double[] previousValues = new double[0];
+	/** Crossing times (NaN if no crossing) during the current step. */
+	private double[] crossingTimes = new double[0];
+	/** States of the objects at the beginning and end of the step. */
+	private double[] startStates, endStates;
+	/** Tolerance on the time of the events, in s. */
+	private double tolerance = 1e-9;
+
+	/** Registers an event on an object. */
+	void add(final PhysicalObject object, final PhysicsEvent event) {
+		eventObjects.add(object);
+		events.add(event);
+		previousValues = new double[events.size()];
+		crossingTimes = new double[events.size()];
+	}
+
+	/** Removes all the events. */
+	void clear() {
+		eventObjects.clear();
+		events.clear();
+		previousValues = new double[0];
+		crossingTimes = new double[0];
+	}
+
+	boolean isEmpty() {
+		return events.isEmpty();
+	}
+
+	/** Resets the events and evaluates them in the initial state. */
+	void init(final double currentT) {
+		for (int k = 0; k < events.size(); k++) {
+			events.get(k).reset();
+			previousValues[k] = events.get(k).evaluate(eventObjects.get(k), currentT);
+		}
+	}
+
+	/** Saves the state of the objects at the beginning of a step. */
+	void saveStart(final List<PhysicalObject> objects) {
+		startStates = saveStates(objects, startStates);
+	}
+
+	/**
+	 * Checks the events at the end of a step, and handles the ones that
+	 * occurred during the step, in chronological order. If a terminal
+	 * event occurred, all the objects are moved back to its time.
+	 * 
+	 * @param objects The objects of the engine.
+	 * @param integrator The integrator used for the step.
+	 * @param startT The time at the beginning of the step.
+	 * @param endT The time at the end of the step.
+	 * @return The time of the terminal event, or NaN if the step went on
+	 * until its end.
+	 */
+	double handleStep(final List<PhysicalObject> objects,
+			final Integrator integrator, final double startT, final double endT) {
+		final double deltaT = endT - startT;
+		boolean crossing = false;
+		for (int k = 0; k < events.size(); k++) {
+			final double value = events.get(k).evaluate(eventObjects.get(k), endT);
+			crossingTimes[k] = Double.NaN;
+			if (events.get(k).isCrossing(previousValues[k], value)) {
+				crossing = true;
+				crossingTimes[k] = value;
+			}
+		}
+		if (!crossing) {
+			for (int k = 0; k < events.size(); k++)
+				previousValues[k] = events.get(k).evaluate(eventObjects.get(k), endT);
+			return Double.NaN;
+		}
+
+		// Locate each crossing inside the step
+		endStates = saveStates(objects, endStates);
+		for (int k = 0; k < events.size(); k++) {
+			if (Double.isNaN(crossingTimes[k]))
+				continue;
+			final PhysicalObject object = eventObjects.get(k);
+			final int offset = objects.indexOf(object) * PhysicalObject.STATE_SIZE;
+			final double fraction = locate(object, events.get(k), offset,
+					integrator, startT, deltaT, previousValues[k], crossingTimes[k]);
+			crossingTimes[k] = startT + fraction * deltaT;
+			object.setState(endStates, offset);
+		}
+
+		// Trigger the events in chronological order, up to the first
+		// terminal one
+		double stopT = Double.NaN;
+		while (true) {
+			int first = -1;
+			for (int k = 0; k < events.size(); k++)
+				if (!Double.isNaN(crossingTimes[k])
+						&& (first < 0 || crossingTimes[k] < crossingTimes[first]))
+					first = k;
+			if (first < 0)
+				break;
+			final double eventT = crossingTimes[first];
+			crossingTimes[first] = Double.NaN;
+			final PhysicalObject object = eventObjects.get(first);
+			final int offset = objects.indexOf(object) * PhysicalObject.STATE_SIZE;
+			moveTo(object, offset, integrator, startT, eventT);
+			events.get(first).trigger(object, eventT);
+			if (events.get(first).isTerminal()) {
+				for (int i = 0; i < objects.size(); i++)
+					if (objects.get(i) != object)
+						moveTo(objects.get(i), i * PhysicalObject.STATE_SIZE,
+								integrator, startT, eventT);
+				stopT = eventT;
+				break;
+			}
+			object.setState(endStates, offset);
+		}
+
+		final double currentT = Double.isNaN(stopT) ? endT : stopT;
+		for (int k = 0; k < events.size(); k++)
+			previousValues[k] = events.get(k).evaluate(eventObjects.get(k), currentT);
+		return stopT;
+	}
+
+	/**
+	 * Locates the zero crossing of an event function inside a step.
+	 * 
+	 * @return The fraction of the step at which the crossing occurs,
+	 * on the side where the event has occurred.
+	 */
+	private double locate(final PhysicalObject object, final PhysicsEvent event,
+			final int offset, final Integrator integrator, final double startT,
+			final double deltaT, double startValue, double endValue) {
+		double a = 0, b = 1;
+		int side = 0;
+		for (int i = 0; i < MAX_ITERATIONS && (b - a) * deltaT > tolerance; i++) {
+			double c = (a * endValue - b * startValue) / (endValue - startValue);
+			if (!(c > a && c < b))
+				c = (a + b) / 2;
+			moveTo(object, offset, integrator, startT, startT + c * deltaT);
+			final double value = event.evaluate(object, startT + c * deltaT);
+			if (value == 0 || event.isCrossing(startValue, value)) {
+				// The crossing is in [a, c]
+				b = c;
+				endValue = value;
+				if (side == -1)
+					startValue /= 2;
+				side = -1;
+			} else {
+				// The crossing is in [c, b]
+				a = c;
+				startValue = value;
+				if (side == 1)
+					endValue /= 2;
+				side = 1;
+			}
+		}
+		return b;
+	}
+
+	/** Moves an object from its state at the beginning of the step to
+	 * its state at a given time of the step. */
+	private void moveTo(final PhysicalObject object, final int offset,
+			final Integrator integrator, final double startT, final double currentT) {
+		object.setState(startStates, offset);
+		if (currentT > startT)
+			integrator.integrate(object, currentT, currentT - startT);
+	}
+
+	private static double[] saveStates(final List<PhysicalObject> objects,
+			double[] states) {
+		if (states == null || states.length < objects.size() * PhysicalObject.STATE_SIZE)
+			states = new double[objects.size() * PhysicalObject.STATE_SIZE];
+		for (int i = 0; i < objects.size(); i++)
+			objects.get(i).getState(states, i * PhysicalObject.STATE_SIZE);
+		return states;
+	}
+
+	// --- Getters and Setters ---
+	double getTolerance() {
+		return tolerance;
+	}
+
+	void setTolerance(final double tolerance) {
+		this.tolerance = tolerance;
+	}
+}
@@ -0,0 +1,38 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * The explicit (forward) Euler scheme: the position is updated
+ * with the speed at the beginning of the step, then the speed
+ * with the acceleration.
+ * <br><br>
+ * First order, one force evaluation per step. Mostly useful as
+ * a reference, as it slowly gains energy on oscillating motions.
+ * 
+ * @author Charles Grassin
+ */
+public class ExplicitEulerIntegrator implements Integrator {
+	/** Shared instance (the integrator has no state). */
+	public static final ExplicitEulerIntegrator INSTANCE = new ExplicitEulerIntegrator();
+
+	@Override
+	public void integrate(final PhysicalObject object, final double currentT,
+			final double deltaT) {
+		object.computeAccelerations(currentT, deltaT);
+		final PhysicsMatrix angularMotion = object.angularMotion, linearMotion = object.linearMotion;
+
+		angularMotion.position.x += angularMotion.speed.x * deltaT;
+		angularMotion.speed.x += angularMotion.acceleration.x * deltaT;
+		angularMotion.position.y += angularMotion.speed.y * deltaT;
+		angularMotion.speed.y += angularMotion.acceleration.y * deltaT;
+		angularMotion.position.z += angularMotion.speed.z * deltaT;
+		angularMotion.speed.z += angularMotion.acceleration.z * deltaT;
+		object.normalizeAttitude();
+
+		linearMotion.position.x += linearMotion.speed.x * deltaT;
+		linearMotion.speed.x += linearMotion.acceleration.x * deltaT;
+		linearMotion.position.y += linearMotion.speed.y * deltaT;
+		linearMotion.speed.y += linearMotion.acceleration.y * deltaT;
+		linearMotion.position.z += linearMotion.speed.z * deltaT;
+		linearMotion.speed.z += linearMotion.acceleration.z * deltaT;
+	}
+}
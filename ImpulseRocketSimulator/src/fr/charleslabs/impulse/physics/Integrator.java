@@ -0,0 +1,26 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * A numerical integration scheme, used by the PhysicsEngine
+ * to advance the motion of a PhysicalObject by one time step.
+ * <br><br>
+ * Implementations should not allocate during a step. The
+ * integrators of this package keep their intermediate values
+ * in a scratch array owned by the object, so that a single
+ * instance can be shared by several objects and threads.
+ * 
+ * @author Charles Grassin
+ */
+public interface Integrator {
+	/**
+	 * Advances the linear and angular motion of an object by one
+	 * step. The forces are evaluated through
+	 * {@link PhysicalObject#computeAccelerations(double, double)}.
+	 * 
+	 * @param object The object to move.
+	 * @param currentT The time since epoch at the end of the step.
+	 * @param deltaT The duration of the step.
+	 */
+	public void integrate(final PhysicalObject object, final double currentT,
+			final double deltaT);
+}
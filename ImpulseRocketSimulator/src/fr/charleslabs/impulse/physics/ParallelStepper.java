@@ -0,0 +1,133 @@
+package fr.charleslabs.impulse.physics;
+
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Steps the objects of an engine on several threads. The objects
+ * are split in contiguous partitions, one per thread (the calling
+ * thread takes the first one), and every step is enclosed between
+ * two barriers: all the objects have finished a step before the
+ * engine goes on.
+ * <br><br>
+ * The objects of an engine do not interact, and each one is always
+ * computed the same way, so the results do not depend on the number
+ * of threads.
+ *
+ * @author Charles Grassin
+ */
+final class ParallelStepper {
+	private final Thread[] workers;
+	private final CyclicBarrier startBarrier, endBarrier;
+	/** True for the partitions where an object's simulation is over. */
+	private final boolean[] over;
+
+	// Parameters of the current step, written by the calling thread
+	// before the start barrier
+	private List<PhysicalObject> objects;
+	private Integrator integrator;
+	private double currentT, deltaT;
+	private boolean shutdown;
+	/** The first exception thrown by a worker during the step. */
+	private volatile RuntimeException failure;
+
+	/**
+	 * Starts the worker threads.
+	 *
+	 * @param parallelism The number of threads, including the calling
+	 * thread.
+	 */
+	ParallelStepper(final int parallelism) {
+		workers = new Thread[parallelism - 1];
+		startBarrier = new CyclicBarrier(parallelism);
+		endBarrier = new CyclicBarrier(parallelism);
+		over = new boolean[parallelism];
+		for (int k = 0; k < workers.length; k++) {
+			final int partition = k + 1;
+			workers[k] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(partition);
+				}
+			}, "PhysicsEngine-worker-" + partition);
+			workers[k].setDaemon(true);
+			workers[k].start();
+		}
+	}
+
+	/**
+	 * Advances all the objects by one step, and waits for all of them.
+	 *
+	 * @return true if the simulation of one of the objects is over.
+	 */
+	boolean step(final List<PhysicalObject> objects, final Integrator integrator,
+			final double currentT, final double deltaT) {
+		this.objects = objects;
+		this.integrator = integrator;
+		this.currentT = currentT;
+		this.deltaT = deltaT;
+		await(startBarrier);
+		try {
+			compute(0);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		await(endBarrier);
+		if (failure != null) {
+			final RuntimeException e = failure;
+			failure = null;
+			throw e;
+		}
+		for (boolean partitionOver : over)
+			if (partitionOver)
+				return true;
+		return false;
+	}
+
+	/** Stops the worker threads. */
+	void shutdown() {
+		shutdown = true;
+		await(startBarrier);
+	}
+
+	/** The loop of a worker thread. */
+	private void work(final int partition) {
+		while (true) {
+			await(startBarrier);
+			if (shutdown)
+				return;
+			try {
+				compute(partition);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			await(endBarrier);
+		}
+	}
+
+	/** Steps the objects of a partition. */
+	private void compute(final int partition) {
+		final int count = objects.size(), parts = over.length;
+		final int from = (int) ((long) partition * count / parts);
+		final int to = (int) ((long) (partition + 1) * count / parts);
+		boolean partitionOver = false;
+		for (int i = from; i < to; i++) {
+			final PhysicalObject object = objects.get(i);
+			object.computeCinematics(currentT, deltaT, integrator);
+			partitionOver |= object.isSimulationOver();
+		}
+		over[partition] = partitionOver;
+	}
+
+	private static void await(final CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (BrokenBarrierException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -23,6 +23,16 @@ public abstract class PhysicalObject{
 	/** The angular motion position, speed and acceleration matrix. */
 	protected PhysicsMatrix angularMotion = new PhysicsMatrix();
 
+	/** Number of values of the continuous state of an object. */
+	public static final int STATE_SIZE = 12;
+
+	/** Caller-owned accumulators of the force and torque (avoids
+	 * allocating vectors at every step). */
+	private final PhysicsVector force = new PhysicsVector(),
+			torque = new PhysicsVector();
+	/** Scratch array of the integrators. */
+	private double[] integrationBuffer;
+
 	public abstract boolean isSimulationOver();
 
 	/**
@@ -68,9 +78,38 @@ public abstract class PhysicalObject{
 	public abstract PhysicsVector computeForce(final double currentT,
 			final double deltaT);
 
+	/**
+	 * Computes both the forces and the torques that apply on
+	 * the object, and writes them in caller-owned vectors. This
+	 * is the variant used by the physics engine: it must not
+	 * allocate, and lets the implementation share the terms
+	 * common to the force and the torque.
+	 * <br><br>
+	 * The default implementation copies the results of
+	 * computeForce and computeTorque: override it in objects
+	 * simulated at high frequency.
+	 * 
+	 * @param currentT The current time since epoch.
+	 * @param deltaT The time since last call.
+	 * @param force The vector in which the forces are written (N).
+	 * @param torque The vector in which the torques are written (N.m).
+	 */
+	public void computeForceAndTorque(final double currentT,
+			final double deltaT, final PhysicsVector force,
+			final PhysicsVector torque) {
+		final PhysicsVector computedForce = computeForce(currentT, deltaT);
+		final PhysicsVector computedTorque = computeTorque(currentT, deltaT);
+		force.x = computedForce.x;
+		force.y = computedForce.y;
+		force.z = computedForce.z;
+		torque.x = computedTorque.x;
+		torque.y = computedTorque.y;
+		torque.z = computedTorque.z;
+	}
+
 	/**
 	 * Computes the cinematics of the object: angular and linear position, speed
-	 * and position. To be called by the the physics engine.
+	 * and position, with the default integrator (semi-implicit Euler).
 	 * 
 	 * @param currentT
 	 *            The current time since epoch (motor ignition).
@@ -78,35 +117,242 @@ public abstract class PhysicalObject{
 	 *            Time elapsed since last time cinematics where calculated.
 	 */
 	public void computeCinematics(final double currentT, final double deltaT) {
-		PhysicsVector force = computeForce(currentT, deltaT);
-		PhysicsVector torque = computeTorque(currentT, deltaT);
+		computeCinematics(currentT, deltaT, SemiImplicitEulerIntegrator.INSTANCE);
+	}
 
-		angularMotion.acceleration.x = torque.x / momentOfInertia.x;
-		angularMotion.speed.x += angularMotion.acceleration.x * deltaT;
-		angularMotion.position.x = normalizeAngle(angularMotion.position.x
-				+ angularMotion.speed.x * deltaT);
+	/**
+	 * Computes the cinematics of the object: angular and linear position, speed
+	 * and position. To be called by the the physics engine.
+	 * 
+	 * @param currentT
+	 *            The current time since epoch (motor ignition), at the end
+	 *            of the step.
+	 * @param deltaT
+	 *            Time elapsed since last time cinematics where calculated.
+	 * @param integrator
+	 *            The numerical integration scheme.
+	 */
+	public void computeCinematics(final double currentT, final double deltaT,
+			final Integrator integrator) {
+		update(currentT, deltaT);
+		integrator.integrate(this, currentT, deltaT);
+	}
 
-		angularMotion.acceleration.y = torque.y / momentOfInertia.y;
-		angularMotion.speed.y += angularMotion.acceleration.y * deltaT;
-		angularMotion.position.y = normalizeAngle(angularMotion.position.y
-				+ angularMotion.speed.y * deltaT);
+	/**
+	 * Updates the discrete parts of the object (controllers, actuators...).
+	 * Called once per step, before the integration of the motion.
+	 * 
+	 * @param currentT
+	 *            The current time since epoch (motor ignition).
+	 * @param deltaT
+	 *            Time elapsed since the last step.
+	 */
+	protected void update(final double currentT, final double deltaT) {
+	}
+
+	/**
+	 * Registers the discrete updates of the object as tasks of the
+	 * engine's scheduler, instead of polling them in update(). Called
+	 * when a simulation starts or is restored; objects without discrete
+	 * parts do nothing.
+	 * 
+	 * @param scheduler
+	 *            The scheduler of the engine, or null if the object must
+	 *            poll its updates at every step.
+	 * @param currentT
+	 *            The current time since epoch.
+	 */
+	protected void schedule(final Scheduler scheduler, final double currentT) {
+	}
 
+	/**
+	 * Returns the time of the next discrete event of the object (a
+	 * controller call, a thrust curve breakpoint...), strictly after
+	 * the current time. Adaptive steps end exactly on these times.
+	 * 
+	 * @param currentT The current time since epoch.
+	 * @return The time of the next event, or Double.POSITIVE_INFINITY.
+	 */
+	public double getNextEventTime(final double currentT) {
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Computes the linear and angular accelerations of the object in its
+	 * current state, and writes them in the motion matrices.
+	 * 
+	 * @param currentT The time at which the forces are evaluated.
+	 * @param deltaT The current time step.
+	 */
+	public final void computeAccelerations(final double currentT,
+			final double deltaT) {
+		computeForceAndTorque(currentT, deltaT, force, torque);
+
+		angularMotion.acceleration.x = torque.x / momentOfInertia.x;
+		angularMotion.acceleration.y = torque.y / momentOfInertia.y;
 		angularMotion.acceleration.z = torque.z / momentOfInertia.z;
-		angularMotion.speed.z += angularMotion.acceleration.z * deltaT;
-		angularMotion.position.z = normalizeAngle(angularMotion.position.z
-				+ angularMotion.speed.z * deltaT);
 
 		linearMotion.acceleration.x = force.x / mass;
-		linearMotion.speed.x += linearMotion.acceleration.x * deltaT;
-		linearMotion.position.x += linearMotion.speed.x * deltaT;
-
 		linearMotion.acceleration.y = force.y / mass;
-		linearMotion.speed.y += linearMotion.acceleration.y * deltaT;
-		linearMotion.position.y += linearMotion.speed.y * deltaT;
-
 		linearMotion.acceleration.z = force.z / mass;
-		linearMotion.speed.z += linearMotion.acceleration.z * deltaT;
-		linearMotion.position.z += linearMotion.speed.z * deltaT;
+	}
+
+	/**
+	 * Copies the continuous state of the object in an array: linear
+	 * position and speed, then angular position and speed (x, y, z).
+	 * 
+	 * @param state The destination array.
+	 * @param offset The index of the first value ({@link #STATE_SIZE}
+	 * values are written).
+	 */
+	public final void getState(final double[] state, final int offset) {
+		state[offset] = linearMotion.position.x;
+		state[offset + 1] = linearMotion.position.y;
+		state[offset + 2] = linearMotion.position.z;
+		state[offset + 3] = linearMotion.speed.x;
+		state[offset + 4] = linearMotion.speed.y;
+		state[offset + 5] = linearMotion.speed.z;
+		state[offset + 6] = angularMotion.position.x;
+		state[offset + 7] = angularMotion.position.y;
+		state[offset + 8] = angularMotion.position.z;
+		state[offset + 9] = angularMotion.speed.x;
+		state[offset + 10] = angularMotion.speed.y;
+		state[offset + 11] = angularMotion.speed.z;
+	}
+
+	/**
+	 * Sets the continuous state of the object from an array (see
+	 * {@link #getState(double[], int)} for the layout).
+	 * 
+	 * @param state The source array.
+	 * @param offset The index of the first value.
+	 */
+	public final void setState(final double[] state, final int offset) {
+		linearMotion.position.x = state[offset];
+		linearMotion.position.y = state[offset + 1];
+		linearMotion.position.z = state[offset + 2];
+		linearMotion.speed.x = state[offset + 3];
+		linearMotion.speed.y = state[offset + 4];
+		linearMotion.speed.z = state[offset + 5];
+		angularMotion.position.x = state[offset + 6];
+		angularMotion.position.y = state[offset + 7];
+		angularMotion.position.z = state[offset + 8];
+		angularMotion.speed.x = state[offset + 9];
+		angularMotion.speed.y = state[offset + 10];
+		angularMotion.speed.z = state[offset + 11];
+	}
+
+	/**
+	 * Computes the time derivative of the continuous state of the object
+	 * (speeds and accelerations) in its current state.
+	 * 
+	 * @param currentT The time at which the forces are evaluated.
+	 * @param deltaT The current time step.
+	 * @param derivative The destination array, with the same layout as
+	 * the state.
+	 * @param offset The index of the first value.
+	 */
+	public final void getDerivative(final double currentT, final double deltaT,
+			final double[] derivative, final int offset) {
+		computeAccelerations(currentT, deltaT);
+		derivative[offset] = linearMotion.speed.x;
+		derivative[offset + 1] = linearMotion.speed.y;
+		derivative[offset + 2] = linearMotion.speed.z;
+		derivative[offset + 3] = linearMotion.acceleration.x;
+		derivative[offset + 4] = linearMotion.acceleration.y;
+		derivative[offset + 5] = linearMotion.acceleration.z;
+		derivative[offset + 6] = angularMotion.speed.x;
+		derivative[offset + 7] = angularMotion.speed.y;
+		derivative[offset + 8] = angularMotion.speed.z;
+		derivative[offset + 9] = angularMotion.acceleration.x;
+		derivative[offset + 10] = angularMotion.acceleration.y;
+		derivative[offset + 11] = angularMotion.acceleration.z;
+	}
+
+	/**
+	 * Returns the number of values written by
+	 * {@link #saveCheckpoint(double[], int)}. Objects with a discrete
+	 * state (controllers, actuators...) add theirs.
+	 */
+	public int getCheckpointSize() {
+		return 18;
+	}
+
+	/**
+	 * Writes the full state of the object in an array: the linear and
+	 * angular motion matrices, and in subclasses the state of their
+	 * discrete parts. Used by the engine checkpoints.
+	 * 
+	 * @param data The destination array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value written.
+	 */
+	public int saveCheckpoint(final double[] data, int offset) {
+		offset = saveMatrix(linearMotion, data, offset);
+		return saveMatrix(angularMotion, data, offset);
+	}
+
+	/**
+	 * Restores the full state of the object from an array written by
+	 * {@link #saveCheckpoint(double[], int)}, possibly by another object
+	 * built the same way.
+	 * 
+	 * @param data The source array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value read.
+	 */
+	public int restoreCheckpoint(final double[] data, int offset) {
+		offset = restoreMatrix(linearMotion, data, offset);
+		return restoreMatrix(angularMotion, data, offset);
+	}
+
+	private static int saveMatrix(final PhysicsMatrix matrix,
+			final double[] data, int offset) {
+		data[offset++] = matrix.acceleration.x;
+		data[offset++] = matrix.acceleration.y;
+		data[offset++] = matrix.acceleration.z;
+		data[offset++] = matrix.speed.x;
+		data[offset++] = matrix.speed.y;
+		data[offset++] = matrix.speed.z;
+		data[offset++] = matrix.position.x;
+		data[offset++] = matrix.position.y;
+		data[offset++] = matrix.position.z;
+		return offset;
+	}
+
+	private static int restoreMatrix(final PhysicsMatrix matrix,
+			final double[] data, int offset) {
+		matrix.acceleration.x = data[offset++];
+		matrix.acceleration.y = data[offset++];
+		matrix.acceleration.z = data[offset++];
+		matrix.speed.x = data[offset++];
+		matrix.speed.y = data[offset++];
+		matrix.speed.z = data[offset++];
+		matrix.position.x = data[offset++];
+		matrix.position.y = data[offset++];
+		matrix.position.z = data[offset++];
+		return offset;
+	}
+
+	/**
+	 * Normalizes the three angular positions to [-180;180].
+	 */
+	public final void normalizeAttitude() {
+		angularMotion.position.x = normalizeAngle(angularMotion.position.x);
+		angularMotion.position.y = normalizeAngle(angularMotion.position.y);
+		angularMotion.position.z = normalizeAngle(angularMotion.position.z);
+	}
+
+	/**
+	 * Returns a scratch array owned by this object, for the integrators.
+	 * It is only allocated once (or when a larger size is requested).
+	 * 
+	 * @param size The minimum size of the array.
+	 */
+	final double[] getIntegrationBuffer(final int size) {
+		if (integrationBuffer == null || integrationBuffer.length < size)
+			integrationBuffer = new double[size];
+		return integrationBuffer;
 	}
 
 	/**
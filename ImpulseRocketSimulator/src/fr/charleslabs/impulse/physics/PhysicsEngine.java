@@ -1,7 +1,9 @@
 package fr.charleslabs.impulse.physics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class is the actual PhysicalEngine of
@@ -17,6 +19,37 @@ import java.util.List;
  * 
  */
 final public class PhysicsEngine implements Runnable {
+	private final static String INCOMPATIBLE_CHECKPOINT_EXCEPTION = "The checkpoint does not match the objects of the engine.";
+	private final static String NON_FINITE_STEP_EXCEPTION = "The error of the step is not finite, even with the smallest step.";
+	/**
+	 * Receives every step of the engine, on the engine thread (eg: to
+	 * record the flight). The calls must be short and should not
+	 * allocate: they are in the hot loop.
+	 */
+	public static interface StepListener {
+		/** Called after every step, once the objects are in their new
+		 * state. */
+		public void onStep(final double currentT, final List<PhysicalObject> objects);
+
+		/**
+		 * Called when the simulation ends.
+		 * 
+		 * @param failure The exception that stopped the simulation, or
+		 * null if it ended normally.
+		 */
+		public void onFinish(final double currentT, final Throwable failure);
+	}
+
+	/** What the real time loop does with the steps of a late tick. */
+	public static enum OverrunPolicy {
+		/** Runs the missed steps at once (up to a maximum), so that the
+		 * simulation keeps up with the wall clock. */
+		CATCH_UP,
+		/** Gives the missed steps up: the simulation falls behind the
+		 * wall clock. */
+		DROP
+	};
+
 	// / Constants
 	 // in m/s2
 
@@ -26,22 +59,73 @@ final public class PhysicsEngine implements Runnable {
 	/** Refresh frequency of the engine (Hz) **/
 	private double frequency = 200.0d;
 	/**
-	 * Factor to speed up (precision loss) or slow down (precision gain)
-	 * simulation. Default value is 1 (real time).
+	 * Factor to speed up or slow down the real time simulation. The
+	 * physics step does not change, only the wall clock time between
+	 * two steps. Default value is 1 (real time).
 	 **/
-	private double timeFactor = 1.0;
+	private volatile double timeFactor = 1.0;
+	/** Policy of the real time loop for late ticks. */
+	private OverrunPolicy overrunPolicy = OverrunPolicy.CATCH_UP;
+	/** Maximum number of steps caught up in a single tick. */
+	private int maxCatchUpSteps = 10;
+	/** Maximum number of wake-ups per second of the real time loop
+	 * (Hz): above, several steps are run per wake-up. */
+	private double maxTickFrequency = 1000;
+	/** Fraction of a tick the real time loop may spend stepping. */
+	private double cpuBudget = 0.9;
+	/** Wall clock duration over which the achieved time factor is
+	 * measured, in ns. */
+	private static final long TIME_FACTOR_WINDOW = 500000000L;
+	/**
+	 * Time before a deadline during which the real time loop busy
+	 * waits instead of parking (precise, but uses the CPU), in ns.
+	 **/
+	private long spinWindow = 200000;
+	/** Number of threads stepping the objects (fixed steps only). */
+	private int parallelism = 1;
+	/** Minimum number of objects per thread for a parallel step. */
+	private static final int MIN_OBJECTS_PER_THREAD = 32;
+	/** Numerical integration scheme of the engine. */
+	private Integrator integrator = SemiImplicitEulerIntegrator.INSTANCE;
 
 
 	// Internal variables
 	private boolean isRunning = false;
 	private boolean isRealTime = false;
+	/** True if the objects were restored from a checkpoint: the next
+	 * simulation resumes from their state instead of restarting. */
+	private boolean isRestored = false;
 	/**Current time since epoch in s*/
 	private double timeSinceIgnition;
-	/**
-	 * Choice between busy wait (precise, wasteful) and thread sleep (less
-	 * precise, safer)
-	 **/
-	private final boolean threadBusyWait = false;
+	/** Size of the next step, in adaptive mode (s). */
+	private double adaptiveDeltaT;
+	/** The worker threads of the parallel steps (null if sequential). */
+	private ParallelStepper parallelStepper;
+	/** Copy of the objects' state, to retry a rejected step. */
+	private double[] stateBackup;
+	/** The events to detect during the simulation. */
+	private final EventLocator eventLocator = new EventLocator();
+	/** The tasks run at their own times (controllers, scripts...). */
+	private final Scheduler scheduler = new Scheduler();
+	/** The tasks scheduled with schedule(), registered again at every
+	 * simulation start (the objects register their own tasks). */
+	private final List<Scheduler.Task> tasks = new ArrayList<Scheduler.Task>();
+	/** The times of the first runs of the tasks (NaN for a periodic
+	 * task: its first multiple of the period). */
+	private final List<Double> taskTimes = new ArrayList<Double>();
+	/** True if the objects register their discrete updates as tasks
+	 * instead of polling them at every step. */
+	private boolean scheduledUpdates = false;
+	/** Publication of the state to other threads (null until a reader
+	 * creates a snapshot). */
+	private volatile SnapshotBuffer snapshotBuffer;
+	/** Time factor actually achieved by the real time loop. */
+	private volatile double achievedTimeFactor = 1.0;
+	/** Timing statistics of the real time mode. */
+	private final RealTimeStatistics realTimeStatistics = new RealTimeStatistics();
+	/** The listeners of the steps (copy on write: the engine thread
+	 * iterates over it without locking). */
+	private volatile StepListener[] stepListeners = new StepListener[0];
 	
 	/** Constructor for real time mode. **/
 	public PhysicsEngine(){
@@ -69,8 +153,8 @@ final public class PhysicsEngine implements Runnable {
 			object.reset();
 	}
 	private boolean isSimulationOver(){
-		for(PhysicalObject object : objects)
-			if(object.isSimulationOver())
+		for(int i = 0; i < objects.size(); i++)
+			if(objects.get(i).isSimulationOver())
 				return true;
 		return false;
 	}
@@ -80,64 +164,753 @@ final public class PhysicsEngine implements Runnable {
 		// If no Rocket object is provided, abort the simulation
 		if (objects.isEmpty())
 			return;
-		timeSinceIgnition = 0;
-
-		for(PhysicalObject object : objects)
-			object.init();
-		
-		// Simulation variables
-		double deltaT;
-		double instant = System.nanoTime();
+		beginSimulation();
 		
 		// Main simulation loop
+		try {
+			if (isRealTime)
+				runRealTime();
+			else
+				while (isRunning)
+					step();
+		} catch (RuntimeException e) {
+			abortSimulation(e);
+			throw e;
+		}
+
+		finishSimulation();
+	}
+
+	/**
+	 * The real time loop: a fixed time step accumulator. The physics
+	 * step is always 1/frequency, and the simulation advances by the
+	 * wall clock time multiplied by the time factor. The loop wakes up
+	 * at most maxTickFrequency times per second and runs as many
+	 * substeps per tick as needed (eg: 200 Hz at 20x, 1 kHz ticks: 4
+	 * steps per tick). The thread parks until shortly before each
+	 * deadline, then spins until the deadline.
+	 * <br><br>
+	 * When a tick is late by whole periods, the missing steps are
+	 * caught up or dropped according to the overrun policy. The
+	 * substeps of a tick stop when its CPU budget is spent: the engine
+	 * then falls behind, and the achieved time factor reports it.
+	 */
+	private void runRealTime() {
+		final double deltaT = 1 / frequency;
+		realTimeStatistics.reset();
+		achievedTimeFactor = timeFactor;
+		long deadline = System.nanoTime();
+		long windowStart = deadline;
+		double windowStartT = timeSinceIgnition;
+		long owedSteps = 0;
 		while (isRunning) {
-			if (isRealTime){
-				if (!threadBusyWait) { // Safe but less precise thread sleep wait:
-					try {
-						Thread.sleep((int) (1000 / frequency));
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				} else { // Wasteful but precise busy wait:
-					while ((System.nanoTime() - instant) / 1000000000L < (1 / frequency));
-				}
-
-				// Compute the timing variables
-				deltaT = (System.nanoTime() - instant) / 1000000000L * timeFactor;
-				instant = System.nanoTime();
+			// Read at every tick, so that the time factor can change
+			final double stepPeriod = 1000000000.0d / frequency / timeFactor;
+			final long stepsPerTick = Math.max(1,
+					(long) Math.ceil(1000000000.0d / maxTickFrequency / stepPeriod));
+			final long tickPeriod = Math.max(1, Math.round(stepsPerTick * stepPeriod));
+			deadline += tickPeriod;
+			if (!waitUntil(deadline))
+				break;
+
+			final long tickStart = System.nanoTime();
+			final long lateness = tickStart - deadline;
+			final long missedPeriods = lateness / tickPeriod;
+			long missedOwed = 0, dropped = 0;
+			if (missedPeriods > 0) {
+				final long missedSteps = missedPeriods * stepsPerTick;
+				if (overrunPolicy == OverrunPolicy.CATCH_UP)
+					missedOwed = Math.min(missedSteps, maxCatchUpSteps);
+				dropped = missedSteps - missedOwed;
+				// The missed deadlines are consumed (run or given up)
+				deadline += missedPeriods * tickPeriod;
+			}
+			owedSteps += stepsPerTick + missedOwed;
+
+			// Substeps, within the CPU budget of the tick
+			final long budgetEnd = tickStart + (long) (cpuBudget * tickPeriod);
+			long ranSteps = 0;
+			while (owedSteps > 0 && isRunning) {
+				step(deltaT);
+				owedSteps--;
+				ranSteps++;
+				if (System.nanoTime() - budgetEnd > 0)
+					break;
+			}
+			// Only the extra steps actually run are caught up: the owed
+			// steps given up below are only counted as dropped
+			final long caughtUp = Math.max(0, ranSteps - stepsPerTick);
+			// The steps left over are run in the next ticks, within limits
+			final long maxOwedSteps = (overrunPolicy == OverrunPolicy.CATCH_UP) ? maxCatchUpSteps : 0;
+			if (owedSteps > maxOwedSteps) {
+				dropped += owedSteps - maxOwedSteps;
+				owedSteps = maxOwedSteps;
+			}
+			realTimeStatistics.record(lateness, missedPeriods, caughtUp, dropped);
+
+			final long now = System.nanoTime();
+			if (now - windowStart >= TIME_FACTOR_WINDOW) {
+				achievedTimeFactor = (timeSinceIgnition - windowStartT)
+						* 1000000000.0d / (now - windowStart);
+				windowStart = now;
+				windowStartT = timeSinceIgnition;
+			}
+		}
+	}
+
+	/**
+	 * Waits until a deadline: parks the thread until the deadline is
+	 * within the spin window, then busy waits.
+	 * 
+	 * @param deadline The deadline, in System.nanoTime() time.
+	 * @return false if the thread was interrupted.
+	 */
+	private boolean waitUntil(final long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > spinWindow) {
+			LockSupport.parkNanos(remaining - spinWindow);
+			if (Thread.interrupted())
+				return false;
+		}
+		while (deadline - System.nanoTime() > 0);
+		return true;
+	}
+
+	/**
+	 * Runs a whole simulation on the calling thread, in non real time mode:
+	 * the engine steps by 1/frequency as fast as the CPU allows. Nothing
+	 * is started in the background, which makes it suitable for batch or
+	 * headless runs.
+	 * 
+	 * <br><br>
+	 * After a restore() (or on a fork), the simulation resumes from the
+	 * restored state instead of restarting.
+	 * 
+	 * @param maxDuration The maximum simulated duration, in s. The simulation
+	 * is stopped once it is reached (time since epoch), even if the
+	 * objects have not landed.
+	 */
+	public void simulate(final double maxDuration) {
+		if (isRunning || objects.isEmpty())
+			return;
+		this.isRealTime = false;
+		this.isRunning = true;
+		beginSimulation();
+		try {
+			while (isRunning && timeSinceIgnition < maxDuration)
+				step();
+		} catch (RuntimeException e) {
+			abortSimulation(e);
+			throw e;
+		}
+		finishSimulation();
+	}
+
+	/**
+	 * Prepares the simulated objects for a new simulation and resets
+	 * the simulation time. Called before the first step.
+	 */
+	public void initSimulation() {
+		timeSinceIgnition = 0;
+		if (integrator instanceof AdaptiveIntegrator)
+			adaptiveDeltaT = Math.min(1 / frequency,
+					((AdaptiveIntegrator) integrator).getMaxStep());
+		for(PhysicalObject object : objects)
+			object.init();
+		prepareSimulation();
+	}
+
+	/**
+	 * Prepares the engine to step from the current state of the objects,
+	 * without resetting them nor the simulation time (eg: after a
+	 * restore()). Called before the first step, instead of
+	 * initSimulation().
+	 */
+	public void resumeSimulation() {
+		prepareSimulation();
+	}
+
+	/** Starts a new simulation, or resumes a restored one. */
+	private void beginSimulation() {
+		if (isRestored)
+			resumeSimulation();
+		else
+			initSimulation();
+	}
+
+	/** Starts the simulation from the current state of the objects. */
+	private void prepareSimulation() {
+		isRunning = true;
+		isRestored = false;
+		eventLocator.init(timeSinceIgnition);
+		scheduler.clear();
+		for (int i = 0; i < objects.size(); i++)
+			objects.get(i).schedule(scheduledUpdates ? scheduler : null,
+					timeSinceIgnition);
+		for (int i = 0; i < tasks.size(); i++)
+			registerTask(tasks.get(i), taskTimes.get(i));
+		if (parallelStepper == null && parallelism > 1
+				&& !(integrator instanceof AdaptiveIntegrator))
+			parallelStepper = new ParallelStepper(parallelism);
+		publishSnapshot();
+	}
+
+	/**
+	 * Advances the simulation by one non real time step: 1/frequency,
+	 * or an adaptive step if the integrator is an AdaptiveIntegrator.
+	 * 
+	 * @return true if the simulation is still running after the step.
+	 */
+	public boolean step() {
+		if (integrator instanceof AdaptiveIntegrator)
+			adaptiveStep((AdaptiveIntegrator) integrator);
+		else
+			step(1 / frequency);
+		return isRunning;
+	}
+
+	/**
+	 * Advances the simulation by a given time step. The step is split
+	 * at the times of the scheduled tasks, which run in between with
+	 * the objects in their exact state at that time.
+	 * 
+	 * @param deltaT The time step, in s.
+	 */
+	private void step(final double deltaT) {
+		final double endT = timeSinceIgnition + deltaT;
+		while (isRunning && scheduler.getNextTime() <= endT) {
+			final double taskT = scheduler.getNextTime();
+			if (taskT > timeSinceIgnition)
+				integrateStep(taskT, taskT - timeSinceIgnition);
+			if (isRunning)
+				scheduler.runDue(timeSinceIgnition);
+		}
+		if (isRunning && endT > timeSinceIgnition)
+			integrateStep(endT, (timeSinceIgnition + deltaT == endT) ? deltaT
+					: endT - timeSinceIgnition);
+	}
+
+	/**
+	 * Integrates the objects until a given time.
+	 * 
+	 * @param endT The time at the end of the step, since epoch.
+	 * @param deltaT The time step, in s.
+	 */
+	private void integrateStep(final double endT, final double deltaT) {
+		final double startT = timeSinceIgnition;
+		if (!eventLocator.isEmpty())
+			eventLocator.saveStart(objects);
+		timeSinceIgnition = endT;
+
+		// Compute the physics of the objects, and check whether their
+		// simulation is over in the same pass (indexed loop: no iterator
+		// allocation in the hot path)
+		final boolean over;
+		if (parallelStepper != null
+				&& objects.size() >= 2 * MIN_OBJECTS_PER_THREAD)
+			over = parallelStepper.step(objects, integrator, timeSinceIgnition, deltaT);
+		else {
+			boolean anyOver = false;
+			for(int i = 0; i < objects.size(); i++) {
+				final PhysicalObject object = objects.get(i);
+				object.computeCinematics(timeSinceIgnition, deltaT, integrator);
+				anyOver |= object.isSimulationOver();
 			}
-			else {
-				deltaT = (1 / frequency);
+			over = anyOver;
+		}
+
+		handleEvents(startT);
+		if(over) isRunning = false;
+		publishSnapshot();
+		notifyStep();
+	}
+
+	/**
+	 * Handles the events that occurred during the last step. If a terminal
+	 * event occurred, the simulation stops at its exact time.
+	 * 
+	 * @param startT The time at the beginning of the step.
+	 * @return true if the simulation stopped on a terminal event.
+	 */
+	private boolean handleEvents(final double startT) {
+		if (eventLocator.isEmpty())
+			return false;
+		final double stopT = eventLocator.handleStep(objects, integrator,
+				startT, timeSinceIgnition);
+		if (Double.isNaN(stopT))
+			return false;
+		timeSinceIgnition = stopT;
+		isRunning = false;
+		return true;
+	}
+
+	/**
+	 * Advances the simulation by one adaptive step. The step is retried
+	 * with a smaller size until its error is within the tolerances of
+	 * the integrator, and it is shortened to end exactly on the next
+	 * discrete event of the objects (controller call, thrust curve
+	 * breakpoint). The discrete parts of the objects are updated at the
+	 * end of the step, so that controllers run at their exact times.
+	 * <br><br>
+	 * A step whose error is not finite (eg: NaN in the state) is
+	 * rejected, down to the smallest step; if it is still not finite
+	 * there, the objects are restored and the step fails.
+	 * 
+	 * @param integrator The adaptive integrator.
+	 * @throws ArithmeticException If the error is not finite with the
+	 * smallest step.
+	 */
+	private void adaptiveStep(final AdaptiveIntegrator integrator) {
+		final int count = objects.size();
+		if (stateBackup == null || stateBackup.length < count * PhysicalObject.STATE_SIZE)
+			stateBackup = new double[count * PhysicalObject.STATE_SIZE];
+		if (!eventLocator.isEmpty())
+			eventLocator.saveStart(objects);
+		final double startT = timeSinceIgnition;
+		double nextEvent = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			final PhysicalObject object = objects.get(i);
+			object.getState(stateBackup, i * PhysicalObject.STATE_SIZE);
+			final double objectEvent = object.getNextEventTime(timeSinceIgnition);
+			if (objectEvent > timeSinceIgnition && objectEvent < nextEvent)
+				nextEvent = objectEvent;
+		}
+		if (scheduler.getNextTime() > timeSinceIgnition
+				&& scheduler.getNextTime() < nextEvent)
+			nextEvent = scheduler.getNextTime();
+
+		double deltaT = adaptiveDeltaT;
+		boolean rejected = false;
+		while (true) {
+			final boolean onEvent = timeSinceIgnition + deltaT >= nextEvent;
+			if (onEvent)
+				deltaT = nextEvent - timeSinceIgnition;
+			// A step ending on an event stops just before it, so that its
+			// last stages see the thrust before the breakpoint
+			final double endT = onEvent ? nextEvent - Math.ulp(nextEvent)
+					: timeSinceIgnition + deltaT;
+
+			double error = 0;
+			for (int i = 0; i < count; i++)
+				error = Math.max(error, integrator.attempt(objects.get(i), endT, deltaT));
+			final boolean isFinite = !Double.isNaN(error) && !Double.isInfinite(error);
+
+			if (isFinite && (error <= 1 || deltaT <= integrator.getMinStep())) {
+				// Step accepted (a truncated step keeps the previous proposal)
+				if (!onEvent || rejected)
+					adaptiveDeltaT = integrator.getNextStep(deltaT, error);
+				timeSinceIgnition = onEvent ? nextEvent : endT;
+				break;
 			}
-			
-			timeSinceIgnition += deltaT;
 
-			// Compute the physics of the rocket
-			for(PhysicalObject object : objects)
-				object.computeCinematics(timeSinceIgnition, deltaT);
-				
+			// Step rejected: restore the objects and retry with a smaller step
+			for (int i = 0; i < count; i++)
+				objects.get(i).setState(stateBackup, i * PhysicalObject.STATE_SIZE);
+			if (!isFinite && deltaT <= integrator.getMinStep())
+				throw new ArithmeticException(NON_FINITE_STEP_EXCEPTION);
+			deltaT = integrator.getNextStep(deltaT,
+					isFinite ? error : Double.POSITIVE_INFINITY);
+			rejected = true;
+		}
+
+		if (!handleEvents(startT)) {
+			for (int i = 0; i < count; i++)
+				objects.get(i).update(timeSinceIgnition, deltaT);
+			scheduler.runDue(timeSinceIgnition);
 			if(isSimulationOver()) isRunning = false;
 		}
+		publishSnapshot();
+		notifyStep();
+	}
+
+	/** Publishes the current state of the objects to the snapshot
+	 * readers, if there are any. */
+	private void publishSnapshot() {
+		SnapshotBuffer buffer = snapshotBuffer;
+		if (buffer == null)
+			return;
+		if (buffer.getObjectCount() != objects.size()) {
+			buffer = new SnapshotBuffer(objects.size(), buffer.getPublications());
+			snapshotBuffer = buffer;
+		}
+		buffer.publish(timeSinceIgnition, objects);
+	}
+
+	/** Calls the step listeners (indexed loop: no allocation). */
+	private void notifyStep() {
+		final StepListener[] listeners = stepListeners;
+		for (int i = 0; i < listeners.length; i++)
+			listeners[i].onStep(timeSinceIgnition, objects);
+	}
+
+	/**
+	 * Stops a simulation that failed: the step listeners are told the
+	 * cause (eg: to dump the flight recorder).
+	 * 
+	 * @param failure The exception thrown by the step.
+	 */
+	public void abortSimulation(final Throwable failure) {
+		finishSimulation(failure);
+	}
 
-		// End of simulation
+	/**
+	 * Stops the simulated objects. Called after the last step.
+	 */
+	public void finishSimulation() {
+		finishSimulation(null);
+	}
+
+	private void finishSimulation(final Throwable failure) {
 		isRunning=false;
+		if (parallelStepper != null) {
+			parallelStepper.shutdown();
+			parallelStepper = null;
+		}
 		for(PhysicalObject object : objects)
 			object.stop();
+		final StepListener[] listeners = stepListeners;
+		for (int i = 0; i < listeners.length; i++)
+			listeners[i].onFinish(timeSinceIgnition, failure);
+	}
+
+	/**
+	 * Captures the full state of the simulation: time, and state of
+	 * every object including its controller and gimbal. Must be called
+	 * between two steps (from the engine thread, or while the engine
+	 * is stopped).
+	 * 
+	 * @return A new checkpoint.
+	 */
+	public EngineCheckpoint checkpoint() {
+		final int[] sizes = new int[objects.size()];
+		int size = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = objects.get(i).getCheckpointSize();
+			size += sizes[i];
+		}
+		final double[] data = new double[size];
+		int offset = 0;
+		for (int i = 0; i < sizes.length; i++)
+			offset = objects.get(i).saveCheckpoint(data, offset);
+		return new EngineCheckpoint(timeSinceIgnition, adaptiveDeltaT, sizes, data);
+	}
+
+	/**
+	 * Restores a checkpoint: the objects go back to their state at the
+	 * time of the checkpoint. The engine stays stopped: the next
+	 * simulate() or start() resumes from there instead of restarting,
+	 * and a step by step simulation calls resumeSimulation() (instead
+	 * of initSimulation()) before its first step. The events are
+	 * evaluated again in the restored state, and their occurrences
+	 * count from the resume. Must not be called while the engine
+	 * thread runs.
+	 * 
+	 * @param checkpoint A checkpoint of this engine, or of an engine
+	 * with objects built the same way (same order, same parts).
+	 * @throws Exception If the checkpoint does not fit the objects.
+	 */
+	public void restore(final EngineCheckpoint checkpoint) throws Exception {
+		if (!checkpoint.isCompatible(objects))
+			throw new Exception(INCOMPATIBLE_CHECKPOINT_EXCEPTION);
+		int offset = 0;
+		for (int i = 0; i < objects.size(); i++)
+			offset = objects.get(i).restoreCheckpoint(checkpoint.getData(), offset);
+		timeSinceIgnition = checkpoint.getTime();
+		adaptiveDeltaT = checkpoint.getAdaptiveDeltaT();
+		isRestored = true;
+	}
+
+	/**
+	 * Forks the simulation: creates a new engine with the settings of
+	 * this one (frequency, integrator...), simulating the given objects
+	 * from the current state of this engine. The branch and this engine
+	 * then evolve independently; many branches can share a common
+	 * prefix instead of simulating it again.
+	 * <br><br>
+	 * The events and the tasks are not copied: register them on the
+	 * branch.
+	 * 
+	 * @param branchObjects New objects built the same way as the objects
+	 * of this engine, in the same order (eg: with the same
+	 * FlightConfiguration).
+	 * @return The branch, stopped at the state of this engine (see
+	 * {@link #restore(EngineCheckpoint)} to run it).
+	 * @throws Exception If the objects do not match the objects of this
+	 * engine.
+	 */
+	public PhysicsEngine fork(final List<PhysicalObject> branchObjects)
+			throws Exception {
+		return fork(checkpoint(), branchObjects);
+	}
+
+	/**
+	 * Forks the simulation from a checkpoint taken earlier (see
+	 * {@link #fork(List)}).
+	 */
+	public PhysicsEngine fork(final EngineCheckpoint checkpoint,
+			final List<PhysicalObject> branchObjects) throws Exception {
+		final PhysicsEngine branch = new PhysicsEngine();
+		branch.frequency = frequency;
+		branch.timeFactor = timeFactor;
+		branch.integrator = integrator;
+		branch.parallelism = parallelism;
+		branch.overrunPolicy = overrunPolicy;
+		branch.maxCatchUpSteps = maxCatchUpSteps;
+		branch.spinWindow = spinWindow;
+		branch.maxTickFrequency = maxTickFrequency;
+		branch.cpuBudget = cpuBudget;
+		branch.scheduledUpdates = scheduledUpdates;
+		branch.eventLocator.setTolerance(eventLocator.getTolerance());
+		branch.objects.addAll(branchObjects);
+		branch.restore(checkpoint);
+		return branch;
+	}
+
+	/** Adds a listener of the steps (see {@link StepListener}). */
+	public synchronized void addStepListener(final StepListener listener) {
+		final StepListener[] listeners = Arrays.copyOf(stepListeners,
+				stepListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		stepListeners = listeners;
+	}
+
+	/** Removes a listener of the steps. */
+	public synchronized void removeStepListener(final StepListener listener) {
+		final List<StepListener> listeners = new ArrayList<StepListener>(
+				Arrays.asList(stepListeners));
+		listeners.remove(listener);
+		stepListeners = listeners.toArray(new StepListener[listeners.size()]);
 	}
 
 	// --- Getters and Setters ---
 	public boolean isRunning() {
 		return isRunning;
 	}
+	public double getFrequency() {
+		return frequency;
+	}
 	public void setFrequency(final double frequency) {
 		this.frequency = frequency;
 	}
 
+	public double getTimeFactor() {
+		return timeFactor;
+	}
+
+	/**
+	 * Sets the speed of the real time simulation relative to the wall
+	 * clock (eg: 20 for 20x). The physics step does not change: faster
+	 * simulations run more steps per tick, so the trajectory is the
+	 * same at any speed.
+	 */
 	public void setTimeFactor(final double timeFactor) {
 		this.timeFactor = timeFactor;
 	}
 
+	/**
+	 * Returns the time factor the real time loop actually achieves
+	 * (simulated s per wall clock s, over the last half second). It is
+	 * lower than the requested one when the CPU cannot keep up.
+	 */
+	public double getAchievedTimeFactor() {
+		return achievedTimeFactor;
+	}
+
+	/** Sets the maximum number of wake-ups per second of the real time
+	 * loop, in Hz (default 1000). Fast simulations run several steps
+	 * per wake-up. */
+	public void setMaxTickFrequency(final double maxTickFrequency) {
+		this.maxTickFrequency = maxTickFrequency;
+	}
+
+	/** Sets the fraction of each tick the real time loop may spend
+	 * stepping (default 0.9). The steps beyond are postponed or
+	 * dropped, see the overrun policy. */
+	public void setCpuBudget(final double cpuBudget) {
+		this.cpuBudget = cpuBudget;
+	}
+
+	public OverrunPolicy getOverrunPolicy() {
+		return overrunPolicy;
+	}
+
+	/** Sets what the real time loop does with the steps of a late tick
+	 * (default: CATCH_UP). */
+	public void setOverrunPolicy(final OverrunPolicy overrunPolicy) {
+		this.overrunPolicy = overrunPolicy;
+	}
+
+	/** Sets the maximum number of steps caught up in a single tick; the
+	 * steps beyond are dropped. */
+	public void setMaxCatchUpSteps(final int maxCatchUpSteps) {
+		this.maxCatchUpSteps = maxCatchUpSteps;
+	}
+
+	/**
+	 * Sets the time before each deadline during which the real time loop
+	 * busy waits, in ns. 0 only parks the thread (least CPU, most jitter),
+	 * Long.MAX_VALUE only busy waits (a whole core).
+	 */
+	public void setSpinWindow(final long spinWindow) {
+		this.spinWindow = spinWindow;
+	}
+
+	/** Returns the timing statistics of the real time mode (jitter,
+	 * deadline misses). They are reset when a simulation starts. */
+	public RealTimeStatistics getRealTimeStatistics() {
+		return realTimeStatistics;
+	}
+
 	
+	/**
+	 * Registers an event to detect on an object. The event is located
+	 * exactly inside the steps, and stops the simulation if it is
+	 * terminal.
+	 * 
+	 * @param object The object the event function applies to (must be
+	 * simulated by this engine).
+	 * @param event The event.
+	 */
+	public void addEvent(final PhysicalObject object, final PhysicsEvent event) {
+		this.stop();
+		eventLocator.add(object, event);
+	}
+
+	/** Removes all the registered events. */
+	public void clearEvents() {
+		this.stop();
+		eventLocator.clear();
+	}
+
+	/** Sets the tolerance on the time of the events, in s. */
+	public void setEventTolerance(final double tolerance) {
+		eventLocator.setTolerance(tolerance);
+	}
+
+	/**
+	 * Schedules a task at a given time of the simulation: the step that
+	 * contains it is split so that the task runs exactly at that time.
+	 * Like the events, the tasks stay registered for the next
+	 * simulations (until clearTasks()), so they can be scheduled before
+	 * simulate() or start(). A simulation resumed after a restore()
+	 * skips the runs that were due before the restored time.
+	 * 
+	 * @param task The task; it may return its next time to run again.
+	 * @param time The time of the first run, since epoch.
+	 */
+	public void schedule(final Scheduler.Task task, final double time) {
+		tasks.add(task);
+		taskTimes.add(time);
+		if (isRunning)
+			registerTask(task, time);
+	}
+
+	/**
+	 * Schedules a task at every multiple of its period (see
+	 * {@link #schedule(Scheduler.Task, double)}). In a running
+	 * simulation, its first run is the first multiple after the
+	 * current time.
+	 */
+	public void schedule(final Scheduler.PeriodicTask task) {
+		schedule(task, Double.NaN);
+	}
+
+	/** Removes all the tasks scheduled with schedule(). */
+	public void clearTasks() {
+		this.stop();
+		tasks.clear();
+		taskTimes.clear();
+	}
+
+	/**
+	 * Registers a task in the scheduler of the current simulation.
+	 * 
+	 * @param task The task.
+	 * @param time The time of its first run (NaN for the first multiple
+	 * of the period of a periodic task).
+	 */
+	private void registerTask(final Scheduler.Task task, final double time) {
+		if (Double.isNaN(time) && task instanceof Scheduler.PeriodicTask)
+			scheduler.schedule((Scheduler.PeriodicTask) task, timeSinceIgnition);
+		else if (time >= timeSinceIgnition)
+			scheduler.schedule(task, time);
+	}
+
+	public boolean isScheduledUpdates() {
+		return scheduledUpdates;
+	}
+
+	/**
+	 * Sets whether the objects register their discrete updates (eg: the
+	 * controller and gimbal of a rocket) as scheduled tasks, run at
+	 * their exact times, instead of polling them at the end of every
+	 * step (default). Takes effect on the next initSimulation().
+	 */
+	public void setScheduledUpdates(final boolean scheduledUpdates) {
+		this.scheduledUpdates = scheduledUpdates;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads that step the objects. With more than
+	 * one thread, the objects are split between the threads at every
+	 * fixed step, when there are enough of them (adaptive steps stay
+	 * sequential). The results do not depend on the number of threads.
+	 * Takes effect at the next simulation start. Default is 1.
+	 */
+	public void setParallelism(final int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+
+	/**
+	 * Sets the numerical integration scheme used to move the objects.
+	 * A higher order integrator allows a lower frequency for the same
+	 * precision. Default is {@link SemiImplicitEulerIntegrator}.
+	 */
+	public void setIntegrator(final Integrator integrator) {
+		this.integrator = integrator;
+	}
+
+	/**
+	 * Creates a snapshot of the state of the objects, to be read from
+	 * another thread with {@link #readSnapshot(PhysicsSnapshot)}. The
+	 * engine publishes its state after every step once a snapshot has
+	 * been created.
+	 * 
+	 * @return A new snapshot, owned by the caller (empty until read).
+	 */
+	public synchronized PhysicsSnapshot createSnapshot() {
+		if (snapshotBuffer == null)
+			snapshotBuffer = new SnapshotBuffer(objects.size(), 0);
+		return new PhysicsSnapshot();
+	}
+
+	/**
+	 * Copies the last published state of the objects in a snapshot.
+	 * The copy is consistent (all the values come from the same step)
+	 * and never blocks the engine thread; any number of threads may
+	 * read at the same time, each one with its own snapshot.
+	 * 
+	 * @param snapshot A snapshot created by {@link #createSnapshot()}.
+	 * @return true if the snapshot was updated with a newer state.
+	 */
+	public boolean readSnapshot(final PhysicsSnapshot snapshot) {
+		final SnapshotBuffer buffer = snapshotBuffer;
+		return buffer != null && buffer.read(snapshot);
+	}
+
+	/** Returns the current time since epoch (motor ignition), in s. */
+	public double getTimeSinceIgnition() {
+		return timeSinceIgnition;
+	}
+
 	public List<PhysicalObject> getObjects() {
 		return objects;
 	}
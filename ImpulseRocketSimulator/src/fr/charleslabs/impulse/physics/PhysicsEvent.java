@@ -0,0 +1,166 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * An event of the simulation, described by an event function of
+ * the time and of the state of a PhysicalObject: the event occurs
+ * when the function crosses zero (eg: altitude for the landing,
+ * vertical speed for the apogee).
+ * <br><br>
+ * The PhysicsEngine evaluates the function after each step and,
+ * on a sign change, locates the exact crossing time inside the
+ * step. It then calls {@link #onEvent(PhysicalObject, double)}
+ * with the object in its state at that time, and stops the
+ * simulation there if the event is terminal. Coarse steps still
+ * give exact touchdown and apogee values.
+ * 
+ * @author Charles Grassin
+ */
+public abstract class PhysicsEvent {
+	/** The direction of the zero crossings that trigger the event. */
+	public static enum Direction {
+		RISING, FALLING, BOTH
+	};
+
+	/** The direction of the crossings to detect. */
+	private final Direction direction;
+	/** True if the simulation stops on this event. */
+	private final boolean terminal;
+	/** Time of the last occurrence (NaN if none), in s. */
+	private double lastOccurrence = Double.NaN;
+	/** Number of occurrences since the start of the simulation. */
+	private int occurrences;
+
+	/**
+	 * Constructs an event.
+	 * 
+	 * @param direction The direction of the zero crossings to detect.
+	 * @param terminal True if the simulation must stop on the event.
+	 */
+	protected PhysicsEvent(final Direction direction, final boolean terminal) {
+		this.direction = direction;
+		this.terminal = terminal;
+	}
+
+	/**
+	 * The event function: the event occurs when it crosses zero. It
+	 * must be continuous in time.
+	 * 
+	 * @param object The object, in its current state.
+	 * @param currentT The current time since epoch.
+	 * @return The value of the event function.
+	 */
+	public abstract double evaluate(final PhysicalObject object,
+			final double currentT);
+
+	/**
+	 * Called when the event occurs, with the object in its state at the
+	 * exact time of the event. Inherit to react to the event; the
+	 * default implementation does nothing.
+	 * 
+	 * @param object The object, in its state at the time of the event.
+	 * @param currentT The time of the event, since epoch.
+	 */
+	protected void onEvent(final PhysicalObject object, final double currentT) {
+	}
+
+	/** Records an occurrence and calls onEvent. Called by the engine. */
+	final void trigger(final PhysicalObject object, final double currentT) {
+		lastOccurrence = currentT;
+		occurrences++;
+		onEvent(object, currentT);
+	}
+
+	/** Forgets the previous occurrences. Called on simulation start-up. */
+	void reset() {
+		lastOccurrence = Double.NaN;
+		occurrences = 0;
+	}
+
+	/**
+	 * Checks whether the event function crossed zero in the direction of
+	 * the event between two values.
+	 */
+	final boolean isCrossing(final double previousValue, final double value) {
+		final boolean rising = previousValue < 0 && value >= 0;
+		final boolean falling = previousValue > 0 && value <= 0;
+		switch (direction) {
+		case RISING:
+			return rising;
+		case FALLING:
+			return falling;
+		default:
+			return rising || falling;
+		}
+	}
+
+	// --- Common events ---
+	/**
+	 * An event on the altitude (Z position) of an object.
+	 * 
+	 * @param altitude The altitude to detect, in m.
+	 * @param direction FALLING to detect a descent through the altitude.
+	 * @param terminal True if the simulation must stop on the event.
+	 */
+	public static PhysicsEvent altitude(final double altitude,
+			final Direction direction, final boolean terminal) {
+		return new PhysicsEvent(direction, terminal) {
+			@Override
+			public double evaluate(final PhysicalObject object, final double currentT) {
+				return object.linearMotion.position.z - altitude;
+			}
+		};
+	}
+
+	/**
+	 * An event on the vertical speed (Z speed) of an object. The apogee
+	 * is a vertical speed of 0, FALLING.
+	 * 
+	 * @param speed The vertical speed to detect, in m/s.
+	 * @param direction The direction of the crossings to detect.
+	 * @param terminal True if the simulation must stop on the event.
+	 */
+	public static PhysicsEvent verticalSpeed(final double speed,
+			final Direction direction, final boolean terminal) {
+		return new PhysicsEvent(direction, terminal) {
+			@Override
+			public double evaluate(final PhysicalObject object, final double currentT) {
+				return object.linearMotion.speed.z - speed;
+			}
+		};
+	}
+
+	/**
+	 * An event at a given time (eg: the burn time of a motor).
+	 * 
+	 * @param time The time of the event, since epoch.
+	 * @param terminal True if the simulation must stop on the event.
+	 */
+	public static PhysicsEvent time(final double time, final boolean terminal) {
+		return new PhysicsEvent(Direction.RISING, terminal) {
+			@Override
+			public double evaluate(final PhysicalObject object, final double currentT) {
+				return currentT - time;
+			}
+		};
+	}
+
+	// --- Getters ---
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public boolean isTerminal() {
+		return terminal;
+	}
+
+	/** Returns the time of the last occurrence of the event, or NaN if
+	 * it has not occurred yet. */
+	public double getLastOccurrence() {
+		return lastOccurrence;
+	}
+
+	/** Returns the number of occurrences since the simulation start-up. */
+	public int getOccurrences() {
+		return occurrences;
+	}
+}
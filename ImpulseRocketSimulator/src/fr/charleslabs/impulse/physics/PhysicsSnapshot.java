@@ -0,0 +1,107 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * A consistent copy of the state of the objects of a PhysicsEngine
+ * (linear and angular motion matrices), taken at the end of a step.
+ * All the values come from the same step, at the given simulation
+ * time.
+ * <br><br>
+ * A snapshot is owned by its reader: create it once with
+ * {@link PhysicsEngine#createSnapshot()} and refresh it with
+ * {@link PhysicsEngine#readSnapshot(PhysicsSnapshot)}, which
+ * does not block the engine thread.
+ * 
+ * @author Charles Grassin
+ */
+public final class PhysicsSnapshot {
+	/** Number of values of an object in a snapshot: acceleration, speed
+	 * and position, for the linear then the angular motion. */
+	static final int VALUES_PER_OBJECT = 18;
+
+	private PhysicsMatrix[] linearMotions = new PhysicsMatrix[0],
+			angularMotions = new PhysicsMatrix[0];
+	/** Simulation time of the state, in s. */
+	private double time;
+	/** Number of the publication the state comes from (0: none yet). */
+	private long sequence;
+	/** Raw values, in the publication layout. */
+	private double[] buffer = new double[0];
+
+	PhysicsSnapshot() {
+	}
+
+	/** Resizes the snapshot for a number of objects. */
+	void setObjectCount(final int count) {
+		if (count == linearMotions.length)
+			return;
+		linearMotions = new PhysicsMatrix[count];
+		angularMotions = new PhysicsMatrix[count];
+		for (int i = 0; i < count; i++) {
+			linearMotions[i] = new PhysicsMatrix();
+			angularMotions[i] = new PhysicsMatrix();
+		}
+	}
+
+	/** Returns the reader-owned array the raw values are copied to,
+	 * before being checked and unpacked. */
+	double[] getBuffer(final int size) {
+		if (buffer.length != size)
+			buffer = new double[size];
+		return buffer;
+	}
+
+	/** Unpacks the raw values in the motion matrices. */
+	void unpack() {
+		for (int i = 0, offset = 0; i < linearMotions.length; i++) {
+			offset = unpack(linearMotions[i], offset);
+			offset = unpack(angularMotions[i], offset);
+		}
+	}
+
+	private int unpack(final PhysicsMatrix matrix, int offset) {
+		matrix.acceleration.x = buffer[offset++];
+		matrix.acceleration.y = buffer[offset++];
+		matrix.acceleration.z = buffer[offset++];
+		matrix.speed.x = buffer[offset++];
+		matrix.speed.y = buffer[offset++];
+		matrix.speed.z = buffer[offset++];
+		matrix.position.x = buffer[offset++];
+		matrix.position.y = buffer[offset++];
+		matrix.position.z = buffer[offset++];
+		return offset;
+	}
+
+	void setTime(final double time, final long sequence) {
+		this.time = time;
+		this.sequence = sequence;
+	}
+
+	// --- Getters ---
+	/** Returns the simulation time of the state (time since ignition),
+	 * in s. */
+	public double getTime() {
+		return time;
+	}
+
+	/** Returns the number of the publication the state comes from;
+	 * it increases with every step (0 if nothing was read yet). */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getObjectCount() {
+		return linearMotions.length;
+	}
+
+	/** Returns the linear motion of an object (in the order of
+	 * {@link PhysicsEngine#getObjects()}). */
+	public PhysicsMatrix getLinearMotion(final int index) {
+		return linearMotions[index];
+	}
+
+	/** Returns the angular motion of an object (in the order of
+	 * {@link PhysicsEngine#getObjects()}). */
+	public PhysicsMatrix getAngularMotion(final int index) {
+		return angularMotions[index];
+	}
+}
@@ -0,0 +1,104 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * Timing statistics of the real time mode of the PhysicsEngine:
+ * the jitter of the wake-ups (how late each tick starts after its
+ * deadline), the deadline misses and the steps caught up or
+ * dropped.
+ * <br><br>
+ * Written by the engine thread, and readable from any other
+ * thread while the simulation runs.
+ *
+ * @author Charles Grassin
+ */
+public final class RealTimeStatistics {
+	/** Number of ticks (wake-ups) since the start of the simulation. */
+	private long ticks;
+	/** Number of ticks that started more than one period late. */
+	private long deadlineMisses;
+	/** Number of extra steps run to catch up, and of steps dropped. */
+	private long caughtUpSteps, droppedSteps;
+	/** Sum, sum of squares and maximum of the lateness, in ns. */
+	private double latenessSum, latenessSquares;
+	private long maxLateness;
+
+	/** Forgets all the measures. Called on simulation start-up. */
+	synchronized void reset() {
+		ticks = 0;
+		deadlineMisses = 0;
+		caughtUpSteps = 0;
+		droppedSteps = 0;
+		latenessSum = 0;
+		latenessSquares = 0;
+		maxLateness = 0;
+	}
+
+	/**
+	 * Records a tick.
+	 *
+	 * @param lateness Time between the deadline and the wake-up, in ns.
+	 * @param missedPeriods Number of whole periods elapsed since the
+	 * deadline (0 if the deadline was met).
+	 * @param caughtUp Number of extra steps run during the tick.
+	 * @param dropped Number of steps given up during the tick.
+	 */
+	synchronized void record(final long lateness, final long missedPeriods,
+			final long caughtUp, final long dropped) {
+		ticks++;
+		if (missedPeriods > 0)
+			deadlineMisses++;
+		caughtUpSteps += caughtUp;
+		droppedSteps += dropped;
+		latenessSum += lateness;
+		latenessSquares += (double) lateness * lateness;
+		if (lateness > maxLateness)
+			maxLateness = lateness;
+	}
+
+	// --- Getters ---
+	public synchronized long getTicks() {
+		return ticks;
+	}
+
+	/** Returns the number of ticks that started more than one period
+	 * after their deadline. */
+	public synchronized long getDeadlineMisses() {
+		return deadlineMisses;
+	}
+
+	/** Returns the number of extra steps run to catch up with the wall
+	 * clock (OverrunPolicy.CATCH_UP). */
+	public synchronized long getCaughtUpSteps() {
+		return caughtUpSteps;
+	}
+
+	/** Returns the number of steps given up: the simulation fell
+	 * behind the wall clock by as many steps. */
+	public synchronized long getDroppedSteps() {
+		return droppedSteps;
+	}
+
+	/** Returns the mean lateness of the wake-ups, in ns. */
+	public synchronized double getMeanJitter() {
+		return (ticks > 0) ? latenessSum / ticks : 0;
+	}
+
+	/** Returns the root mean square lateness of the wake-ups, in ns. */
+	public synchronized double getRmsJitter() {
+		return (ticks > 0) ? Math.sqrt(latenessSquares / ticks) : 0;
+	}
+
+	/** Returns the maximum lateness of the wake-ups, in ns. */
+	public synchronized long getMaxJitter() {
+		return maxLateness;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"ticks=%d jitter(mean=%.1fus rms=%.1fus max=%.1fus) misses=%d caughtUp=%d dropped=%d",
+				ticks, getMeanJitter() / 1000, getRmsJitter() / 1000,
+				maxLateness / 1000.0d, deadlineMisses, caughtUpSteps,
+				droppedSteps);
+	}
+}
@@ -0,0 +1,185 @@
+package fr.charleslabs.impulse.physics;
+
+import java.util.Arrays;
+
+/**
+ * The task scheduler of a PhysicsEngine: components (controllers,
+ * actuators, sensors, scripted disturbances...) register tasks at
+ * their own times, and the engine splits its steps so that each
+ * task runs at its exact time, with the objects in their state at
+ * that time.
+ * <br><br>
+ * Tasks are kept in a binary heap ordered by time; tasks due at the
+ * same time run in the order they were scheduled, so a simulation
+ * is deterministic.
+ *
+ * @author Charles Grassin
+ */
+public final class Scheduler {
+	/** A task run by the scheduler. */
+	public static interface Task {
+		/**
+		 * Runs the task.
+		 *
+		 * @param currentT The time the task was scheduled at, since epoch.
+		 * @return The time of the next run, strictly after currentT, or
+		 * anything else (eg: Double.NaN) to stop.
+		 */
+		public double run(final double currentT);
+	}
+
+	/**
+	 * A task run at every multiple of a period (since epoch), so that
+	 * its times do not drift whatever the steps of the engine.
+	 */
+	public static abstract class PeriodicTask implements Task {
+		private final double period;
+		private long count;
+
+		/**
+		 * @param period The period of the task, in s.
+		 */
+		public PeriodicTask(final double period) {
+			this.period = period;
+		}
+
+		/** Returns the first multiple of the period strictly after a
+		 * given time, to schedule the task. */
+		public double getFirstTime(final double currentT) {
+			count = (long) Math.floor(currentT / period) + 1;
+			return count * period;
+		}
+
+		@Override
+		public final double run(final double currentT) {
+			execute(currentT);
+			count++;
+			return count * period;
+		}
+
+		/** The work of the task. @param currentT The current time. */
+		protected abstract void execute(final double currentT);
+
+		public double getPeriod() {
+			return period;
+		}
+	}
+
+	// Binary heap: times, tasks and scheduling order
+	private double[] times = new double[8];
+	private Task[] tasks = new Task[8];
+	private long[] orders = new long[8];
+	private int size;
+	private long nextOrder;
+
+	/**
+	 * Schedules a task.
+	 *
+	 * @param task The task.
+	 * @param time The time at which the task must run, since epoch.
+	 */
+	public void schedule(final Task task, final double time) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			tasks = Arrays.copyOf(tasks, size * 2);
+			orders = Arrays.copyOf(orders, size * 2);
+		}
+		int i = size++;
+		final long order = nextOrder++;
+		// Sift up
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (!isBefore(time, order, times[parent], orders[parent]))
+				break;
+			move(parent, i);
+			i = parent;
+		}
+		times[i] = time;
+		tasks[i] = task;
+		orders[i] = order;
+	}
+
+	/**
+	 * Schedules a periodic task at the first multiple of its period
+	 * after a given time.
+	 *
+	 * @param task The task.
+	 * @param currentT The current time, since epoch.
+	 */
+	public void schedule(final PeriodicTask task, final double currentT) {
+		schedule((Task) task, task.getFirstTime(currentT));
+	}
+
+	/** Returns the time of the next task, or Double.POSITIVE_INFINITY
+	 * if there is none. */
+	public double getNextTime() {
+		return (size > 0) ? times[0] : Double.POSITIVE_INFINITY;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Removes all the tasks. */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			tasks[i] = null;
+		size = 0;
+	}
+
+	/**
+	 * Runs all the tasks due at or before a given time, in time order,
+	 * and schedules their next runs.
+	 *
+	 * @param currentT The current time, since epoch.
+	 */
+	void runDue(final double currentT) {
+		while (size > 0 && times[0] <= currentT) {
+			final double time = times[0];
+			final Task task = tasks[0];
+			removeFirst();
+			final double next = task.run(time);
+			if (next > time)
+				schedule(task, next);
+		}
+	}
+
+	private void removeFirst() {
+		size--;
+		final double time = times[size];
+		final Task task = tasks[size];
+		final long order = orders[size];
+		tasks[size] = null;
+		// Sift down
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size
+					&& isBefore(times[child + 1], orders[child + 1],
+							times[child], orders[child]))
+				child++;
+			if (!isBefore(times[child], orders[child], time, order))
+				break;
+			move(child, i);
+			i = child;
+		}
+		if (size > 0) {
+			times[i] = time;
+			tasks[i] = task;
+			orders[i] = order;
+		}
+	}
+
+	private void move(final int from, final int to) {
+		times[to] = times[from];
+		tasks[to] = tasks[from];
+		orders[to] = orders[from];
+	}
+
+	private static boolean isBefore(final double time, final long order,
+			final double otherTime, final long otherOrder) {
+		return time < otherTime || (time == otherTime && order < otherOrder);
+	}
+}
@@ -0,0 +1,39 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * The semi-implicit (symplectic) Euler scheme: the speed is
+ * updated with the acceleration first, then the position with
+ * the new speed. This is the historic behaviour of the engine,
+ * and its default integrator.
+ * <br><br>
+ * First order, one force evaluation per step, and good energy
+ * conservation for oscillating motions.
+ * 
+ * @author Charles Grassin
+ */
+public class SemiImplicitEulerIntegrator implements Integrator {
+	/** Shared instance (the integrator has no state). */
+	public static final SemiImplicitEulerIntegrator INSTANCE = new SemiImplicitEulerIntegrator();
+
+	@Override
+	public void integrate(final PhysicalObject object, final double currentT,
+			final double deltaT) {
+		object.computeAccelerations(currentT, deltaT);
+		final PhysicsMatrix angularMotion = object.angularMotion, linearMotion = object.linearMotion;
+
+		angularMotion.speed.x += angularMotion.acceleration.x * deltaT;
+		angularMotion.position.x += angularMotion.speed.x * deltaT;
+		angularMotion.speed.y += angularMotion.acceleration.y * deltaT;
+		angularMotion.position.y += angularMotion.speed.y * deltaT;
+		angularMotion.speed.z += angularMotion.acceleration.z * deltaT;
+		angularMotion.position.z += angularMotion.speed.z * deltaT;
+		object.normalizeAttitude();
+
+		linearMotion.speed.x += linearMotion.acceleration.x * deltaT;
+		linearMotion.position.x += linearMotion.speed.x * deltaT;
+		linearMotion.speed.y += linearMotion.acceleration.y * deltaT;
+		linearMotion.position.y += linearMotion.speed.y * deltaT;
+		linearMotion.speed.z += linearMotion.acceleration.z * deltaT;
+		linearMotion.position.z += linearMotion.speed.z * deltaT;
+	}
+}
@@ -0,0 +1,107 @@
+package fr.charleslabs.impulse.physics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Publishes the state of the objects of an engine to other threads
+ * with a sequence lock: the engine thread never waits, and readers
+ * retry until they copy the values of a single publication.
+ * <br><br>
+ * The sequence is odd while a publication is being written. The
+ * values are stored in an AtomicLongArray, so that the reads of the
+ * values cannot be reordered with the reads of the sequence.
+ * 
+ * @author Charles Grassin
+ */
+final class SnapshotBuffer {
+	/** Sequence lock: twice the number of publications, +1 while one
+	 * is being written. */
+	private final AtomicLong sequence = new AtomicLong();
+	/** Time, then {@link PhysicsSnapshot#VALUES_PER_OBJECT} values per
+	 * object (raw long bits of the doubles). */
+	private final AtomicLongArray values;
+	private final int objectCount;
+
+	/**
+	 * Constructs a buffer for a number of objects.
+	 * 
+	 * @param objectCount The number of objects.
+	 * @param publications The number of publications already made (by
+	 * the buffer this one replaces), so that readers see newer states.
+	 */
+	SnapshotBuffer(final int objectCount, final long publications) {
+		this.objectCount = objectCount;
+		this.sequence.set(2 * publications);
+		this.values = new AtomicLongArray(1 + objectCount
+				* PhysicsSnapshot.VALUES_PER_OBJECT);
+	}
+
+	/**
+	 * Publishes the current state of the objects. Called by the engine
+	 * thread only; does not allocate.
+	 */
+	void publish(final double time, final List<PhysicalObject> objects) {
+		final long start = sequence.get() + 1;
+		sequence.set(start);
+		values.lazySet(0, Double.doubleToRawLongBits(time));
+		int offset = 1;
+		for (int i = 0; i < objectCount; i++) {
+			offset = write(objects.get(i).linearMotion, offset);
+			offset = write(objects.get(i).angularMotion, offset);
+		}
+		sequence.set(start + 1);
+	}
+
+	private int write(final PhysicsMatrix matrix, int offset) {
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.acceleration.x));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.acceleration.y));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.acceleration.z));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.speed.x));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.speed.y));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.speed.z));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.position.x));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.position.y));
+		values.lazySet(offset++, Double.doubleToRawLongBits(matrix.position.z));
+		return offset;
+	}
+
+	int getObjectCount() {
+		return objectCount;
+	}
+
+	/** Returns the number of publications made. */
+	long getPublications() {
+		return sequence.get() / 2;
+	}
+
+	/**
+	 * Copies the last publication in a snapshot, if it is newer than
+	 * the state the snapshot holds. Never blocks the writer.
+	 * 
+	 * @return true if the snapshot was updated.
+	 */
+	boolean read(final PhysicsSnapshot snapshot) {
+		snapshot.setObjectCount(objectCount);
+		final double[] buffer = snapshot.getBuffer(values.length() - 1);
+		for (int attempt = 0;; attempt++) {
+			final long start = sequence.get();
+			if ((start & 1) == 0) {
+				if (start / 2 == snapshot.getSequence())
+					return false;
+				final double time = Double.longBitsToDouble(values.get(0));
+				for (int i = 0; i < buffer.length; i++)
+					buffer[i] = Double.longBitsToDouble(values.get(i + 1));
+				if (sequence.get() == start) {
+					snapshot.unpack();
+					snapshot.setTime(time, start / 2);
+					return true;
+				}
+			}
+			// A publication is being written: let the writer finish
+			if (attempt > 16)
+				Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package fr.charleslabs.impulse.physics;
+
+/**
+ * A function tabulated at evenly spaced points, and linearly
+ * interpolated in between. A lookup is an index computation and an
+ * interpolation: it replaces costly functions (exp, pow...) in the
+ * hot loop of the simulations. Outside of the table, the first or
+ * last value is returned.
+ *
+ * @author Charles Grassin
+ */
+public final class UniformTable {
+	private final static String INVALID_TABLE_EXCEPTION = "A table needs at least 2 values and a step > 0.";
+
+	private final double start, step, inverseStep;
+	private final double[] values;
+
+	/**
+	 * Constructs a table.
+	 *
+	 * @param start The abscissa of the first value.
+	 * @param step The interval between two values (> 0).
+	 * @param values The values of the function.
+	 * @throws Exception If the table is invalid.
+	 */
+	public UniformTable(final double start, final double step,
+			final double[] values) throws Exception {
+		if (values.length < 2 || !(step > 0))
+			throw new Exception(INVALID_TABLE_EXCEPTION);
+		this.start = start;
+		this.step = step;
+		this.inverseStep = 1 / step;
+		this.values = values.clone();
+	}
+
+	/**
+	 * Constructs a table with evenly spaced points from a piecewise
+	 * linear function given at arbitrary points.
+	 *
+	 * @param x The abscissas of the points, increasing.
+	 * @param y The values at the points.
+	 * @param step The interval of the table.
+	 * @throws Exception If the table is invalid.
+	 */
+	public static UniformTable resample(final double[] x, final double[] y,
+			final double step) throws Exception {
+		if (x.length != y.length || x.length < 2 || !(step > 0))
+			throw new Exception(INVALID_TABLE_EXCEPTION);
+		final int count = (int) Math.ceil((x[x.length - 1] - x[0]) / step) + 1;
+		final double[] values = new double[Math.max(2, count)];
+		int segment = 0;
+		for (int i = 0; i < values.length; i++) {
+			final double abscissa = Math.min(x[0] + i * step, x[x.length - 1]);
+			while (segment < x.length - 2 && abscissa > x[segment + 1])
+				segment++;
+			final double width = x[segment + 1] - x[segment];
+			values[i] = (width > 0) ? y[segment] + (y[segment + 1] - y[segment])
+					* (abscissa - x[segment]) / width : y[segment];
+		}
+		return new UniformTable(x[0], step, values);
+	}
+
+	/** Returns the interpolated value of the function. */
+	public double get(final double x) {
+		final double position = (x - start) * inverseStep;
+		if (!(position > 0))
+			return values[0];
+		final int index = (int) position;
+		if (index >= values.length - 1)
+			return values[values.length - 1];
+		final double fraction = position - index;
+		return values[index] + (values[index + 1] - values[index]) * fraction;
+	}
+
+	public double getStart() {
+		return start;
+	}
+
+	public double getStep() {
+		return step;
+	}
+
+	public int getSize() {
+		return values.length;
+	}
+}
@@ -4,6 +4,8 @@ import fr.charleslabs.impulse.rocket.controller.RocketController;
 import fr.charleslabs.impulse.rocket.motor.RocketMotor;
 import fr.charleslabs.impulse.physics.PhysicalObject;
 import fr.charleslabs.impulse.physics.PhysicsVector;
+import fr.charleslabs.impulse.physics.Scheduler;
+import fr.charleslabs.impulse.rocket.aero.Aerodynamics;
 import fr.charleslabs.impulse.rocket.gimbal.Gimbal;
 
 /**
@@ -21,11 +23,24 @@ public class Rocket extends PhysicalObject {
 	/** A gimbal that swivels the direction of thrust. */
 	private Gimbal gimbal;
 	private RocketController controller;
+	/** The aerodynamic model (null: no aerodynamic forces). */
+	private Aerodynamics aerodynamics;
 	
 	// private double rocketLength; // in m
 	/** The distance between the motor nozzle and the CoM, in m. */
 	private double centerOfMassHeight;
 
+	/** Time of the last update of the gimbal and controller, in s. */
+	private double lastUpdateTime;
+	/** True if the updates run as tasks of the engine's scheduler. */
+	private boolean isScheduled;
+
+	// Terms of the current step, shared by the force and the torque
+	private double stepThrust, stepTanGimbalX, stepTanGimbalY, stepU,
+			stepTanX, stepTanY, stepV;
+	// Aerodynamic terms of the current step
+	private double stepDragFactor, stepAeroTorqueX, stepAeroTorqueY;
+
 	/**
 	 * Constructs a Rocket with the following parameters:
 	 * 
@@ -66,7 +81,7 @@ public class Rocket extends PhysicalObject {
 	 * density can vary in the Z direction. This is taken into account with the
 	 * centerOfMassHeight variable.
 	 */
-	static private double computeMomentOfInertia(final double rocketLength,
+	static public double computeMomentOfInertia(final double rocketLength,
 			final double rocketMass,final  double centerOfMassHeight) {
 		double comRatio = centerOfMassHeight / rocketLength;
 		return Math.pow(rocketLength, 2)
@@ -77,46 +92,192 @@ public class Rocket extends PhysicalObject {
 	}
 
 	@Override
-	public void computeCinematics(final double currentT, final double deltaT) {
+	protected void update(final double currentT, final double deltaT) {
+		if (isScheduled)
+			return;
+		lastUpdateTime = currentT;
 		if (gimbal != null)
 			gimbal.compute(deltaT);
 		if(controller != null)
 			controller.compute(currentT);
-		super.computeCinematics(currentT, deltaT);
 	}
 
+	/**
+	 * With a scheduler, the gimbal and controller are only updated at
+	 * the exact call times of the controller (multiples of its period);
+	 * in between, the forces use the predicted gimbal slew.
+	 */
 	@Override
-	public PhysicsVector computeTorque(final double currentT,final  double deltaT) {
-		final double u = (gimbal!=null) ? Math.sqrt(1
-				+ Math.pow(Math.tan(Math.toRadians(gimbal.getGimbalAngleX())),
-						2)
-				+ Math.pow(Math.tan(Math.toRadians(gimbal.getGimbalAngleY())),
-						2)):1;
-		final double thrust = (rocketMotor!=null)?rocketMotor.getThrust(currentT):0;
+	protected void schedule(final Scheduler scheduler, final double currentT) {
+		isScheduled = scheduler != null;
+		if (isScheduled && controller != null)
+			scheduler.schedule(updateTask, controller.getNextCallTime());
+	}
+
+	/** Updates the gimbal and calls the controller at its exact time. */
+	private final Scheduler.Task updateTask = new Scheduler.Task() {
+		@Override
+		public double run(final double currentT) {
+			final double time = Math.max(currentT, lastUpdateTime);
+			if (gimbal != null)
+				gimbal.compute(time - lastUpdateTime);
+			lastUpdateTime = time;
+			if (controller == null)
+				return Double.NaN;
+			controller.compute(currentT);
+			return controller.getNextCallTime();
+		}
+	};
 
-		return new PhysicsVector(centerOfMassHeight * thrust
-				* tan(gimbal.getGimbalAngleX()) / u, centerOfMassHeight
-				* thrust * tan(gimbal.getGimbalAngleY()) / u, 0);
+	@Override
+	public double getNextEventTime(final double currentT) {
+		double nextEvent = (rocketMotor != null) ? rocketMotor
+				.getNextBreakpoint(currentT) : Double.POSITIVE_INFINITY;
+		if (controller != null)
+			nextEvent = Math.min(nextEvent, controller.getNextCallTime());
+		return nextEvent;
+	}
+
+	@Override
+	public PhysicsVector computeTorque(final double currentT,final  double deltaT) {
+		computeStepTerms(currentT);
+		final PhysicsVector torque = new PhysicsVector();
+		writeTorque(torque);
+		return torque;
 	}
 
 	@Override
 	public PhysicsVector computeForce(final double currentT, final double deltaT) {
-		final double u = (gimbal!=null) ? Math.sqrt(1
-				+ Math.pow(Math.tan(Math.toRadians(gimbal.getGimbalAngleX())),
-						2)
-				+ Math.pow(Math.tan(Math.toRadians(gimbal.getGimbalAngleY())),
-						2)):1;
-		final double v = Math.sqrt(1
-				+ Math.pow(Math.tan(Math.toRadians(angularMotion.position.x)),
-						2)
-				+ Math.pow(Math.tan(Math.toRadians(angularMotion.position.y)),
-						2));
-		final double thrust = (rocketMotor!=null)?rocketMotor.getThrust(currentT):0;
-
-		return new PhysicsVector(
-				thrust * tan(angularMotion.position.y) / u / v, thrust
-						* tan(angularMotion.position.x) / u / v, thrust / u / v
-						- 9.81 * mass);
+		computeStepTerms(currentT);
+		final PhysicsVector force = new PhysicsVector();
+		writeForce(force);
+		return force;
+	}
+
+	@Override
+	public void computeForceAndTorque(final double currentT,
+			final double deltaT, final PhysicsVector force,
+			final PhysicsVector torque) {
+		computeStepTerms(currentT);
+		writeForce(force);
+		writeTorque(torque);
+	}
+
+	/**
+	 * Computes the thrust and the trigonometric terms of the gimbal
+	 * and attitude angles, shared by the force and the torque. They
+	 * are computed once per step.
+	 */
+	private void computeStepTerms(final double currentT) {
+		stepThrust = (rocketMotor!=null)?rocketMotor.getThrust(currentT):0;
+
+		// Gimbal (always within +/-90 degrees). The gimbal keeps moving
+		// after the last update: this matters when a step spans several
+		// evaluation times (higher order or adaptive integrators).
+		if (gimbal != null) {
+			if (currentT > lastUpdateTime) {
+				stepTanGimbalX = tan(gimbal.getPredictedAngleX(currentT - lastUpdateTime));
+				stepTanGimbalY = tan(gimbal.getPredictedAngleY(currentT - lastUpdateTime));
+			} else {
+				stepTanGimbalX = tan(gimbal.getGimbalAngleX());
+				stepTanGimbalY = tan(gimbal.getGimbalAngleY());
+			}
+		} else {
+			stepTanGimbalX = 0;
+			stepTanGimbalY = 0;
+		}
+		stepU = Math.sqrt(1 + stepTanGimbalX * stepTanGimbalX
+				+ stepTanGimbalY * stepTanGimbalY);
+
+		// Attitude (the norm uses the plain tangent of the angle)
+		stepTanX = tan(angularMotion.position.x);
+		stepTanY = tan(angularMotion.position.y);
+		final double rawTanX = (Math.abs(angularMotion.position.x) > 90) ? Math
+				.tan(Math.toRadians(angularMotion.position.x)) : stepTanX;
+		final double rawTanY = (Math.abs(angularMotion.position.y) > 90) ? Math
+				.tan(Math.toRadians(angularMotion.position.y)) : stepTanY;
+		stepV = Math.sqrt(1 + rawTanX * rawTanX + rawTanY * rawTanY);
+
+		if (aerodynamics != null)
+			computeAerodynamicTerms();
+	}
+
+	/**
+	 * Computes the drag factor and the restoring moment of the current
+	 * step (no wind: the airspeed is the speed of the rocket). The
+	 * moment turns the axis of the rocket (the direction of the thrust
+	 * without gimbal) towards the airspeed.
+	 */
+	private void computeAerodynamicTerms() {
+		final PhysicsVector speed = linearMotion.speed;
+		final double airspeed = Math.sqrt(speed.x * speed.x + speed.y
+				* speed.y + speed.z * speed.z);
+		if (airspeed == 0) {
+			stepDragFactor = 0;
+			stepAeroTorqueX = 0;
+			stepAeroTorqueY = 0;
+			return;
+		}
+		final double altitude = linearMotion.position.z;
+		stepDragFactor = aerodynamics.computeDragFactor(altitude, airspeed);
+		final double moment = aerodynamics.computeMomentFactor(altitude, airspeed);
+		// Unit vector of the axis (its x component comes from the angle y)
+		final double axisX = stepTanY / stepV, axisY = stepTanX / stepV, axisZ = 1 / stepV;
+		stepAeroTorqueX = -moment * (axisY * speed.z - axisZ * speed.y);
+		stepAeroTorqueY = moment * (axisZ * speed.x - axisX * speed.z);
+	}
+
+	/** Writes the torque, from the terms of the current step. */
+	private void writeTorque(final PhysicsVector torque) {
+		torque.x = centerOfMassHeight * stepThrust * stepTanGimbalX / stepU;
+		torque.y = centerOfMassHeight * stepThrust * stepTanGimbalY / stepU;
+		torque.z = 0;
+		if (aerodynamics != null) {
+			torque.x += stepAeroTorqueX;
+			torque.y += stepAeroTorqueY;
+		}
+	}
+
+	/** Writes the force, from the terms of the current step. */
+	private void writeForce(final PhysicsVector force) {
+		force.x = stepThrust * stepTanY / stepU / stepV;
+		force.y = stepThrust * stepTanX / stepU / stepV;
+		force.z = stepThrust / stepU / stepV - 9.81 * mass;
+		if (aerodynamics != null) {
+			final PhysicsVector speed = linearMotion.speed;
+			force.x -= stepDragFactor * speed.x;
+			force.y -= stepDragFactor * speed.y;
+			force.z -= stepDragFactor * speed.z;
+		}
+	}
+
+	@Override
+	public int getCheckpointSize() {
+		return super.getCheckpointSize() + 1
+				+ ((gimbal != null) ? gimbal.getCheckpointSize() : 0)
+				+ ((controller != null) ? controller.getCheckpointSize() : 0);
+	}
+
+	@Override
+	public int saveCheckpoint(final double[] data, int offset) {
+		offset = super.saveCheckpoint(data, offset);
+		data[offset++] = lastUpdateTime;
+		if (gimbal != null)
+			offset = gimbal.saveCheckpoint(data, offset);
+		if (controller != null)
+			offset = controller.saveCheckpoint(data, offset);
+		return offset;
+	}
+
+	@Override
+	public int restoreCheckpoint(final double[] data, int offset) {
+		offset = super.restoreCheckpoint(data, offset);
+		lastUpdateTime = data[offset++];
+		if (gimbal != null)
+			offset = gimbal.restoreCheckpoint(data, offset);
+		if (controller != null)
+			offset = controller.restoreCheckpoint(data, offset);
+		return offset;
 	}
 
 	@Override
@@ -138,6 +299,7 @@ public class Rocket extends PhysicalObject {
 	@Override
 	public void init() {
 		this.linearMotion.position.z = 1;
+		this.lastUpdateTime = 0;
 		if (gimbal != null)
 			gimbal.init();
 		if(rocketMotor != null)
@@ -148,7 +310,23 @@ public class Rocket extends PhysicalObject {
 	
 	@Override
 	public void stop() {
-		controller.stop();
+		if(controller != null)
+			controller.stop();
+	}
+	
+	/**
+	 * Computes the tilt of the rocket, i.e. the angle between its
+	 * axis and the vertical.
+	 * 
+	 * @return The tilt angle, in degrees (0 when the rocket is
+	 * vertical, 180 when it is upside down).
+	 */
+	public double getTiltAngle() {
+		final double tanX = tan(angularMotion.position.x), tanY = tan(angularMotion.position.y);
+		final double tilt = Math.toDegrees(Math.acos(1 / Math.sqrt(1 + tanX * tanX + tanY * tanY)));
+		if (Math.abs(angularMotion.position.x) > 90 || Math.abs(angularMotion.position.y) > 90)
+			return 180 - tilt;
+		return tilt;
 	}
 	
 	private static double tan(final double angle) {
@@ -172,6 +350,29 @@ public class Rocket extends PhysicalObject {
 		return gimbal;
 	}
 
+	public RocketController getController() {
+		return controller;
+	}
+
+	/** Returns the thrust of the last evaluation of the forces, in N. */
+	public double getCurrentThrust() {
+		return stepThrust;
+	}
+
+	public double getCenterOfMassHeight() {
+		return centerOfMassHeight;
+	}
+
+	public Aerodynamics getAerodynamics() {
+		return aerodynamics;
+	}
+
+	/** Sets the aerodynamic model of the rocket (null: no aerodynamic
+	 * forces, as in vacuum). */
+	public void setAerodynamics(final Aerodynamics aerodynamics) {
+		this.aerodynamics = aerodynamics;
+	}
+
 	public void setController(RocketController controller) {
 		this.controller = controller;
 	}
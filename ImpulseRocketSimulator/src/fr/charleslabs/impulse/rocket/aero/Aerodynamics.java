@@ -0,0 +1,125 @@
+package fr.charleslabs.impulse.rocket.aero;
+
+import fr.charleslabs.impulse.physics.UniformTable;
+
+/**
+ * The aerodynamic model of a rocket: a drag opposed to the airspeed,
+ * with a drag coefficient tabulated by Mach number, and a restoring
+ * moment that turns the rocket into the relative wind (weathercock
+ * stability), proportional to the normal force coefficient slope and
+ * to the static margin.
+ * <br><br>
+ * The drag coefficient is resampled on an evenly spaced Mach table,
+ * and the atmosphere comes from the tables of Atmosphere: an
+ * evaluation is a few table lookups.
+ *
+ * @author Charles Grassin
+ */
+public class Aerodynamics {
+	private final static String INVALID_DIAMETER_EXCEPTION = "The diameter must be > 0.";
+	/** Default drag coefficient of a model rocket, by Mach number. */
+	private final static double[] DEFAULT_MACH = { 0, 0.6, 0.8, 0.9, 1.0,
+			1.1, 1.2, 1.5, 2, 3, 5 };
+	private final static double[] DEFAULT_CD = { 0.45, 0.45, 0.5, 0.6, 0.8,
+			0.85, 0.8, 0.7, 0.6, 0.5, 0.45 };
+	/** Interval of the Mach table. */
+	private final static double MACH_STEP = 0.01;
+
+	/** Diameter of the body, in m. */
+	private final double diameter;
+	/** Reference area (body cross-section), in m^2. */
+	private final double referenceArea;
+	/** Drag coefficient, by Mach number. */
+	private final UniformTable dragCoefficient;
+	/** Slope of the normal force coefficient, per radian. */
+	private final double normalForceSlope;
+	/** Distance between the center of pressure and the CoM, in calibers. */
+	private final double staticMargin;
+
+	/**
+	 * Constructs the aerodynamic model of a typical finned model rocket
+	 * (normal force slope of 10 per radian, static margin of 1.5
+	 * calibers).
+	 *
+	 * @param diameter The diameter of the body, in m.
+	 * @throws Exception If the diameter is invalid.
+	 */
+	public Aerodynamics(final double diameter) throws Exception {
+		this(diameter, DEFAULT_MACH, DEFAULT_CD, 10, 1.5);
+	}
+
+	/**
+	 * Constructs an aerodynamic model.
+	 *
+	 * @param diameter The diameter of the body, in m.
+	 * @param mach The Mach numbers of the drag curve, increasing.
+	 * @param dragCoefficient The drag coefficient at these Mach numbers.
+	 * @param normalForceSlope The slope of the normal force coefficient
+	 * with the angle of attack, per radian.
+	 * @param staticMargin The distance between the center of pressure
+	 * and the center of mass, in calibers (> 0 for a stable rocket).
+	 * @throws Exception If the model is invalid.
+	 */
+	public Aerodynamics(final double diameter, final double[] mach,
+			final double[] dragCoefficient, final double normalForceSlope,
+			final double staticMargin) throws Exception {
+		if (!(diameter > 0))
+			throw new Exception(INVALID_DIAMETER_EXCEPTION);
+		this.diameter = diameter;
+		this.referenceArea = Math.PI * diameter * diameter / 4;
+		this.dragCoefficient = UniformTable.resample(mach, dragCoefficient,
+				MACH_STEP);
+		this.normalForceSlope = normalForceSlope;
+		this.staticMargin = staticMargin;
+	}
+
+	/**
+	 * Computes the drag factor k at a given altitude and airspeed: the
+	 * drag force is -k times the airspeed vector.
+	 *
+	 * @param altitude The altitude, in m.
+	 * @param airspeed The norm of the airspeed, in m/s.
+	 * @return The drag factor, in kg/s.
+	 */
+	public double computeDragFactor(final double altitude, final double airspeed) {
+		final double mach = airspeed / Atmosphere.getSpeedOfSound(altitude);
+		return 0.5 * Atmosphere.getDensity(altitude) * airspeed
+				* dragCoefficient.get(mach) * referenceArea;
+	}
+
+	/**
+	 * Computes the restoring moment factor k at a given altitude and
+	 * airspeed: the moment is k times the cross product of the rocket
+	 * axis (unit vector) and the airspeed vector.
+	 *
+	 * @param altitude The altitude, in m.
+	 * @param airspeed The norm of the airspeed, in m/s.
+	 * @return The moment factor, in kg.m/s.
+	 */
+	public double computeMomentFactor(final double altitude, final double airspeed) {
+		return 0.5 * Atmosphere.getDensity(altitude) * airspeed
+				* referenceArea * normalForceSlope * staticMargin * diameter;
+	}
+
+	/** Returns the drag coefficient at a Mach number. */
+	public double getDragCoefficient(final double mach) {
+		return dragCoefficient.get(mach);
+	}
+
+	// --- Getters ---
+	public double getDiameter() {
+		return diameter;
+	}
+
+	public double getReferenceArea() {
+		return referenceArea;
+	}
+
+	public double getNormalForceSlope() {
+		return normalForceSlope;
+	}
+
+	public double getStaticMargin() {
+		return staticMargin;
+	}
+}
@@ -0,0 +1,110 @@
+package fr.charleslabs.impulse.rocket.aero;
+
+import fr.charleslabs.impulse.physics.UniformTable;
+
+/**
+ * The International Standard Atmosphere (ISA, 1976), from sea level
+ * to 86 km. The density and the speed of sound are tabulated every
+ * 50 m when the class is loaded, so that a simulation step only does
+ * table lookups; above 86 km, the values at 86 km are returned.
+ *
+ * @author Charles Grassin
+ */
+public final class Atmosphere {
+	/** Sea level pressure (Pa) and temperature (K). */
+	private final static double P0 = 101325, T0 = 288.15;
+	/** Standard gravity (m.s^-2), molar mass of air (kg/mol), gas constant (J/(mol.K)). */
+	private final static double G0 = 9.80665, M = 0.0289644, R = 8.3144598;
+	/** Ratio of specific heats of air. */
+	private final static double GAMMA = 1.4;
+	/** Base altitudes (m) and temperature lapse rates (K/m) of the layers. */
+	private final static double[] LAYER_ALTITUDES = { 0, 11000, 20000, 32000,
+			47000, 51000, 71000, 86000 };
+	private final static double[] LAYER_LAPSE_RATES = { -0.0065, 0, 0.001,
+			0.0028, 0, -0.0028, -0.002 };
+	/** Interval of the tables, in m. */
+	private final static double TABLE_STEP = 50;
+
+	private final static UniformTable DENSITY, SPEED_OF_SOUND;
+
+	static {
+		final int count = (int) (LAYER_ALTITUDES[LAYER_ALTITUDES.length - 1] / TABLE_STEP) + 1;
+		final double[] density = new double[count];
+		final double[] speedOfSound = new double[count];
+		for (int i = 0; i < count; i++) {
+			final double altitude = i * TABLE_STEP;
+			density[i] = computeDensity(altitude);
+			speedOfSound[i] = computeSpeedOfSound(altitude);
+		}
+		try {
+			DENSITY = new UniformTable(0, TABLE_STEP, density);
+			SPEED_OF_SOUND = new UniformTable(0, TABLE_STEP, speedOfSound);
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Atmosphere() {
+	}
+
+	/** Returns the air density at an altitude (tabulated), in kg/m^3.
+	 * @param altitude The geopotential altitude, in m. */
+	public static double getDensity(final double altitude) {
+		return DENSITY.get(altitude);
+	}
+
+	/** Returns the speed of sound at an altitude (tabulated), in m/s.
+	 * @param altitude The geopotential altitude, in m. */
+	public static double getSpeedOfSound(final double altitude) {
+		return SPEED_OF_SOUND.get(altitude);
+	}
+
+	/** Computes the temperature at an altitude, in K. */
+	public static double computeTemperature(final double altitude) {
+		final double h = clamp(altitude);
+		double temperature = T0;
+		for (int i = 0; i < LAYER_LAPSE_RATES.length; i++) {
+			final double top = Math.min(h, LAYER_ALTITUDES[i + 1]);
+			temperature += LAYER_LAPSE_RATES[i] * (top - LAYER_ALTITUDES[i]);
+			if (h <= LAYER_ALTITUDES[i + 1])
+				break;
+		}
+		return temperature;
+	}
+
+	/** Computes the pressure at an altitude, in Pa. */
+	public static double computePressure(final double altitude) {
+		final double h = clamp(altitude);
+		double pressure = P0, baseTemperature = T0;
+		for (int i = 0; i < LAYER_LAPSE_RATES.length; i++) {
+			final double top = Math.min(h, LAYER_ALTITUDES[i + 1]);
+			final double height = top - LAYER_ALTITUDES[i];
+			final double lapseRate = LAYER_LAPSE_RATES[i];
+			final double temperature = baseTemperature + lapseRate * height;
+			if (lapseRate == 0)
+				pressure *= Math.exp(-G0 * M * height / (R * baseTemperature));
+			else
+				pressure *= Math.pow(baseTemperature / temperature, G0 * M
+						/ (R * lapseRate));
+			if (h <= LAYER_ALTITUDES[i + 1])
+				break;
+			baseTemperature = temperature;
+		}
+		return pressure;
+	}
+
+	/** Computes the air density at an altitude, in kg/m^3. */
+	public static double computeDensity(final double altitude) {
+		return computePressure(altitude) * M / (R * computeTemperature(altitude));
+	}
+
+	/** Computes the speed of sound at an altitude, in m/s. */
+	public static double computeSpeedOfSound(final double altitude) {
+		return Math.sqrt(GAMMA * R * computeTemperature(altitude) / M);
+	}
+
+	private static double clamp(final double altitude) {
+		return Math.max(0, Math.min(altitude,
+				LAYER_ALTITUDES[LAYER_ALTITUDES.length - 1]));
+	}
+}
@@ -38,6 +38,27 @@ public class PIDRocketController extends RocketController {
 		}
 	}
 	
+	@Override
+	public int getCheckpointSize() {
+		return super.getCheckpointSize() + 2 * SimplyPID.STATE_SIZE;
+	}
+
+	@Override
+	public int saveCheckpoint(final double[] data, int offset) {
+		offset = super.saveCheckpoint(data, offset);
+		pidX.saveState(data, offset);
+		pidY.saveState(data, offset + SimplyPID.STATE_SIZE);
+		return offset + 2 * SimplyPID.STATE_SIZE;
+	}
+
+	@Override
+	public int restoreCheckpoint(final double[] data, int offset) {
+		offset = super.restoreCheckpoint(data, offset);
+		pidX.restoreState(data, offset);
+		pidY.restoreState(data, offset + SimplyPID.STATE_SIZE);
+		return offset + 2 * SimplyPID.STATE_SIZE;
+	}
+	
 	@Override
 	public void reset() {
 		super.reset();
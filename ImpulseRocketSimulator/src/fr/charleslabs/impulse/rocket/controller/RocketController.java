@@ -36,12 +36,47 @@ public abstract class RocketController {
 	/** To be called as often as possible by the PhysicEngine: 
 	 * determines if the controller needs to be called, and call it. */
 	final public void compute(final double timeSinceIgnition) {
-		if ((int) (timeSinceIgnition / this.getPeriod()) > nbCall) {
+		if (timeSinceIgnition >= getNextCallTime()) {
 			nbCall++;
 			this.call(timeSinceIgnition);
 		}
 	}
 	
+	/** Return the time at which the controller will be called next
+	 * (a multiple of its period), in seconds since ignition. */
+	final public double getNextCallTime() {
+		return (nbCall + 1) * getPeriod();
+	}
+	
+	/** Return the number of values written by saveCheckpoint.
+	 * Inherit to save more state. */
+	public int getCheckpointSize() {
+		return 1;
+	}
+
+	/**
+	 * Writes the dynamic state of the controller in an array.
+	 * @param data The destination array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value written.
+	 */
+	public int saveCheckpoint(final double[] data, final int offset) {
+		data[offset] = nbCall;
+		return offset + 1;
+	}
+
+	/**
+	 * Restores the dynamic state of the controller from an array
+	 * written by saveCheckpoint.
+	 * @param data The source array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value read.
+	 */
+	public int restoreCheckpoint(final double[] data, final int offset) {
+		nbCall = (int) data[offset];
+		return offset + 1;
+	}
+	
 	/** Initialise the controller. Called just before launching a simulation.*/
 	public void init() {
 		nbCall = 0;
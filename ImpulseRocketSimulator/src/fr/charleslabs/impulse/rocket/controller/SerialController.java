@@ -2,6 +2,9 @@ package fr.charleslabs.impulse.rocket.controller;
 
 import java.nio.charset.StandardCharsets;
 
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.physics.PhysicsMatrix;
+import fr.charleslabs.impulse.physics.PhysicsSnapshot;
 import fr.charleslabs.impulse.rocket.Rocket;
 
 import javafx.application.Platform;
@@ -25,6 +28,10 @@ public class SerialController extends RocketController implements SerialPortEven
 	private static final String gyroscopeCommand = "G", accelerometerCommand = "A", altimeterCommand = "B",
 			gimbalXCommand = "GX", gimbalYCommand = "GY";
 	private StringBuilder serialMsgBuffer = new StringBuilder();
+	/** The engine simulating the rocket (may be null), and the copy of
+	 * its state the commands read. */
+	private final PhysicsEngine engine;
+	private final PhysicsSnapshot snapshot;
 
 	/**
 	 * Connects the SerialController to a serial port, and immediately starts to
@@ -37,7 +44,27 @@ public class SerialController extends RocketController implements SerialPortEven
 	 *             If the connection fails this exception is thrown.
 	 */
 	public SerialController(final String serialPortName, Rocket rocket) throws SerialPortException {
+		this(serialPortName, rocket, null);
+	}
+
+	/**
+	 * Connects the SerialController to a serial port, and immediately starts to
+	 * handle serial communication events. The sensor values sent to the device
+	 * are read from consistent snapshots of the engine.
+	 * 
+	 * @param serialPortName
+	 *            The name of the serial port to connect to. Use getPortList() to
+	 *            view the available ports.
+	 * @param engine
+	 *            The engine simulating the rocket.
+	 * @throws SerialPortException
+	 *             If the connection fails this exception is thrown.
+	 */
+	public SerialController(final String serialPortName, Rocket rocket, PhysicsEngine engine)
+			throws SerialPortException {
 		super(0.00001d, rocket); // Frequency is very close to 0
+		this.engine = engine;
+		this.snapshot = (engine != null) ? engine.createSnapshot() : null;
 		serialPort = new SerialPort(serialPortName);
 		serialPort.openPort();
 
@@ -155,16 +182,27 @@ public class SerialController extends RocketController implements SerialPortEven
 		} else
 			return null;
 
+		// Read a consistent state of the rocket (the engine thread is writing it)
+		PhysicsMatrix linearMotion = rocket.getLinearMotion(), angularMotion = rocket.getAngularMotion();
+		if (engine != null) {
+			engine.readSnapshot(snapshot);
+			final int index = engine.getObjects().indexOf(rocket);
+			if (index >= 0 && index < snapshot.getObjectCount()) {
+				linearMotion = snapshot.getLinearMotion(index);
+				angularMotion = snapshot.getAngularMotion(index);
+			}
+		}
+
 		// React to the command
 		switch (command) {
 		case gyroscopeCommand:
-			return (gyroscopeCommand+" "+rocket.getAngularMotion().speed.x + " " + rocket.getAngularMotion().speed.y + " "
-					+ rocket.getAngularMotion().speed.z + "\n").getBytes(StandardCharsets.UTF_8);
+			return (gyroscopeCommand+" "+angularMotion.speed.x + " " + angularMotion.speed.y + " "
+					+ angularMotion.speed.z + "\n").getBytes(StandardCharsets.UTF_8);
 		case accelerometerCommand:
-			return (accelerometerCommand+" "+rocket.getLinearMotion().acceleration.x + " " + rocket.getLinearMotion().acceleration.y + " "
-					+ rocket.getLinearMotion().acceleration.z + "\n").getBytes(StandardCharsets.UTF_8);
+			return (accelerometerCommand+" "+linearMotion.acceleration.x + " " + linearMotion.acceleration.y + " "
+					+ linearMotion.acceleration.z + "\n").getBytes(StandardCharsets.UTF_8);
 		case altimeterCommand:
-			return (altimeterCommand+" "+rocket.getLinearMotion().position.z + "\n").getBytes(StandardCharsets.UTF_8);
+			return (altimeterCommand+" "+linearMotion.position.z + "\n").getBytes(StandardCharsets.UTF_8);
 		case gimbalXCommand:
 			try {
 				final double value = Double.parseDouble(argument);
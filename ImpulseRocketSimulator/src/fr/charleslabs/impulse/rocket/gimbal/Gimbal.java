@@ -43,6 +43,33 @@ public class Gimbal {
 		gimbalAngleY = 0;
 	}
 	
+	/** Return the number of values written by saveCheckpoint.
+	 * Inherit to save more state. */
+	public int getCheckpointSize() {
+		return 2;
+	}
+	
+	/** Writes the state of the gimbal in an array.
+	 * @param data The destination array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value written. */
+	public int saveCheckpoint(final double[] data, final int offset) {
+		data[offset] = gimbalAngleX;
+		data[offset + 1] = gimbalAngleY;
+		return offset + 2;
+	}
+	
+	/** Restores the state of the gimbal from an array written by
+	 * saveCheckpoint.
+	 * @param data The source array.
+	 * @param offset The index of the first value.
+	 * @return The index following the last value read. */
+	public int restoreCheckpoint(final double[] data, final int offset) {
+		gimbalAngleX = data[offset];
+		gimbalAngleY = data[offset + 1];
+		return offset + 2;
+	}
+	
 	/** Function called by the PysicsEngine before the 
 	 * simulation starts. */
 	public void init() {}
@@ -52,6 +79,13 @@ public class Gimbal {
 		return gimbalAngleX;
 	}
 	
+	/** Return the X angle the gimbal will have in a given time if its
+	 * target does not change, in degrees.
+	 * @param deltaT Time from now (in s). */
+	public double getPredictedAngleX(final double deltaT) {
+		return gimbalAngleX;
+	}
+	
 	/** Sets the current gimbal X angle, in degrees. */
 	public void setGimbalAngleX(final double gimbalAngleX) {
 		this.gimbalAngleX = gimbalAngleX;
@@ -64,12 +98,31 @@ public class Gimbal {
 
 	}
 	
+	/** Return the Y angle the gimbal will have in a given time if its
+	 * target does not change, in degrees.
+	 * @param deltaT Time from now (in s). */
+	public double getPredictedAngleY(final double deltaT) {
+		return gimbalAngleY;
+	}
+	
 	/** Sets the current gimbal Y angle, in degrees. */
 	public void setGimbalAngleY(final double gimbalAngleY) {
 		this.gimbalAngleY = gimbalAngleY;
 		checkLimits();
 	}
 
+	/** Return the X angle the gimbal is moving to (the last command),
+	 * in degrees. */
+	public double getTargetAngleX() {
+		return gimbalAngleX;
+	}
+
+	/** Return the Y angle the gimbal is moving to (the last command),
+	 * in degrees. */
+	public double getTargetAngleY() {
+		return gimbalAngleY;
+	}
+
 	/** Return the limit angle of the gimbal (for both X and Y)
 	 * , in degrees. */
 	public double getLimitAngle() {
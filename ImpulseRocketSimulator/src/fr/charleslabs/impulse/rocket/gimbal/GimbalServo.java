@@ -42,6 +42,27 @@ public class GimbalServo extends Gimbal {
 		this.targetAngleY = 0;
 	}
 
+	@Override
+	public int getCheckpointSize() {
+		return super.getCheckpointSize() + 2;
+	}
+
+	@Override
+	public int saveCheckpoint(final double[] data, int offset) {
+		offset = super.saveCheckpoint(data, offset);
+		data[offset] = targetAngleX;
+		data[offset + 1] = targetAngleY;
+		return offset + 2;
+	}
+
+	@Override
+	public int restoreCheckpoint(final double[] data, int offset) {
+		offset = super.restoreCheckpoint(data, offset);
+		targetAngleX = data[offset];
+		targetAngleY = data[offset + 1];
+		return offset + 2;
+	}
+
 	@Override
 	public void compute(final double deltaT) {
 		double maxDisplacement = anglePerS * deltaT;
@@ -66,6 +87,43 @@ public class GimbalServo extends Gimbal {
 		checkLimits();
 	}
 
+	@Override
+	public double getPredictedAngleX(final double deltaT) {
+		return predict(gimbalAngleX, targetAngleX, deltaT);
+	}
+
+	@Override
+	public double getPredictedAngleY(final double deltaT) {
+		return predict(gimbalAngleY, targetAngleY, deltaT);
+	}
+
+	/** Computes the angle reached from a given angle after moving
+	 * towards the target for some time (same rule as compute). */
+	private double predict(final double angle, final double targetAngle,
+			final double deltaT) {
+		if (deltaT <= 0)
+			return angle;
+		final double maxDisplacement = anglePerS * deltaT;
+		final double predicted;
+		if (Math.abs(targetAngle - angle) < maxDisplacement)
+			predicted = targetAngle;
+		else if (angle < targetAngle)
+			predicted = angle + maxDisplacement;
+		else
+			predicted = angle - maxDisplacement;
+		return Math.max(-limitAngle, Math.min(limitAngle, predicted));
+	}
+
+	@Override
+	public double getTargetAngleX() {
+		return targetAngleX;
+	}
+
+	@Override
+	public double getTargetAngleY() {
+		return targetAngleY;
+	}
+
 	@Override
 	public void setGimbalAngleX(final double targetAngleX) {
 		this.targetAngleX = targetAngleX;
@@ -0,0 +1,323 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A binary motor catalog, compiled from the JSON motor database. The
+ * catalog is memory-mapped (or read at once from a jar), and only its
+ * index (names and offsets) is read on opening: each motor is decoded
+ * the first time it is requested. Opening a catalog is thus about as
+ * fast whatever the number of motors.
+ * <br><br>
+ * The header holds the size and the CRC-32 of the JSON database the
+ * catalog was compiled from, to detect a catalog that is older than
+ * its database (see isCompiledFrom()).
+ * <br><br>
+ * Format (big-endian):
+ * <ul>
+ * <li>Header: magic "IMPC", version (int), size and CRC-32 of the
+ * JSON database (ints), number of motors (int).</li>
+ * <li>Index, for each motor: name length (short), name (UTF-8), type
+ * (byte), offset of its data in the file (int), total impulse, peak
+ * thrust and burn time (doubles, for the MotorIndex).</li>
+ * <li>Data of a SolidFuelMotor: burn time (double), number of points
+ * (int), thrusts (doubles).</li>
+ * <li>Data of a ThrustCurveMotor: number of points (int), times
+ * (doubles), thrusts (doubles).</li>
+ * </ul>
+ * Compile a catalog with:
+ * <code>java fr.charleslabs.impulse.rocket.motor.MotorCatalog motors.json motors.bin</code>
+ *
+ * @author Charles Grassin
+ */
+public final class MotorCatalog {
+	private final static String INVALID_CATALOG_EXCEPTION = "Invalid motor catalog.";
+	private final static String UNSUPPORTED_MOTOR_EXCEPTION = "Motor type not supported by the catalog: ";
+	private final static int MAGIC = 0x494D5043; // "IMPC"
+	private final static int VERSION = 3;
+	private final static int HEADER_SIZE = 20;
+	private final static byte SOLID_FUEL_MOTOR = 0, THRUST_CURVE_MOTOR = 1;
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	/** Size and CRC-32 of the JSON database of the catalog. */
+	private final int sourceSize, sourceChecksum;
+	/** Names of the motors, in the order of the catalog. */
+	private final String[] names;
+	/** Index of each motor, by name. */
+	private final HashMap<String, Integer> index;
+	private final byte[] types;
+	private final int[] offsets;
+	private final double[] totalImpulse, peakThrust, burnTime;
+	/** Motors already decoded. */
+	private final RocketMotor[] motors;
+
+	/**
+	 * Opens a catalog.
+	 *
+	 * @param buffer The content of the catalog.
+	 * @throws IOException If the catalog is invalid.
+	 */
+	public MotorCatalog(final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		try {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+				throw new IOException(INVALID_CATALOG_EXCEPTION);
+			sourceSize = buffer.getInt(8);
+			sourceChecksum = buffer.getInt(12);
+			final int count = buffer.getInt(16);
+			names = new String[count];
+			index = new HashMap<String, Integer>(count * 2);
+			types = new byte[count];
+			offsets = new int[count];
+			totalImpulse = new double[count];
+			peakThrust = new double[count];
+			burnTime = new double[count];
+			motors = new RocketMotor[count];
+			int position = HEADER_SIZE;
+			for (int i = 0; i < count; i++) {
+				final byte[] name = new byte[buffer.getShort(position)];
+				position += 2;
+				for (int k = 0; k < name.length; k++)
+					name[k] = buffer.get(position + k);
+				position += name.length;
+				names[i] = new String(name, UTF8);
+				types[i] = buffer.get(position);
+				offsets[i] = buffer.getInt(position + 1);
+				totalImpulse[i] = buffer.getDouble(position + 5);
+				peakThrust[i] = buffer.getDouble(position + 13);
+				burnTime[i] = buffer.getDouble(position + 21);
+				position += 29;
+				index.put(names[i], i);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException(INVALID_CATALOG_EXCEPTION);
+		} catch (NegativeArraySizeException e) {
+			throw new IOException(INVALID_CATALOG_EXCEPTION);
+		}
+	}
+
+	/**
+	 * Opens a catalog resource: memory-mapped if it is a file, read at
+	 * once otherwise (eg: in a jar).
+	 *
+	 * @param url The location of the catalog.
+	 * @throws IOException If the catalog cannot be read or is invalid.
+	 */
+	public static MotorCatalog open(final URL url) throws IOException {
+		if ("file".equals(url.getProtocol())) {
+			try (FileChannel channel = FileChannel.open(
+					Paths.get(url.toURI()), StandardOpenOption.READ)) {
+				return new MotorCatalog(channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+		}
+		return new MotorCatalog(ByteBuffer.wrap(read(url)));
+	}
+
+	/**
+	 * Checks whether the catalog was compiled from a JSON database
+	 * (same size and CRC-32), ie: whether the database was not edited
+	 * since the catalog was compiled.
+	 *
+	 * @param source The location of the JSON database.
+	 * @return true if the catalog matches the database.
+	 * @throws IOException If the database cannot be read.
+	 */
+	public boolean isCompiledFrom(final URL source) throws IOException {
+		final byte[] json = read(source);
+		return json.length == sourceSize && checksum(json) == sourceChecksum;
+	}
+
+	/** Reads a resource at once. */
+	private static byte[] read(final URL url) throws IOException {
+		try (InputStream in = url.openStream()) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] chunk = new byte[8192];
+			int length;
+			while ((length = in.read(chunk)) > 0)
+				out.write(chunk, 0, length);
+			return out.toByteArray();
+		}
+	}
+
+	/** Returns the CRC-32 of the bytes of a JSON database. */
+	private static int checksum(final byte[] json) {
+		final CRC32 crc = new CRC32();
+		crc.update(json, 0, json.length);
+		return (int) crc.getValue();
+	}
+
+	/** Returns the names of the motors, in the order of the catalog. */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	public int getMotorCount() {
+		return names.length;
+	}
+
+	/** Builds the index of the motors, from the properties stored in
+	 * the catalog index (no motor is decoded). */
+	public MotorIndex createIndex() {
+		return new MotorIndex(names, totalImpulse, peakThrust, burnTime);
+	}
+
+	/**
+	 * Returns a motor, decoded on the first request.
+	 *
+	 * @param name The name of the motor.
+	 * @return The motor, or null if it is not in the catalog.
+	 * @throws IOException If the data of the motor is invalid.
+	 */
+	public synchronized RocketMotor getMotor(final String name)
+			throws IOException {
+		final Integer i = index.get(name);
+		if (i == null)
+			return null;
+		if (motors[i] == null)
+			motors[i] = decode(types[i], offsets[i]);
+		return motors[i];
+	}
+
+	private RocketMotor decode(final byte type, int position)
+			throws IOException {
+		try {
+			switch (type) {
+			case SOLID_FUEL_MOTOR: {
+				final double burnTime = buffer.getDouble(position);
+				final double[] thrust = readDoubles(position + 12,
+						buffer.getInt(position + 8));
+				return new SolidFuelMotor(thrust, burnTime);
+			}
+			case THRUST_CURVE_MOTOR: {
+				final int count = buffer.getInt(position);
+				position += 4;
+				return new ThrustCurveMotor(readDoubles(position, count),
+						readDoubles(position + 8 * count, count));
+			}
+			default:
+				throw new IOException(INVALID_CATALOG_EXCEPTION);
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(INVALID_CATALOG_EXCEPTION, e);
+		}
+	}
+
+	private double[] readDoubles(final int position, final int count) {
+		final double[] values = new double[count];
+		for (int k = 0; k < count; k++)
+			values[k] = buffer.getDouble(position + 8 * k);
+		return values;
+	}
+
+	/**
+	 * Writes a catalog.
+	 *
+	 * @param motors The motors, by name (SolidFuelMotor or
+	 * ThrustCurveMotor).
+	 * @param json The JSON database the motors were parsed from.
+	 * @param out The destination of the catalog.
+	 * @throws IOException If a motor is not supported, or on write error.
+	 */
+	public static void write(final Map<String, RocketMotor> motors,
+			final byte[] json, final OutputStream out) throws IOException {
+		// Data first, to know the offsets
+		final ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+		final DataOutputStream data = new DataOutputStream(dataBytes);
+		final byte[][] names = new byte[motors.size()][];
+		final byte[] types = new byte[motors.size()];
+		final int[] offsets = new int[motors.size()];
+		int headerSize = HEADER_SIZE, i = 0;
+		for (Map.Entry<String, RocketMotor> entry : motors.entrySet()) {
+			names[i] = entry.getKey().getBytes(UTF8);
+			headerSize += 2 + names[i].length + 29;
+			offsets[i] = data.size();
+			final RocketMotor motor = entry.getValue();
+			if (motor instanceof SolidFuelMotor) {
+				final SolidFuelMotor solid = (SolidFuelMotor) motor;
+				types[i] = SOLID_FUEL_MOTOR;
+				data.writeDouble(solid.burnTime);
+				data.writeInt(solid.thrust.length);
+				for (double thrust : solid.thrust)
+					data.writeDouble(thrust);
+			} else if (motor instanceof ThrustCurveMotor) {
+				final ThrustCurveMotor curve = (ThrustCurveMotor) motor;
+				types[i] = THRUST_CURVE_MOTOR;
+				data.writeInt(curve.getPointCount());
+				for (int k = 0; k < curve.getPointCount(); k++)
+					data.writeDouble(curve.getTime(k));
+				for (int k = 0; k < curve.getPointCount(); k++)
+					data.writeDouble(curve.getThrustAt(k));
+			} else
+				throw new IOException(UNSUPPORTED_MOTOR_EXCEPTION
+						+ entry.getKey());
+			i++;
+		}
+
+		final DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		header.writeInt(json.length);
+		header.writeInt(checksum(json));
+		header.writeInt(motors.size());
+		i = 0;
+		for (RocketMotor motor : motors.values()) {
+			header.writeShort(names[i].length);
+			header.write(names[i]);
+			header.writeByte(types[i]);
+			header.writeInt(headerSize + offsets[i]);
+			header.writeDouble(motor.getTotalImpulse());
+			header.writeDouble(motor.getPeakThrust());
+			header.writeDouble(motor.getBurnTime());
+			i++;
+		}
+		dataBytes.writeTo(header);
+		header.flush();
+	}
+
+	/**
+	 * Compiles a JSON motor database into a catalog.
+	 *
+	 * @param args The JSON file and the catalog file.
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length != 2) {
+			System.out.println("Usage: MotorCatalog <motors.json> <motors.bin>");
+			return;
+		}
+		final byte[] json = Files.readAllBytes(Paths.get(args[0]));
+		final LinkedHashMap<String, RocketMotor> motors;
+		try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), UTF8)) {
+			motors = MotorDataBase.parseJson(reader);
+		}
+		try (OutputStream out = new FileOutputStream(args[1])) {
+			write(motors, json, out);
+		}
+		System.out.println(motors.size() + " motor(s) written to " + args[1]);
+	}
+}
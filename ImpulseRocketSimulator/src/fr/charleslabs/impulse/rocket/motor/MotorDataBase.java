@@ -1,27 +1,52 @@
 package fr.charleslabs.impulse.rocket.motor;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
+/**
+ * The motors available to the simulations. They are read from the
+ * binary catalog (/res/motors.bin, see MotorCatalog) when it exists:
+ * only its index is loaded at start-up and the motors are decoded on
+ * request. Otherwise, the JSON database (/res/motors.json) is parsed.
+ * <br><br>
+ * The catalog is compiled from the JSON database. If the JSON file was
+ * edited since (its size or CRC-32 differs from the ones stored in the
+ * catalog), the catalog is ignored and the JSON database is parsed:
+ * compile the catalog again to speed up the start-up.
+ */
 public final class MotorDataBase {
 	static public final String dbPath = "/res/motors.json";
-	private HashMap<String, RocketMotor> motorList = loadMotors();
+	static public final String catalogPath = "/res/motors.bin";
+	/** The binary catalog, or null if the JSON database is used. */
+	private MotorCatalog catalog;
+	private LinkedHashMap<String, RocketMotor> motorList;
+	/** The index of the motors, built on the first query. */
+	private MotorIndex index;
 	private MotorDataBase() {
-		motorList = loadMotors();
+		loadMotors();
 	}
     private static MotorDataBase INSTANCE = new MotorDataBase();
     public static MotorDataBase getInstance()
     {   return INSTANCE;
     }
-    
+
 	public RocketMotor getMotor(String motorName) {
+		if (catalog != null) {
+			try {
+				return catalog.getMotor(motorName);
+			} catch (IOException e) {
+				return null;
+			}
+		}
 		if (motorList.containsKey(motorName))
 			return motorList.get(motorName);
 		else
@@ -29,30 +54,40 @@ public final class MotorDataBase {
 	}
 
 	public String[] getMotorList() {
+		if (catalog != null)
+			return catalog.getNames();
 		return motorList.keySet()
 				.toArray(new String[motorList.keySet().size()]);
 	}
 
-	public boolean isEmpty() {
-		return motorList.isEmpty();
+	/**
+	 * Returns the index of the motors, to search them by total impulse,
+	 * class, thrust or burn time. With the binary catalog, the index is
+	 * built without decoding the motors.
+	 */
+	public synchronized MotorIndex getIndex() {
+		if (index == null) {
+			if (catalog != null)
+				index = catalog.createIndex();
+			else
+				index = MotorIndex.of(getMotorList(), motorList.values()
+						.toArray(new RocketMotor[motorList.size()]));
+		}
+		return index;
 	}
 
-	private String loadFromFile(String path) throws IOException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(getClass().getResource(path).openStream()));
-
-		StringBuilder sb = new StringBuilder();
-		String line = br.readLine();
+	/** Returns the names of the motors that match a query. */
+	public String[] findMotors(final MotorQuery query) {
+		return getIndex().findNames(query);
+	}
 
-		while (line != null) {
-			sb.append(line);
-			sb.append(System.lineSeparator());
-			line = br.readLine();
-		}
-		br.close();
-		return sb.toString();
+	public boolean isEmpty() {
+		if (catalog != null)
+			return catalog.getMotorCount() == 0;
+		return motorList.isEmpty();
 	}
 
-	private double[] toDoubleArray(JsonArray object) {
+	private static double[] toDoubleArray(JsonArray object) {
 		double returnValue[] = new double[object.size()];
 		for (int i = 0; i < object.size(); i++) {
 			returnValue[i] = object.get(i).asDouble();
@@ -60,16 +95,44 @@ public final class MotorDataBase {
 		return returnValue;
 	}
 
-	private HashMap<String, RocketMotor> loadMotors() {
-		final HashMap<String, RocketMotor> array = new HashMap<String, RocketMotor>();
-		String json;
-		try {
-			json = loadFromFile(dbPath);
-		} catch (IOException e) {
-			array.put("Default", new SolidFuelMotor(3, 5));
-			return array;
+	private void loadMotors() {
+		final URL catalogUrl = getClass().getResource(catalogPath);
+		final URL dbUrl = getClass().getResource(dbPath);
+		if (catalogUrl != null) {
+			try {
+				final MotorCatalog compiled = MotorCatalog.open(catalogUrl);
+				// An outdated catalog falls back to the JSON database
+				if (dbUrl == null || compiled.isCompiledFrom(dbUrl)) {
+					catalog = compiled;
+					return;
+				}
+			} catch (IOException e) {
+				// Falls back to the JSON database
+			}
+		}
+
+		if (dbUrl != null) {
+			try (Reader json = new InputStreamReader(dbUrl.openStream(),
+					Charset.forName("UTF-8"))) {
+				motorList = parseJson(json);
+				return;
+			} catch (IOException e) {
+			}
 		}
+		motorList = new LinkedHashMap<String, RocketMotor>();
+		motorList.put("Default", new SolidFuelMotor(3, 5));
+	}
 
+	/**
+	 * Parses a JSON motor database.
+	 *
+	 * @param json The JSON database.
+	 * @return The motors, by name, in the order of the database.
+	 * @throws IOException On read error.
+	 */
+	static LinkedHashMap<String, RocketMotor> parseJson(final Reader json)
+			throws IOException {
+		final LinkedHashMap<String, RocketMotor> array = new LinkedHashMap<String, RocketMotor>();
 		final JsonArray motors = Json.parse(json).asArray();
 		for (JsonValue motor : motors) {
 			final String name = ((JsonObject) motor).get("name").asString();
@@ -80,6 +143,16 @@ public final class MotorDataBase {
 						new SolidFuelMotor(toDoubleArray(((JsonObject) motor)
 								.get("thrust").asArray()), ((JsonObject) motor)
 								.get("burnTime").asDouble()));
+			} else if (type.equals("ThrustCurveMotor")) {
+				try {
+					array.put(name, new ThrustCurveMotor(
+							toDoubleArray(((JsonObject) motor).get("time")
+									.asArray()),
+							toDoubleArray(((JsonObject) motor).get("thrust")
+									.asArray())));
+				} catch (Exception e) {
+					// Invalid thrust curve: the motor is not listed
+				}
 			}
 		}
 		return array;
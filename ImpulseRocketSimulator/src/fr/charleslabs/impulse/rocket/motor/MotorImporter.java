@@ -0,0 +1,491 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Imports motors from RASP (.eng) and RockSim (.rse) files, in
+ * directories (recursively) or zip archives. The files are read as
+ * streams (line by line, or with a streaming XML parser) and parsed
+ * in parallel; the motors are returned in a deterministic order (the
+ * sorted order of the files), with an error message for every file
+ * or motor that could not be imported.
+ * <br><br>
+ * The curves are validated and normalized: the points must have a
+ * thrust >= 0 and times >= 0 that never decrease; a point at the
+ * same time as the previous one replaces it, and the curve starts
+ * from (0, 0) if its first point is later.
+ * <br><br>
+ * Build a catalog with:
+ * <code>java fr.charleslabs.impulse.rocket.motor.MotorImporter motors.json engines.zip engines/ motors.bin</code>
+ * <br>
+ * The catalog is only used by MotorDataBase if the JSON database
+ * given is /res/motors.json (see MotorCatalog.isCompiledFrom()).
+ *
+ * @author Charles Grassin
+ */
+public final class MotorImporter {
+	private final static String EMPTY_CURVE_EXCEPTION = "The thrust curve has less than 2 points.";
+	private final static String INVALID_THRUST_EXCEPTION = "Invalid thrust.";
+	private final static String NEGATIVE_THRUST_EXCEPTION = "Negative thrust.";
+	private final static String INVALID_TIME_EXCEPTION = "Invalid time.";
+	private final static String DECREASING_TIME_EXCEPTION = "Decreasing time.";
+	private final static String INVALID_HEADER_EXCEPTION = "Invalid motor header.";
+	private final static String INVALID_POINT_EXCEPTION = "Invalid data point.";
+	private final static String DUPLICATE_MOTOR_EXCEPTION = "Duplicate motor: ";
+	private final static Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	/** The motors and errors of an import. */
+	public static final class Result {
+		private final LinkedHashMap<String, RocketMotor> motors = new LinkedHashMap<String, RocketMotor>();
+		private final List<String> errors = new ArrayList<String>();
+		private int fileCount;
+
+		/** Returns the imported motors, by name ("Manufacturer Designation"). */
+		public LinkedHashMap<String, RocketMotor> getMotors() {
+			return motors;
+		}
+
+		/** Returns the messages of the files and motors that could not
+		 * be imported ("file:line: message"). */
+		public List<String> getErrors() {
+			return errors;
+		}
+
+		/** Returns the number of motor files read. */
+		public int getFileCount() {
+			return fileCount;
+		}
+	}
+
+	/** The motors and errors of a single file. */
+	private static final class FileResult {
+		final List<String> names = new ArrayList<String>();
+		final List<RocketMotor> motors = new ArrayList<RocketMotor>();
+		final List<String> errors = new ArrayList<String>();
+	}
+
+	/** A motor file, in a directory or an archive. */
+	private static interface Source {
+		String getName();
+
+		InputStream open() throws IOException;
+	}
+
+	private final int parallelism;
+
+	/** Constructs an importer using all the available processors. */
+	public MotorImporter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism The number of files parsed at the same time.
+	 */
+	public MotorImporter(final int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Imports the motors of directories (recursively), zip archives or
+	 * single .eng/.rse files.
+	 *
+	 * @param paths The files to import.
+	 * @return The motors and errors.
+	 * @throws IOException If a directory or an archive cannot be read.
+	 */
+	public Result importMotors(final List<Path> paths) throws IOException {
+		final List<Source> sources = new ArrayList<Source>();
+		final List<ZipFile> archives = new ArrayList<ZipFile>();
+		try {
+			for (Path path : paths)
+				collect(path, sources, archives);
+			return parse(sources);
+		} finally {
+			for (ZipFile archive : archives)
+				archive.close();
+		}
+	}
+
+	private static void collect(final Path path, final List<Source> sources,
+			final List<ZipFile> archives) throws IOException {
+		if (Files.isDirectory(path)) {
+			final List<Path> children = new ArrayList<Path>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+				for (Path child : stream)
+					children.add(child);
+			}
+			Collections.sort(children);
+			for (Path child : children)
+				collect(child, sources, archives);
+		} else if (hasExtension(path.toString(), ".zip")) {
+			final ZipFile archive = new ZipFile(path.toFile());
+			archives.add(archive);
+			final List<String> entries = new ArrayList<String>();
+			final Enumeration<? extends ZipEntry> e = archive.entries();
+			while (e.hasMoreElements()) {
+				final ZipEntry entry = e.nextElement();
+				if (!entry.isDirectory() && isMotorFile(entry.getName()))
+					entries.add(entry.getName());
+			}
+			Collections.sort(entries);
+			for (final String entry : entries)
+				sources.add(new Source() {
+					@Override
+					public String getName() {
+						return archive.getName() + "!" + entry;
+					}
+
+					@Override
+					public InputStream open() throws IOException {
+						return archive.getInputStream(archive.getEntry(entry));
+					}
+				});
+		} else if (isMotorFile(path.toString())) {
+			sources.add(new Source() {
+				@Override
+				public String getName() {
+					return path.toString();
+				}
+
+				@Override
+				public InputStream open() throws IOException {
+					return Files.newInputStream(path);
+				}
+			});
+		}
+	}
+
+	/** Parses the files in parallel and merges their results in order. */
+	private Result parse(final List<Source> sources) throws IOException {
+		final Result result = new Result();
+		result.fileCount = sources.size();
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			final List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>(sources.size());
+			for (final Source source : sources)
+				futures.add(executor.submit(new Callable<FileResult>() {
+					@Override
+					public FileResult call() {
+						return parseFile(source);
+					}
+				}));
+			for (Future<FileResult> future : futures) {
+				final FileResult file = future.get();
+				result.errors.addAll(file.errors);
+				for (int i = 0; i < file.names.size(); i++) {
+					final String name = file.names.get(i);
+					if (result.motors.containsKey(name))
+						result.errors.add(DUPLICATE_MOTOR_EXCEPTION + name);
+					else
+						result.motors.put(name, file.motors.get(i));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return result;
+	}
+
+	private static FileResult parseFile(final Source source) {
+		final FileResult result = new FileResult();
+		try (InputStream in = source.open()) {
+			if (hasExtension(source.getName(), ".rse"))
+				parseRse(source.getName(), in, result);
+			else
+				parseEng(source.getName(), new InputStreamReader(in, CHARSET),
+						result);
+		} catch (IOException e) {
+			result.errors.add(source.getName() + ": " + e.getMessage());
+		} catch (XMLStreamException e) {
+			result.errors.add(source.getName() + ": " + e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a RASP file: comment lines start with ';', each motor is
+	 * a header line (name, diameter, length, delays, propellant mass,
+	 * total mass, manufacturer) followed by "time thrust" lines. A
+	 * file may contain several motors.
+	 */
+	static void parseEng(final String fileName, final Reader reader,
+			final FileResult result) throws IOException {
+		final BufferedReader in = new BufferedReader(reader);
+		final CurveBuilder curve = new CurveBuilder();
+		String name = null, line;
+		int lineNumber = 0, motorLine = 0;
+		boolean skip = false;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			final int comment = line.indexOf(';');
+			if (comment >= 0)
+				line = line.substring(0, comment);
+			final StringTokenizer tokens = new StringTokenizer(line);
+			if (!tokens.hasMoreTokens())
+				continue;
+			final String first = tokens.nextToken();
+			// Data lines are two numbers; headers have 7 fields (the
+			// designation may start with a digit, eg: 1/2A6)
+			if (tokens.countTokens() != 1 || !isNumber(first)) {
+				// Header of a new motor
+				if (name != null && !skip)
+					curve.build(fileName, motorLine, name, result);
+				curve.clear();
+				motorLine = lineNumber;
+				skip = false;
+				final String[] header = new String[7];
+				header[0] = first;
+				int count = 1;
+				while (count < header.length && tokens.hasMoreTokens())
+					header[count++] = tokens.nextToken();
+				if (count < header.length) {
+					result.errors.add(fileName + ":" + lineNumber + ": "
+							+ INVALID_HEADER_EXCEPTION);
+					skip = true;
+					name = "";
+				} else
+					name = header[6] + " " + header[0];
+			} else if (name == null || skip) {
+				if (name == null) {
+					result.errors.add(fileName + ":" + lineNumber + ": "
+							+ INVALID_HEADER_EXCEPTION);
+					name = "";
+					skip = true;
+				}
+			} else {
+				try {
+					final double time = Double.parseDouble(first);
+					final double thrust = Double.parseDouble(tokens.nextToken());
+					if (!curve.add(time, thrust)) {
+						result.errors.add(fileName + ":" + lineNumber + ": "
+								+ curve.getError());
+						skip = true;
+					}
+				} catch (RuntimeException e) {
+					result.errors.add(fileName + ":" + lineNumber + ": "
+							+ INVALID_POINT_EXCEPTION);
+					skip = true;
+				}
+			}
+		}
+		if (name != null && !skip)
+			curve.build(fileName, motorLine, name, result);
+	}
+
+	/**
+	 * Parses a RockSim file: an &lt;engine mfg="..." code="..."&gt;
+	 * element per motor, with &lt;eng-data t="..." f="..."/&gt; points.
+	 */
+	static void parseRse(final String fileName, final InputStream in,
+			final FileResult result) throws XMLStreamException {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		final XMLStreamReader xml = factory.createXMLStreamReader(in);
+		final CurveBuilder curve = new CurveBuilder();
+		String name = null;
+		int motorLine = 0;
+		boolean skip = false;
+		try {
+			while (xml.hasNext()) {
+				final int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					final String element = xml.getLocalName();
+					if (element.equals("engine")) {
+						final String mfg = xml.getAttributeValue(null, "mfg");
+						final String code = xml.getAttributeValue(null, "code");
+						curve.clear();
+						motorLine = xml.getLocation().getLineNumber();
+						skip = (mfg == null || code == null);
+						name = skip ? null : mfg.trim() + " " + code.trim();
+						if (skip)
+							result.errors.add(fileName + ":" + motorLine + ": "
+									+ INVALID_HEADER_EXCEPTION);
+					} else if (element.equals("eng-data") && name != null
+							&& !skip) {
+						try {
+							if (!curve.add(Double.parseDouble(xml
+									.getAttributeValue(null, "t")), Double
+									.parseDouble(xml.getAttributeValue(null, "f")))) {
+								result.errors.add(fileName + ":"
+										+ xml.getLocation().getLineNumber() + ": "
+										+ curve.getError());
+								skip = true;
+							}
+						} catch (RuntimeException e) {
+							result.errors.add(fileName + ":"
+									+ xml.getLocation().getLineNumber() + ": "
+									+ INVALID_POINT_EXCEPTION);
+							skip = true;
+						}
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT
+						&& xml.getLocalName().equals("engine")) {
+					if (name != null && !skip)
+						curve.build(fileName, motorLine, name, result);
+					name = null;
+				}
+			}
+		} finally {
+			xml.close();
+		}
+	}
+
+	/** Accumulates and normalizes the points of a curve. */
+	private static final class CurveBuilder {
+		private double[] times = new double[64], thrusts = new double[64];
+		private int count;
+		private String error;
+
+		void clear() {
+			count = 0;
+		}
+
+		/** Adds a point; returns false if it is invalid (see getError). */
+		boolean add(final double time, final double thrust) {
+			if (Double.isNaN(thrust) || Double.isInfinite(thrust)) {
+				error = INVALID_THRUST_EXCEPTION;
+				return false;
+			}
+			if (thrust < 0) {
+				error = NEGATIVE_THRUST_EXCEPTION;
+				return false;
+			}
+			if (!(time >= 0) || Double.isInfinite(time)) {
+				error = INVALID_TIME_EXCEPTION;
+				return false;
+			}
+			if (count > 0 && time < times[count - 1]) {
+				error = DECREASING_TIME_EXCEPTION;
+				return false;
+			}
+			if (count > 0 && time == times[count - 1])
+				count--; // Same time: the point replaces the previous one
+			if (count == times.length) {
+				times = Arrays.copyOf(times, count * 2);
+				thrusts = Arrays.copyOf(thrusts, count * 2);
+			}
+			times[count] = time;
+			thrusts[count] = thrust;
+			count++;
+			return true;
+		}
+
+		String getError() {
+			return error;
+		}
+
+		void build(final String fileName, final int line, final String name,
+				final FileResult result) {
+			if (count < 2) {
+				result.errors.add(fileName + ":" + line + ": "
+						+ EMPTY_CURVE_EXCEPTION);
+				return;
+			}
+			try {
+				result.motors.add(new ThrustCurveMotor(
+						Arrays.copyOf(times, count),
+						Arrays.copyOf(thrusts, count)));
+				result.names.add(name);
+			} catch (Exception e) {
+				result.errors.add(fileName + ":" + line + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static boolean isNumber(final String token) {
+		final char c = token.charAt(0);
+		return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+	}
+
+	private static boolean isMotorFile(final String name) {
+		return hasExtension(name, ".eng") || hasExtension(name, ".rse");
+	}
+
+	private static boolean hasExtension(final String name, final String extension) {
+		return name.toLowerCase(Locale.ROOT).endsWith(extension);
+	}
+
+	/**
+	 * Builds a catalog from JSON databases and motor files.
+	 *
+	 * @param args The sources (.json files, directories, zip archives,
+	 * .eng/.rse files), then the catalog file.
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: MotorImporter <motors.json|dir|archive.zip|file.eng|file.rse>... <motors.bin>");
+			return;
+		}
+		final long start = System.nanoTime();
+		final LinkedHashMap<String, RocketMotor> motors = new LinkedHashMap<String, RocketMotor>();
+		final List<Path> paths = new ArrayList<Path>();
+		final ByteArrayOutputStream jsonSources = new ByteArrayOutputStream();
+		for (int i = 0; i < args.length - 1; i++) {
+			if (hasExtension(args[i], ".json")) {
+				final byte[] bytes = Files.readAllBytes(Paths.get(args[i]));
+				jsonSources.write(bytes);
+				try (Reader json = new InputStreamReader(new ByteArrayInputStream(
+						bytes), Charset.forName("UTF-8"))) {
+					motors.putAll(MotorDataBase.parseJson(json));
+				}
+			} else
+				paths.add(Paths.get(args[i]));
+		}
+
+		final Result result = new MotorImporter().importMotors(paths);
+		for (String error : result.getErrors())
+			System.err.println(error);
+		for (String name : result.getMotors().keySet())
+			if (!motors.containsKey(name))
+				motors.put(name, result.getMotors().get(name));
+			else
+				System.err.println(DUPLICATE_MOTOR_EXCEPTION + name);
+
+		try (OutputStream out = new FileOutputStream(args[args.length - 1])) {
+			MotorCatalog.write(motors, jsonSources.toByteArray(), out);
+		}
+		System.out.println(String.format(
+				"%d file(s), %d motor(s) imported, %d error(s), %d motor(s) written to %s in %.2f s",
+				result.getFileCount(), result.getMotors().size(),
+				result.getErrors().size(), motors.size(), args[args.length - 1],
+				(System.nanoTime() - start) / 1e9));
+	}
+}
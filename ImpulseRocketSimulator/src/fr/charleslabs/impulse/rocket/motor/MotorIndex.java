@@ -0,0 +1,198 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An index of the properties of the motors of a catalog (total
+ * impulse, average and peak thrust, burn time), to search them by
+ * ranges (see MotorQuery).
+ * <br><br>
+ * For each property, the motors are sorted by value in primitive
+ * arrays: a search finds the range of each criterion by binary
+ * search, scans the narrowest one and checks the other criteria on
+ * the motors found. The index is read-only once built, and may be
+ * searched from several threads.
+ *
+ * @author Charles Grassin
+ */
+public final class MotorIndex {
+	static final int TOTAL_IMPULSE = 0, AVERAGE_THRUST = 1, PEAK_THRUST = 2,
+			BURN_TIME = 3, PROPERTY_COUNT = 4;
+
+	private final String[] names;
+	/** Values of the properties, by property then by motor. */
+	private final double[][] values = new double[PROPERTY_COUNT][];
+	/** Motors sorted by value, and the sorted values, by property. */
+	private final int[][] order = new int[PROPERTY_COUNT][];
+	private final double[][] sorted = new double[PROPERTY_COUNT][];
+
+	/**
+	 * Builds the index.
+	 *
+	 * @param names The names of the motors.
+	 * @param totalImpulse The total impulse of each motor, in N.s.
+	 * @param peakThrust The peak thrust of each motor, in N.
+	 * @param burnTime The burn time of each motor, in s.
+	 */
+	public MotorIndex(final String[] names, final double[] totalImpulse,
+			final double[] peakThrust, final double[] burnTime) {
+		this.names = names.clone();
+		final double[] averageThrust = new double[names.length];
+		for (int i = 0; i < names.length; i++)
+			averageThrust[i] = (burnTime[i] > 0) ? totalImpulse[i] / burnTime[i] : 0;
+		values[TOTAL_IMPULSE] = totalImpulse.clone();
+		values[AVERAGE_THRUST] = averageThrust;
+		values[PEAK_THRUST] = peakThrust.clone();
+		values[BURN_TIME] = burnTime.clone();
+
+		for (int p = 0; p < PROPERTY_COUNT; p++) {
+			final double[] propertyValues = values[p];
+			final int[] ids = new int[names.length];
+			sortByValue(ids, propertyValues);
+			order[p] = ids;
+			sorted[p] = new double[names.length];
+			for (int i = 0; i < names.length; i++)
+				sorted[p][i] = propertyValues[ids[i]];
+		}
+	}
+
+	/** Builds the index of a list of motors.
+	 * @param names The names of the motors.
+	 * @param motors The motors, in the same order. */
+	public static MotorIndex of(final String[] names, final RocketMotor[] motors) {
+		final double[] impulse = new double[motors.length];
+		final double[] peak = new double[motors.length];
+		final double[] burn = new double[motors.length];
+		for (int i = 0; i < motors.length; i++) {
+			impulse[i] = motors[i].getTotalImpulse();
+			peak[i] = motors[i].getPeakThrust();
+			burn[i] = motors[i].getBurnTime();
+		}
+		return new MotorIndex(names, impulse, peak, burn);
+	}
+
+	/**
+	 * Finds the motors that match a query.
+	 *
+	 * @param query The criteria.
+	 * @return The indexes of the motors found, in the order of the
+	 * catalog (see getName).
+	 */
+	public int[] find(final MotorQuery query) {
+		// The narrowest range drives the scan
+		int bestProperty = -1, bestFrom = 0, bestTo = names.length;
+		final int[] from = new int[PROPERTY_COUNT], to = new int[PROPERTY_COUNT];
+		for (int p = 0; p < PROPERTY_COUNT; p++) {
+			if (query.min[p] == Double.NEGATIVE_INFINITY
+					&& query.max[p] == Double.POSITIVE_INFINITY) {
+				from[p] = -1;
+				continue;
+			}
+			from[p] = lowerBound(sorted[p], query.min[p]);
+			to[p] = upperBound(sorted[p], query.max[p]);
+			if (to[p] - from[p] < bestTo - bestFrom || bestProperty < 0) {
+				bestProperty = p;
+				bestFrom = from[p];
+				bestTo = to[p];
+			}
+		}
+
+		final int[] found = new int[Math.max(0, bestTo - bestFrom)];
+		int count = 0;
+		for (int k = bestFrom; k < bestTo; k++) {
+			final int id = (bestProperty < 0) ? k : order[bestProperty][k];
+			boolean match = true;
+			for (int p = 0; p < PROPERTY_COUNT && match; p++)
+				if (p != bestProperty && from[p] >= 0)
+					match = values[p][id] >= query.min[p]
+							&& values[p][id] <= query.max[p];
+			if (match)
+				found[count++] = id;
+		}
+		final int[] result = Arrays.copyOf(found, count);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/** Finds the names of the motors that match a query, in the order
+	 * of the catalog. */
+	public String[] findNames(final MotorQuery query) {
+		final int[] ids = find(query);
+		final String[] result = new String[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			result[i] = names[ids[i]];
+		return result;
+	}
+
+	// --- Getters ---
+	public int getMotorCount() {
+		return names.length;
+	}
+
+	public String getName(final int id) {
+		return names[id];
+	}
+
+	public double getTotalImpulse(final int id) {
+		return values[TOTAL_IMPULSE][id];
+	}
+
+	public char getImpulseClass(final int id) {
+		return MotorQuery.getImpulseClass(values[TOTAL_IMPULSE][id]);
+	}
+
+	public double getAverageThrust(final int id) {
+		return values[AVERAGE_THRUST][id];
+	}
+
+	public double getPeakThrust(final int id) {
+		return values[PEAK_THRUST][id];
+	}
+
+	public double getBurnTime(final int id) {
+		return values[BURN_TIME][id];
+	}
+
+	/** Sorts motor ids by value (NaN last), ties by id. */
+	private static void sortByValue(final int[] ids, final double[] values) {
+		final Integer[] boxed = new Integer[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			boxed[i] = i;
+		Arrays.sort(boxed, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer a, final Integer b) {
+				final int c = Double.compare(values[a], values[b]);
+				return (c != 0) ? c : a.compareTo(b);
+			}
+		});
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = boxed[i];
+	}
+
+	/** Returns the first index with a value >= min. */
+	private static int lowerBound(final double[] sorted, final double min) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (sorted[mid] < min)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/** Returns the first index with a value > max. */
+	private static int upperBound(final double[] sorted, final double max) {
+		int low = 0, high = sorted.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (sorted[mid] <= max)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+}
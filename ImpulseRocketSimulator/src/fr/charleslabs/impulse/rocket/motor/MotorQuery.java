@@ -0,0 +1,107 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+import java.util.Arrays;
+
+/**
+ * The criteria of a search in a MotorIndex: a range (bounds included)
+ * for each property of the motors. A query may be reused, changing
+ * some of its ranges between the searches.
+ *
+ * @author Charles Grassin
+ */
+public final class MotorQuery {
+	private final static String INVALID_CLASS_EXCEPTION = "The impulse class must be a letter from A to O.";
+	/** Standard gravity, in m.s^-2. */
+	private final static double G = 9.80665;
+
+	final double[] min = new double[MotorIndex.PROPERTY_COUNT];
+	final double[] max = new double[MotorIndex.PROPERTY_COUNT];
+
+	/** Constructs a query that matches all the motors. */
+	public MotorQuery() {
+		clear();
+	}
+
+	/** Removes all the criteria. */
+	public MotorQuery clear() {
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return this;
+	}
+
+	/** Sets the range of the total impulse, in N.s. */
+	public MotorQuery setTotalImpulse(final double min, final double max) {
+		return setRange(MotorIndex.TOTAL_IMPULSE, min, max);
+	}
+
+	/**
+	 * Sets the range of the impulse classes (eg: 'C' to 'E'). Class A is
+	 * from 1.25 (excluded) to 2.5 N.s, and every next class doubles.
+	 *
+	 * @throws Exception If a class is not a letter from A to O.
+	 */
+	public MotorQuery setImpulseClass(final char from, final char to)
+			throws Exception {
+		return setTotalImpulse(Math.nextUp(getClassMinImpulse(from)),
+				getClassMaxImpulse(to));
+	}
+
+	/** Sets the range of the average thrust, in N. */
+	public MotorQuery setAverageThrust(final double min, final double max) {
+		return setRange(MotorIndex.AVERAGE_THRUST, min, max);
+	}
+
+	/** Sets the range of the peak thrust, in N. */
+	public MotorQuery setPeakThrust(final double min, final double max) {
+		return setRange(MotorIndex.PEAK_THRUST, min, max);
+	}
+
+	/** Sets the range of the burn time, in s. */
+	public MotorQuery setBurnTime(final double min, final double max) {
+		return setRange(MotorIndex.BURN_TIME, min, max);
+	}
+
+	/**
+	 * Sets the range of the thrust-to-weight ratio (average thrust over
+	 * the weight of the rocket) for a given rocket mass.
+	 *
+	 * @param rocketMass The mass of the rocket, in kg.
+	 */
+	public MotorQuery setThrustToWeight(final double min, final double max,
+			final double rocketMass) {
+		final double weight = rocketMass * G;
+		return setAverageThrust(min * weight, max * weight);
+	}
+
+	private MotorQuery setRange(final int property, final double min,
+			final double max) {
+		this.min[property] = min;
+		this.max[property] = max;
+		return this;
+	}
+
+	/**
+	 * Returns the impulse class of a total impulse: 'A' to 'O', '?'
+	 * below class A or above class O.
+	 */
+	public static char getImpulseClass(final double totalImpulse) {
+		for (char impulseClass = 'A'; impulseClass <= 'O'; impulseClass++)
+			if (totalImpulse <= 2.5 * (1L << (impulseClass - 'A')))
+				return (totalImpulse > 1.25 * (1L << (impulseClass - 'A')))
+						? impulseClass : '?';
+		return '?';
+	}
+
+	private static double getClassMinImpulse(final char impulseClass)
+			throws Exception {
+		return getClassMaxImpulse(impulseClass) / 2;
+	}
+
+	private static double getClassMaxImpulse(final char impulseClass)
+			throws Exception {
+		final char upper = Character.toUpperCase(impulseClass);
+		if (upper < 'A' || upper > 'O')
+			throw new Exception(INVALID_CLASS_EXCEPTION);
+		return 2.5 * (1L << (upper - 'A'));
+	}
+}
@@ -12,5 +12,41 @@ public abstract class RocketMotor {
 	 */
 	abstract public double getThrust(final double currentTime);
 	
+	/** Return the time of the next breakpoint of the thrust curve (a point
+	 * where the thrust or its slope changes abruptly), strictly after the
+	 * current time. Adaptive integrators end their steps there.
+	 * @param currentTime Time since epoch.
+	 * @return The time of the next breakpoint, or Double.POSITIVE_INFINITY
+	 * if there is none.
+	 */
+	public double getNextBreakpoint(final double currentTime) {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/** Return the burn time of the motor, i.e. the time after which it
+	 * delivers no more thrust (in s), or Double.POSITIVE_INFINITY if
+	 * it is unknown. */
+	public double getBurnTime() {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/** Return the total impulse of the motor, in N.s, or Double.NaN
+	 * if it is unknown. */
+	public double getTotalImpulse() {
+		return Double.NaN;
+	}
+	
+	/** Return the maximum thrust of the motor, in N, or Double.NaN
+	 * if it is unknown. */
+	public double getPeakThrust() {
+		return Double.NaN;
+	}
+	
+	/** Return the average thrust over the burn time, in N. */
+	public double getAverageThrust() {
+		final double burnTime = getBurnTime();
+		return (burnTime > 0) ? getTotalImpulse() / burnTime : 0;
+	}
+	
 	public void reset() {}
 }
@@ -0,0 +1,71 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+/**
+ * A RocketMotor that delivers the thrust of another motor,
+ * multiplied by a constant factor. Used to simulate the
+ * thrust dispersion between motors of the same model.
+ *
+ * @author Charles Grassin
+ *
+ */
+public class ScaledRocketMotor extends RocketMotor {
+	/** The motor providing the nominal thrust curve. */
+	private final RocketMotor motor;
+	/** The thrust multiplication factor. */
+	private final double scale;
+
+	/**
+	 * Constructs a scaled motor.
+	 *
+	 * @param motor
+	 *            The motor providing the nominal thrust.
+	 * @param scale
+	 *            The factor applied to the nominal thrust (1 for the
+	 *            nominal motor).
+	 */
+	public ScaledRocketMotor(final RocketMotor motor, final double scale) {
+		super();
+		this.motor = motor;
+		this.scale = scale;
+	}
+
+	@Override
+	public double getThrust(final double currentTime) {
+		return motor.getThrust(currentTime) * scale;
+	}
+
+	@Override
+	public double getNextBreakpoint(final double currentTime) {
+		return motor.getNextBreakpoint(currentTime);
+	}
+
+	@Override
+	public double getBurnTime() {
+		return motor.getBurnTime();
+	}
+
+	@Override
+	public double getTotalImpulse() {
+		return motor.getTotalImpulse() * scale;
+	}
+
+	@Override
+	public double getPeakThrust() {
+		return motor.getPeakThrust() * scale;
+	}
+
+	@Override
+	public void reset() {
+		motor.reset();
+	}
+
+	/** Returns the motor providing the nominal thrust. */
+	public RocketMotor getMotor() {
+		return motor;
+	}
+
+	/** Returns the thrust multiplication factor. */
+	public double getScale() {
+		return scale;
+	}
+}
@@ -76,4 +76,41 @@ public class SolidFuelMotor extends RocketMotor {
 			return thrust[index];
 
 	}
+
+	@Override
+	public double getBurnTime() {
+		return burnTime;
+	}
+
+	@Override
+	public double getTotalImpulse() {
+		if (thrust.length == 1)
+			return thrust[0] * burnTime;
+		// Trapezoids between the points, and the last ramp down to 0
+		final double interval = burnTime / thrust.length;
+		double impulse = thrust[thrust.length - 1] * interval / 2;
+		for (int i = 0; i < thrust.length - 1; i++)
+			impulse += (thrust[i] + thrust[i + 1]) * interval / 2;
+		return impulse;
+	}
+
+	@Override
+	public double getPeakThrust() {
+		double peak = 0;
+		for (double value : thrust)
+			peak = Math.max(peak, value);
+		return peak;
+	}
+
+	@Override
+	public double getNextBreakpoint(final double currentTime) {
+		if (currentTime >= burnTime)
+			return Double.POSITIVE_INFINITY;
+		// The breakpoints are the points of the thrust table
+		int index = (int) Math.floor(currentTime * thrust.length / burnTime) + 1;
+		while (index * burnTime / thrust.length <= currentTime)
+			index++;
+		return (index >= thrust.length) ? burnTime : index * burnTime
+				/ thrust.length;
+	}
 }
@@ -0,0 +1,200 @@
+package fr.charleslabs.impulse.rocket.motor;
+
+import java.util.Arrays;
+
+/**
+ * A motor that delivers the thrust of a curve of (time, thrust)
+ * points, not necessarily evenly spaced, as in the RASP (.eng) files.
+ * The thrust is linearly interpolated between the points; it is 0
+ * before the first point if it does not start at 0 (the curve starts
+ * from (0, 0)), and after the last point.
+ * <br><br>
+ * The segment of the last call is cached, so that the thrust is found
+ * in constant time when the time increases step after step; other
+ * times are found by binary search. The impulse delivered since
+ * ignition is precomputed at every point, so the impulse queries are
+ * also in constant time.
+ * <br><br>
+ * A motor may be shared by several rockets and threads: the cached
+ * segment is only a hint, checked before use.
+ *
+ * @author Charles Grassin
+ */
+public class ThrustCurveMotor extends RocketMotor {
+	private final static String INVALID_CURVE_EXCEPTION = "The thrust curve must have as many times as thrusts, with at least one point.";
+	private final static String INVALID_TIME_EXCEPTION = "The times of the thrust curve must be >= 0 and strictly increasing.";
+	private final static String INVALID_THRUST_EXCEPTION = "The thrusts of the thrust curve must be >= 0.";
+
+	/** Times of the points, in s (the first one is 0). */
+	private final double[] times;
+	/** Thrust at the points, in N. */
+	private final double[] thrusts;
+	/** Impulse delivered from ignition to each point, in N.s. */
+	private final double[] impulses;
+	/** Maximum thrust, in N. */
+	private final double peakThrust;
+	/** Index of the segment of the last lookup. */
+	private int cursor;
+
+	/**
+	 * Constructs a motor from its thrust curve.
+	 *
+	 * @param times
+	 *            The times of the points, in s, strictly increasing.
+	 * @param thrusts
+	 *            The thrust at each point, in N.
+	 * @throws Exception If the curve is invalid.
+	 */
+	public ThrustCurveMotor(final double[] times, final double[] thrusts)
+			throws Exception {
+		super();
+		if (times.length != thrusts.length || times.length == 0)
+			throw new Exception(INVALID_CURVE_EXCEPTION);
+		for (int i = 0; i < times.length; i++) {
+			if (!(times[i] >= 0) || (i > 0 && !(times[i] > times[i - 1])))
+				throw new Exception(INVALID_TIME_EXCEPTION);
+			if (!(thrusts[i] >= 0))
+				throw new Exception(INVALID_THRUST_EXCEPTION);
+		}
+
+		// The curve starts from (0, 0)
+		final int offset = (times[0] > 0) ? 1 : 0;
+		this.times = new double[times.length + offset];
+		this.thrusts = new double[times.length + offset];
+		System.arraycopy(times, 0, this.times, offset, times.length);
+		System.arraycopy(thrusts, 0, this.thrusts, offset, thrusts.length);
+
+		// Cumulative impulse (trapezoidal rule: exact for a linear curve)
+		impulses = new double[this.times.length];
+		for (int i = 1; i < impulses.length; i++)
+			impulses[i] = impulses[i - 1] + (this.times[i] - this.times[i - 1])
+					* (this.thrusts[i] + this.thrusts[i - 1]) / 2;
+		double peak = 0;
+		for (double thrust : this.thrusts)
+			peak = Math.max(peak, thrust);
+		peakThrust = peak;
+	}
+
+	/**
+	 * Constructs a motor from a thrust table with evenly spaced points,
+	 * with the curve of a SolidFuelMotor: the i-th point is at
+	 * i*burnTime/length, and the thrust falls to 0 at the burn time.
+	 *
+	 * @param thrust
+	 *            The thrust table, in N.
+	 * @param burnTime
+	 *            The burn time of the motor, in s.
+	 * @throws Exception If the curve is invalid.
+	 */
+	public static ThrustCurveMotor fromUniformSamples(final double[] thrust,
+			final double burnTime) throws Exception {
+		// A single point is a constant thrust, cut at the burn time
+		final int count = thrust.length + 1;
+		final double[] times = new double[count];
+		final double[] thrusts = Arrays.copyOf(thrust, count);
+		for (int i = 0; i < thrust.length; i++)
+			times[i] = i * burnTime / thrust.length;
+		times[thrust.length] = burnTime;
+		if (thrust.length == 1)
+			thrusts[1] = thrust[0];
+		return new ThrustCurveMotor(times, thrusts);
+	}
+
+	@Override
+	public double getThrust(final double currentTime) {
+		final int i = findSegment(currentTime);
+		if (i < 0 || i >= times.length - 1)
+			return 0;
+		return thrusts[i] + (thrusts[i + 1] - thrusts[i])
+				* (currentTime - times[i]) / (times[i + 1] - times[i]);
+	}
+
+	@Override
+	public double getNextBreakpoint(final double currentTime) {
+		final int i = findSegment(currentTime);
+		return (i < times.length - 1) ? times[i + 1] : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public double getBurnTime() {
+		return times[times.length - 1];
+	}
+
+	/** Returns the impulse delivered from ignition to a given time, in N.s.
+	 * @param currentTime Time since epoch. */
+	public double getImpulse(final double currentTime) {
+		final int i = findSegment(currentTime);
+		if (i < 0)
+			return 0;
+		if (i >= times.length - 1)
+			return impulses[times.length - 1];
+		return impulses[i] + (currentTime - times[i])
+				* (thrusts[i] + getThrust(currentTime)) / 2;
+	}
+
+	/** Returns the impulse left to deliver after a given time, in N.s.
+	 * @param currentTime Time since epoch. */
+	public double getRemainingImpulse(final double currentTime) {
+		return getTotalImpulse() - getImpulse(currentTime);
+	}
+
+	@Override
+	public double getTotalImpulse() {
+		return impulses[impulses.length - 1];
+	}
+
+	@Override
+	public double getPeakThrust() {
+		return peakThrust;
+	}
+
+	/** Returns the number of points of the curve (including the
+	 * starting point at (0, 0) if it was added). */
+	public int getPointCount() {
+		return times.length;
+	}
+
+	/** Returns the time of a point of the curve, in s. */
+	public double getTime(final int index) {
+		return times[index];
+	}
+
+	/** Returns the thrust at a point of the curve, in N. */
+	public double getThrustAt(final int index) {
+		return thrusts[index];
+	}
+
+	@Override
+	public void reset() {
+		cursor = 0;
+	}
+
+	/**
+	 * Finds the segment [times[i], times[i+1]) that contains a time.
+	 *
+	 * @return The index i of the segment, -1 before the curve, or the
+	 * last index after it.
+	 */
+	private int findSegment(final double currentTime) {
+		if (currentTime < 0)
+			return -1;
+		final int last = times.length - 1;
+		if (currentTime >= times[last])
+			return last;
+		// Cached segment, then the next one (monotonic time)
+		int i = cursor;
+		if (i < last && times[i] <= currentTime) {
+			if (currentTime < times[i + 1])
+				return i;
+			if (i + 1 < last && currentTime < times[i + 2]) {
+				cursor = i + 1;
+				return i + 1;
+			}
+		}
+		i = Arrays.binarySearch(times, currentTime);
+		if (i < 0)
+			i = -i - 2; // Insertion point - 1
+		cursor = i;
+		return i;
+	}
+}
@@ -0,0 +1,564 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.charleslabs.impulse.physics.SemiImplicitEulerIntegrator;
+import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.rocket.motor.RocketMotor;
+import fr.charleslabs.impulse.rocket.motor.ScaledRocketMotor;
+
+/**
+ * A batch engine that simulates many rockets at once, each one
+ * described by a FlightConfiguration. Instead of an object graph
+ * per rocket (PhysicsMatrix, Gimbal, controller...), the state of
+ * all the rockets is held in primitive columns (one double[] per
+ * variable), and every step runs a few tight loops over all the
+ * rockets: gimbal servo slew, PID controller, thrust lookup and
+ * integration.
+ * <br><br>
+ * The batch reproduces the object engine as driven by
+ * HeadlessSimulation (semi-implicit Euler, fixed steps of
+ * 1/frequency, apogee and touchdown located exactly): the
+ * trajectories and the results are the same, to the bit. The
+ * rockets share the time grid, so they must all have the same
+ * engine frequency.
+ * <br><br>
+ * A batch is not thread-safe: run several batches to use
+ * several cores.
+ *
+ * @author Charles Grassin
+ */
+public class BatchSimulation {
+	private final static String FREQUENCY_EXCEPTION = "All the rockets of a batch must have the same engine frequency.";
+	private final static String INTEGRATOR_EXCEPTION = "The batch engine only supports the semi-implicit Euler integrator.";
+	private final static String AERODYNAMICS_EXCEPTION = "The batch engine does not simulate the aerodynamic forces (diameter must be 0).";
+	/** Maximum number of iterations to locate an event. */
+	private static final int MAX_ITERATIONS = 100;
+
+	/** Number of rockets. */
+	private final int size;
+	/** The time step, in s. */
+	private final double deltaT;
+	/** Tolerance on the time of the events, in s. */
+	private double eventTolerance = 1e-9;
+
+	// Motors: the distinct nominal motors, and the thrust of each one
+	// at the current time (computed once per step for all the rockets)
+	private final RocketMotor[] motors;
+	private final double[] motorThrust;
+
+	// Parameters
+	private final int[] motorIndex;
+	private final double[] thrustScale, mass, momentOfInertia,
+			centerOfMassHeight, limitAngle, anglePerS, period, kp, ki, kd,
+			maxDuration;
+
+	// Linear motion (position, speed) and angular motion (X and Y: the
+	// Z axis of a rocket never moves)
+	private final double[] positionX, positionY, positionZ, speedX, speedY,
+			speedZ, angleX, angleY, angularSpeedX, angularSpeedY;
+	/** The state at the beginning of the step, to locate the events. */
+	private final double[] startPositionX, startPositionY, startPositionZ,
+			startSpeedX, startSpeedY, startSpeedZ, startAngleX, startAngleY,
+			startAngularSpeedX, startAngularSpeedY;
+
+	// Gimbal servo and PID controller
+	private final double[] gimbalAngleX, gimbalAngleY, targetAngleX,
+			targetAngleY, pidPreviousTime, lastErrorX, lastErrorY,
+			integralErrorX, integralErrorY;
+	private final int[] nbCall;
+
+	// Results
+	private final double[] apogee, maxTilt, flightTime;
+	private final boolean[] landed;
+	private final long[] steps;
+	/** False for the configurations that are not valid rockets. */
+	private final boolean[] valid;
+	/** Indexes of the rockets still flying, in increasing order. */
+	private final int[] active;
+	private int activeCount;
+	/** Total number of rocket steps and wall-clock duration of the last
+	 * run, in ns. */
+	private long rocketSteps, wallTime;
+
+	/**
+	 * Constructs a batch from the configurations of its rockets.
+	 * A configuration that does not describe a valid rocket (see
+	 * {@link FlightConfiguration#buildRocket()}) is not simulated,
+	 * and its result is null.
+	 *
+	 * @param configurations The flights to simulate (not modified).
+	 * @throws Exception If the configurations do not share the same
+	 * engine frequency, do not use the semi-implicit Euler
+	 * integrator, or have aerodynamic forces.
+	 */
+	public BatchSimulation(final FlightConfiguration[] configurations)
+			throws Exception {
+		size = configurations.length;
+		final double frequency = (size > 0) ? configurations[0]
+				.getEngineFrequency() : 1;
+		deltaT = 1 / frequency;
+
+		motorIndex = new int[size];
+		thrustScale = new double[size];
+		mass = new double[size];
+		momentOfInertia = new double[size];
+		centerOfMassHeight = new double[size];
+		limitAngle = new double[size];
+		anglePerS = new double[size];
+		period = new double[size];
+		kp = new double[size];
+		ki = new double[size];
+		kd = new double[size];
+		maxDuration = new double[size];
+
+		positionX = new double[size];
+		positionY = new double[size];
+		positionZ = new double[size];
+		speedX = new double[size];
+		speedY = new double[size];
+		speedZ = new double[size];
+		angleX = new double[size];
+		angleY = new double[size];
+		angularSpeedX = new double[size];
+		angularSpeedY = new double[size];
+		startPositionX = new double[size];
+		startPositionY = new double[size];
+		startPositionZ = new double[size];
+		startSpeedX = new double[size];
+		startSpeedY = new double[size];
+		startSpeedZ = new double[size];
+		startAngleX = new double[size];
+		startAngleY = new double[size];
+		startAngularSpeedX = new double[size];
+		startAngularSpeedY = new double[size];
+
+		gimbalAngleX = new double[size];
+		gimbalAngleY = new double[size];
+		targetAngleX = new double[size];
+		targetAngleY = new double[size];
+		pidPreviousTime = new double[size];
+		lastErrorX = new double[size];
+		lastErrorY = new double[size];
+		integralErrorX = new double[size];
+		integralErrorY = new double[size];
+		nbCall = new int[size];
+
+		apogee = new double[size];
+		maxTilt = new double[size];
+		flightTime = new double[size];
+		landed = new boolean[size];
+		steps = new long[size];
+		valid = new boolean[size];
+		active = new int[size];
+
+		final List<RocketMotor> motorList = new ArrayList<RocketMotor>();
+		for (int i = 0; i < size; i++) {
+			final FlightConfiguration configuration = configurations[i];
+			if (configuration.getEngineFrequency() != frequency)
+				throw new Exception(FREQUENCY_EXCEPTION);
+			if (configuration.getIntegrator() != SemiImplicitEulerIntegrator.INSTANCE)
+				throw new Exception(INTEGRATOR_EXCEPTION);
+			if (configuration.getDiameter() > 0)
+				throw new Exception(AERODYNAMICS_EXCEPTION);
+
+			// A scaled motor shares the thrust lookup of its nominal motor
+			RocketMotor motor = configuration.getMotor();
+			thrustScale[i] = 1;
+			if (motor instanceof ScaledRocketMotor) {
+				thrustScale[i] = ((ScaledRocketMotor) motor).getScale();
+				motor = ((ScaledRocketMotor) motor).getMotor();
+			}
+			if (motor == null)
+				motorIndex[i] = -1;
+			else {
+				int index = motorList.indexOf(motor);
+				if (index < 0) {
+					index = motorList.size();
+					motorList.add(motor);
+				}
+				motorIndex[i] = index;
+			}
+
+			mass[i] = configuration.getMass();
+			momentOfInertia[i] = Rocket.computeMomentOfInertia(
+					configuration.getLength(), configuration.getMass(),
+					configuration.getCenterOfMassHeight());
+			centerOfMassHeight[i] = configuration.getCenterOfMassHeight();
+			limitAngle[i] = configuration.getGimbalLimitAngle();
+			anglePerS[i] = configuration.getGimbalAnglePerS();
+			period[i] = 1.0d / configuration.getControllerFrequency();
+			kp[i] = configuration.getKp();
+			ki[i] = configuration.getKi();
+			kd[i] = configuration.getKd();
+			maxDuration[i] = configuration.getMaxDuration();
+			// Same rule as Rocket.setParameters
+			valid[i] = configuration.getLength() >= configuration
+					.getCenterOfMassHeight();
+			angleX[i] = configuration.getInitialAngleX();
+			angleY[i] = configuration.getInitialAngleY();
+		}
+		motors = motorList.toArray(new RocketMotor[motorList.size()]);
+		motorThrust = new double[motors.length];
+	}
+
+	/**
+	 * Simulates all the rockets until they land or reach their
+	 * maximum duration. A batch can only be run once.
+	 *
+	 * @return The result of each rocket, in configuration order
+	 * (null for the invalid configurations). The wall-clock time of
+	 * the batch is shared between the rockets in proportion to their
+	 * number of steps.
+	 */
+	public FlightResult[] run() {
+		activeCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (!valid[i])
+				continue;
+			// Rocket.init: launch from 1 m
+			positionZ[i] = 1;
+			active[activeCount++] = i;
+		}
+
+		final long startTime = System.nanoTime();
+		double currentT = 0;
+		while (activeCount > 0) {
+			// Rockets at their maximum duration stop before the step
+			removeRockets(currentT, true);
+			if (activeCount == 0)
+				break;
+			final double startT = currentT;
+			currentT += deltaT;
+			for (int m = 0; m < motors.length; m++)
+				motorThrust[m] = motors[m].getThrust(currentT);
+			saveStart();
+			computeGimbals();
+			computeControllers(currentT);
+			integrate(currentT);
+			handleEvents(startT, currentT);
+			removeRockets(currentT, false);
+		}
+		wallTime = System.nanoTime() - startTime;
+
+		rocketSteps = 0;
+		for (int i = 0; i < size; i++)
+			rocketSteps += steps[i];
+		final FlightResult[] results = new FlightResult[size];
+		for (int i = 0; i < size; i++) {
+			if (!valid[i])
+				continue;
+			results[i] = new FlightResult(Math.max(apogee[i], positionZ[i]),
+					maxTilt[i], flightTime[i], Math.sqrt(speedX[i] * speedX[i]
+							+ speedY[i] * speedY[i] + speedZ[i] * speedZ[i]),
+					positionX[i], positionY[i], landed[i],
+					(rocketSteps > 0) ? wallTime * steps[i] / rocketSteps : 0);
+		}
+		return results;
+	}
+
+	/** Copies the state of the active rockets at the beginning of the
+	 * step. */
+	private void saveStart() {
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			startPositionX[i] = positionX[i];
+			startPositionY[i] = positionY[i];
+			startPositionZ[i] = positionZ[i];
+			startSpeedX[i] = speedX[i];
+			startSpeedY[i] = speedY[i];
+			startSpeedZ[i] = speedZ[i];
+			startAngleX[i] = angleX[i];
+			startAngleY[i] = angleY[i];
+			startAngularSpeedX[i] = angularSpeedX[i];
+			startAngularSpeedY[i] = angularSpeedY[i];
+		}
+	}
+
+	/** Moves the gimbal servos towards their targets (same rule as
+	 * GimbalServo.compute). */
+	private void computeGimbals() {
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			final double maxDisplacement = anglePerS[i] * deltaT;
+			gimbalAngleX[i] = slew(gimbalAngleX[i], targetAngleX[i],
+					maxDisplacement, limitAngle[i]);
+			gimbalAngleY[i] = slew(gimbalAngleY[i], targetAngleY[i],
+					maxDisplacement, limitAngle[i]);
+		}
+	}
+
+	private static double slew(double angle, final double targetAngle,
+			final double maxDisplacement, final double limitAngle) {
+		if (Math.abs(targetAngle - angle) < maxDisplacement)
+			angle = targetAngle;
+		else if (angle < targetAngle)
+			angle += maxDisplacement;
+		else
+			angle -= maxDisplacement;
+		if (angle > limitAngle)
+			return limitAngle;
+		else if (angle < -limitAngle)
+			return -limitAngle;
+		return angle;
+	}
+
+	/** Calls the PID controllers that are due (same rules as
+	 * RocketController.compute and SimplyPID.getOutput, with a set
+	 * point of 0). */
+	private void computeControllers(final double currentT) {
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			if (currentT < (nbCall[i] + 1) * period[i])
+				continue;
+			nbCall[i]++;
+			final double dt = currentT - pidPreviousTime[i];
+			pidPreviousTime[i] = currentT;
+
+			final double errorX = 0 - angleX[i];
+			final double derivativeErrorX = (dt != 0) ? ((errorX - lastErrorX[i]) / dt) : 0;
+			integralErrorX[i] += errorX * dt;
+			lastErrorX[i] = errorX;
+			targetAngleX[i] = (kp[i] * errorX) + (ki[i] * integralErrorX[i])
+					+ (kd[i] * derivativeErrorX);
+
+			final double errorY = 0 - angleY[i];
+			final double derivativeErrorY = (dt != 0) ? ((errorY - lastErrorY[i]) / dt) : 0;
+			integralErrorY[i] += errorY * dt;
+			lastErrorY[i] = errorY;
+			targetAngleY[i] = (kp[i] * errorY) + (ki[i] * integralErrorY[i])
+					+ (kd[i] * derivativeErrorY);
+		}
+	}
+
+	/** Integrates the motion of the active rockets over the step. */
+	private void integrate(final double currentT) {
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			final double thrust = (motorIndex[i] < 0) ? 0
+					: motorThrust[motorIndex[i]] * thrustScale[i];
+			integrate(i, thrust, deltaT);
+			steps[i]++;
+		}
+	}
+
+	/**
+	 * Advances one rocket by one semi-implicit Euler step, with the
+	 * same forces as Rocket (thrust through the gimbal, gravity).
+	 *
+	 * @param i The index of the rocket.
+	 * @param thrust The thrust of the motor, in N.
+	 * @param dt The duration of the step, in s.
+	 */
+	private void integrate(final int i, final double thrust, final double dt) {
+		final double tanGimbalX = tan(gimbalAngleX[i]), tanGimbalY = tan(gimbalAngleY[i]);
+		final double u = Math.sqrt(1 + tanGimbalX * tanGimbalX + tanGimbalY
+				* tanGimbalY);
+		final double tanX = tan(angleX[i]), tanY = tan(angleY[i]);
+		final double rawTanX = (Math.abs(angleX[i]) > 90) ? Math.tan(Math
+				.toRadians(angleX[i])) : tanX;
+		final double rawTanY = (Math.abs(angleY[i]) > 90) ? Math.tan(Math
+				.toRadians(angleY[i])) : tanY;
+		final double v = Math.sqrt(1 + rawTanX * rawTanX + rawTanY * rawTanY);
+
+		// Angular motion
+		final double angularAccelerationX = centerOfMassHeight[i] * thrust
+				* tanGimbalX / u / momentOfInertia[i];
+		final double angularAccelerationY = centerOfMassHeight[i] * thrust
+				* tanGimbalY / u / momentOfInertia[i];
+		angularSpeedX[i] += angularAccelerationX * dt;
+		angleX[i] = normalizeAngle(angleX[i] + angularSpeedX[i] * dt);
+		angularSpeedY[i] += angularAccelerationY * dt;
+		angleY[i] = normalizeAngle(angleY[i] + angularSpeedY[i] * dt);
+
+		// Linear motion
+		speedX[i] += thrust * tanY / u / v / mass[i] * dt;
+		positionX[i] += speedX[i] * dt;
+		speedY[i] += thrust * tanX / u / v / mass[i] * dt;
+		positionY[i] += speedY[i] * dt;
+		speedZ[i] += (thrust / u / v - 9.81 * mass[i]) / mass[i] * dt;
+		positionZ[i] += speedZ[i] * dt;
+	}
+
+	/**
+	 * Locates the apogee (vertical speed falling through zero) and the
+	 * touchdown (altitude falling through zero, terminal) of the
+	 * rockets during the step, as the EventLocator of the engine does,
+	 * and updates their maximum tilt.
+	 */
+	private void handleEvents(final double startT, final double endT) {
+		final double stepT = endT - startT;
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			final boolean apogeeCrossing = startSpeedZ[i] > 0 && speedZ[i] <= 0;
+			final boolean landingCrossing = startPositionZ[i] > 0 && positionZ[i] <= 0;
+			flightTime[i] = endT;
+			if (apogeeCrossing || landingCrossing) {
+				final double endPositionX = positionX[i], endPositionY = positionY[i],
+						endPositionZ = positionZ[i], endSpeedX = speedX[i],
+						endSpeedY = speedY[i], endSpeedZ = speedZ[i],
+						endAngleX = angleX[i], endAngleY = angleY[i],
+						endAngularSpeedX = angularSpeedX[i],
+						endAngularSpeedY = angularSpeedY[i];
+				final double apogeeT = apogeeCrossing ? startT
+						+ locate(i, true, startT, stepT, speedZ[i]) * stepT
+						: Double.NaN;
+				final double landingT = landingCrossing ? startT
+						+ locate(i, false, startT, stepT, positionZ[i]) * stepT
+						: Double.NaN;
+
+				// Chronological order; the touchdown ends the flight
+				if (apogeeCrossing && !(landingT < apogeeT)) {
+					moveTo(i, startT, apogeeT);
+					apogee[i] = Math.max(apogee[i], positionZ[i]);
+				}
+				if (landingCrossing) {
+					moveTo(i, startT, landingT);
+					flightTime[i] = landingT;
+					landed[i] = true;
+				} else {
+					positionX[i] = endPositionX;
+					positionY[i] = endPositionY;
+					positionZ[i] = endPositionZ;
+					speedX[i] = endSpeedX;
+					speedY[i] = endSpeedY;
+					speedZ[i] = endSpeedZ;
+					angleX[i] = endAngleX;
+					angleY[i] = endAngleY;
+					angularSpeedX[i] = endAngularSpeedX;
+					angularSpeedY[i] = endAngularSpeedY;
+				}
+			}
+
+			final double tilt = tilt(angleX[i], angleY[i]);
+			if (tilt > maxTilt[i])
+				maxTilt[i] = tilt;
+		}
+	}
+
+	/**
+	 * Locates the zero crossing of the vertical speed (apogee) or of
+	 * the altitude (touchdown) of a rocket inside the step, with the
+	 * Illinois variant of the regula falsi.
+	 *
+	 * @return The fraction of the step at which the crossing occurs,
+	 * on the side where the event has occurred.
+	 */
+	private double locate(final int i, final boolean onSpeed,
+			final double startT, final double stepT, double endValue) {
+		double startValue = onSpeed ? startSpeedZ[i] : startPositionZ[i];
+		double a = 0, b = 1;
+		int side = 0;
+		for (int n = 0; n < MAX_ITERATIONS && (b - a) * stepT > eventTolerance; n++) {
+			double c = (a * endValue - b * startValue) / (endValue - startValue);
+			if (!(c > a && c < b))
+				c = (a + b) / 2;
+			moveTo(i, startT, startT + c * stepT);
+			final double value = onSpeed ? speedZ[i] : positionZ[i];
+			if (value == 0 || (startValue > 0 && value <= 0)) {
+				// The crossing is in [a, c]
+				b = c;
+				endValue = value;
+				if (side == -1)
+					startValue /= 2;
+				side = -1;
+			} else {
+				// The crossing is in [c, b]
+				a = c;
+				startValue = value;
+				if (side == 1)
+					endValue /= 2;
+				side = 1;
+			}
+		}
+		return b;
+	}
+
+	/** Moves a rocket from its state at the beginning of the step to
+	 * its state at a given time of the step. */
+	private void moveTo(final int i, final double startT, final double currentT) {
+		positionX[i] = startPositionX[i];
+		positionY[i] = startPositionY[i];
+		positionZ[i] = startPositionZ[i];
+		speedX[i] = startSpeedX[i];
+		speedY[i] = startSpeedY[i];
+		speedZ[i] = startSpeedZ[i];
+		angleX[i] = startAngleX[i];
+		angleY[i] = startAngleY[i];
+		angularSpeedX[i] = startAngularSpeedX[i];
+		angularSpeedY[i] = startAngularSpeedY[i];
+		if (currentT > startT)
+			integrate(i, (motorIndex[i] < 0) ? 0 : motors[motorIndex[i]]
+					.getThrust(currentT) * thrustScale[i], currentT - startT);
+	}
+
+	/**
+	 * Removes the rockets whose flight is over from the active list,
+	 * keeping it in increasing order.
+	 *
+	 * @param currentT The current time.
+	 * @param beforeStep True to remove the rockets that reached their
+	 * maximum duration, false for the ones that landed.
+	 */
+	private void removeRockets(final double currentT, final boolean beforeStep) {
+		int count = 0;
+		for (int k = 0; k < activeCount; k++) {
+			final int i = active[k];
+			final boolean over = beforeStep ? currentT >= maxDuration[i]
+					: landed[i] || positionZ[i] < 0;
+			if (!over)
+				active[count++] = i;
+		}
+		activeCount = count;
+	}
+
+	/** Same as Rocket.getTiltAngle. */
+	private static double tilt(final double angleX, final double angleY) {
+		final double tanX = tan(angleX), tanY = tan(angleY);
+		final double tilt = Math.toDegrees(Math.acos(1 / Math.sqrt(1 + tanX
+				* tanX + tanY * tanY)));
+		if (Math.abs(angleX) > 90 || Math.abs(angleY) > 90)
+			return 180 - tilt;
+		return tilt;
+	}
+
+	private static double tan(final double angle) {
+		return Math.tan(Math.toRadians((Math.abs(angle) > 90) ? 180 - angle
+				: angle));
+	}
+
+	/** Same as PhysicalObject.normalizeAngle: [-180;180]. */
+	private static double normalizeAngle(final double angle) {
+		return angle - Math.floor((angle + 179.0) / 360) * 360;
+	}
+
+	// --- Getters and Setters ---
+	/** Returns the number of rockets of the batch. */
+	public int getSize() {
+		return size;
+	}
+
+	/** Sets the tolerance on the time of the apogee and the touchdown,
+	 * in s. */
+	public void setEventTolerance(final double eventTolerance) {
+		this.eventTolerance = eventTolerance;
+	}
+
+	/** Returns the total number of rocket steps of the last run. */
+	public long getRocketSteps() {
+		return rocketSteps;
+	}
+
+	/** Returns the wall-clock duration of the last run, in ns. */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/** Returns the throughput of the last run, in rocket steps per
+	 * wall-clock second. */
+	public double getRocketStepsPerSecond() {
+		return (wallTime > 0) ? rocketSteps / (wallTime / 1000000000.0d)
+				: Double.POSITIVE_INFINITY;
+	}
+}
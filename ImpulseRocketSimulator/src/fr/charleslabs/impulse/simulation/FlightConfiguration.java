@@ -0,0 +1,237 @@
+package fr.charleslabs.impulse.simulation;
+
+import fr.charleslabs.impulse.physics.Integrator;
+import fr.charleslabs.impulse.physics.SemiImplicitEulerIntegrator;
+import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.rocket.aero.Aerodynamics;
+import fr.charleslabs.impulse.rocket.controller.PIDRocketController;
+import fr.charleslabs.impulse.rocket.gimbal.GimbalServo;
+import fr.charleslabs.impulse.rocket.motor.MotorDataBase;
+import fr.charleslabs.impulse.rocket.motor.RocketMotor;
+
+/**
+ * The full description of a flight to simulate without
+ * the user interface: rocket, gimbal, PID controller,
+ * initial attitude and engine settings.
+ * <br><br>
+ * The default values are the ones of the user interface, except
+ * the diameter: 0, i.e. no aerodynamic forces.
+ *
+ * @author Charles Grassin
+ */
+public class FlightConfiguration {
+	private final static String UNKNOWN_MOTOR_EXCEPTION = "Unknown motor: ";
+
+	// Rocket
+	private RocketMotor motor;
+	private double mass = 0.2, length = 0.3, centerOfMassHeight = 0.15;
+	/** Body diameter, in m (0: no aerodynamic forces). */
+	private double diameter = 0;
+	// Gimbal
+	private double gimbalLimitAngle = 20, gimbalAnglePerS = 400;
+	// PID controller
+	private double kp = 4, ki = 0, kd = 1, controllerFrequency = 30;
+	// Initial conditions
+	private double initialAngleX = 10, initialAngleY = -10;
+	// Engine
+	private double engineFrequency = 200, maxDuration = 600;
+	private Integrator integrator = SemiImplicitEulerIntegrator.INSTANCE;
+
+	/**
+	 * Constructs a configuration with the default values and the
+	 * given motor.
+	 *
+	 * @param motor The RocketMotor of the rocket.
+	 */
+	public FlightConfiguration(final RocketMotor motor) {
+		this.motor = motor;
+	}
+
+	/**
+	 * Constructs a configuration with the default values and a
+	 * motor from the MotorDataBase.
+	 *
+	 * @param motorName The name of the motor in the MotorDataBase.
+	 * @throws Exception If the motor does not exist.
+	 */
+	public FlightConfiguration(final String motorName) throws Exception {
+		this.motor = MotorDataBase.getInstance().getMotor(motorName);
+		if (motor == null)
+			throw new Exception(UNKNOWN_MOTOR_EXCEPTION + motorName);
+	}
+
+	/**
+	 * Copy constructor: creates an identical configuration.
+	 *
+	 * @param configuration The configuration to copy.
+	 */
+	public FlightConfiguration(final FlightConfiguration configuration) {
+		this.motor = configuration.motor;
+		this.mass = configuration.mass;
+		this.length = configuration.length;
+		this.centerOfMassHeight = configuration.centerOfMassHeight;
+		this.diameter = configuration.diameter;
+		this.gimbalLimitAngle = configuration.gimbalLimitAngle;
+		this.gimbalAnglePerS = configuration.gimbalAnglePerS;
+		this.kp = configuration.kp;
+		this.ki = configuration.ki;
+		this.kd = configuration.kd;
+		this.controllerFrequency = configuration.controllerFrequency;
+		this.initialAngleX = configuration.initialAngleX;
+		this.initialAngleY = configuration.initialAngleY;
+		this.engineFrequency = configuration.engineFrequency;
+		this.maxDuration = configuration.maxDuration;
+		this.integrator = configuration.integrator;
+	}
+
+	/**
+	 * Builds a new Rocket, with its gimbal and its PID controller,
+	 * from this configuration. Every call returns an independent
+	 * object graph.
+	 *
+	 * @return A new Rocket.
+	 * @throws Exception If the Rocket is invalid.
+	 */
+	public Rocket buildRocket() throws Exception {
+		final Rocket rocket = new Rocket();
+		rocket.setParameters(motor, new GimbalServo(gimbalLimitAngle,
+				gimbalAnglePerS), mass, length, centerOfMassHeight);
+		rocket.setController(new PIDRocketController(controllerFrequency,
+				rocket, kp, ki, kd));
+		if (diameter > 0)
+			rocket.setAerodynamics(new Aerodynamics(diameter));
+		return rocket;
+	}
+
+	// --- Getters and Setters ---
+	public RocketMotor getMotor() {
+		return motor;
+	}
+
+	public void setMotor(final RocketMotor motor) {
+		this.motor = motor;
+	}
+
+	public double getMass() {
+		return mass;
+	}
+
+	public void setMass(final double mass) {
+		this.mass = mass;
+	}
+
+	public double getLength() {
+		return length;
+	}
+
+	public void setLength(final double length) {
+		this.length = length;
+	}
+
+	public double getCenterOfMassHeight() {
+		return centerOfMassHeight;
+	}
+
+	public void setCenterOfMassHeight(final double centerOfMassHeight) {
+		this.centerOfMassHeight = centerOfMassHeight;
+	}
+
+	public double getDiameter() {
+		return diameter;
+	}
+
+	/** Sets the body diameter, in m (0: no aerodynamic forces). */
+	public void setDiameter(final double diameter) {
+		this.diameter = diameter;
+	}
+
+	public double getGimbalLimitAngle() {
+		return gimbalLimitAngle;
+	}
+
+	public void setGimbalLimitAngle(final double gimbalLimitAngle) {
+		this.gimbalLimitAngle = gimbalLimitAngle;
+	}
+
+	public double getGimbalAnglePerS() {
+		return gimbalAnglePerS;
+	}
+
+	public void setGimbalAnglePerS(final double gimbalAnglePerS) {
+		this.gimbalAnglePerS = gimbalAnglePerS;
+	}
+
+	public double getKp() {
+		return kp;
+	}
+
+	public void setKp(final double kp) {
+		this.kp = kp;
+	}
+
+	public double getKi() {
+		return ki;
+	}
+
+	public void setKi(final double ki) {
+		this.ki = ki;
+	}
+
+	public double getKd() {
+		return kd;
+	}
+
+	public void setKd(final double kd) {
+		this.kd = kd;
+	}
+
+	public double getControllerFrequency() {
+		return controllerFrequency;
+	}
+
+	public void setControllerFrequency(final double controllerFrequency) {
+		this.controllerFrequency = controllerFrequency;
+	}
+
+	public double getInitialAngleX() {
+		return initialAngleX;
+	}
+
+	public void setInitialAngleX(final double initialAngleX) {
+		this.initialAngleX = initialAngleX;
+	}
+
+	public double getInitialAngleY() {
+		return initialAngleY;
+	}
+
+	public void setInitialAngleY(final double initialAngleY) {
+		this.initialAngleY = initialAngleY;
+	}
+
+	public double getEngineFrequency() {
+		return engineFrequency;
+	}
+
+	public void setEngineFrequency(final double engineFrequency) {
+		this.engineFrequency = engineFrequency;
+	}
+
+	/** Returns the maximum simulated duration of the flight, in s. */
+	public double getMaxDuration() {
+		return maxDuration;
+	}
+
+	/** Sets the maximum simulated duration of the flight, in s. */
+	public void setMaxDuration(final double maxDuration) {
+		this.maxDuration = maxDuration;
+	}
+
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+
+	public void setIntegrator(final Integrator integrator) {
+		this.integrator = integrator;
+	}
+}
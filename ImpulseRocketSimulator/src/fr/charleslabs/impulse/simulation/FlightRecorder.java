@@ -0,0 +1,374 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import fr.charleslabs.impulse.physics.PhysicalObject;
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.physics.PhysicsMatrix;
+import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.rocket.gimbal.Gimbal;
+
+/**
+ * The flight data recorder of a rocket: every step of the engine
+ * (time, linear and angular motion, gimbal angles and commands,
+ * thrust) is written to a ring of fixed-size records, off-heap or
+ * in a memory-mapped file. Recording does not allocate: the records
+ * are written in place in a buffer allocated once.
+ * <br><br>
+ * The last seconds of the flight can be dumped to CSV at any time,
+ * from any thread, while the engine runs. With an automatic dump
+ * directory, they are also dumped when the simulation fails (an
+ * exception in a step) or when the state of the rocket becomes
+ * invalid (NaN or infinite).
+ * <br><br>
+ * A memory-mapped recorder keeps its records in the file even if
+ * the application crashes; the header of the file holds the number
+ * of records written.
+ *
+ * @author Charles Grassin
+ */
+public final class FlightRecorder implements PhysicsEngine.StepListener {
+	private final static String INVALID_CAPACITY_EXCEPTION = "The capacity of the recorder must be in [1, %d].";
+	/** Names of the values of a record. */
+	public final static String[] COLUMNS = { "time", "x", "y", "z", "vx",
+			"vy", "vz", "ax", "ay", "az", "angleX", "angleY", "angleZ",
+			"angularSpeedX", "angularSpeedY", "angularSpeedZ",
+			"angularAccelerationX", "angularAccelerationY",
+			"angularAccelerationZ", "gimbalX", "gimbalY", "gimbalTargetX",
+			"gimbalTargetY", "thrust" };
+	private final static int RECORD_BYTES = COLUMNS.length * 8;
+	/** Header of a mapped file: magic, record size, capacity, count. */
+	private final static int HEADER_BYTES = 32, MAGIC = 0x494D5246; // "IMRF"
+	/** Largest capacity: a buffer (header included) holds at most
+	 * Integer.MAX_VALUE bytes. */
+	public final static int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES)
+			/ RECORD_BYTES;
+
+	private final Rocket rocket;
+	private final int capacity;
+	/** The records (after the header in a mapped file). */
+	private final ByteBuffer buffer;
+	/** The header of a mapped file, or null. */
+	private final ByteBuffer header;
+	/** Number of records written since the start of the flight. */
+	private volatile long count;
+	/** Written by the readers between the copy of the records and the
+	 * second read of count (see getLastRecords). */
+	private volatile int fence;
+
+	// Automatic dump
+	private File dumpDirectory;
+	private double dumpDuration;
+	private boolean dumped;
+	private volatile File lastDump;
+
+	/**
+	 * Constructs an off-heap recorder.
+	 *
+	 * @param rocket The rocket to record.
+	 * @param capacity The number of steps kept (see getCapacity(double,
+	 * double)).
+	 * @throws Exception If the capacity is invalid.
+	 */
+	public FlightRecorder(final Rocket rocket, final int capacity)
+			throws Exception {
+		checkCapacity(capacity);
+		this.rocket = rocket;
+		this.capacity = capacity;
+		this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_BYTES)
+				.order(ByteOrder.nativeOrder());
+		this.header = null;
+	}
+
+	/**
+	 * Constructs a recorder in a memory-mapped file (created or
+	 * overwritten).
+	 *
+	 * @param rocket The rocket to record.
+	 * @param capacity The number of steps kept.
+	 * @param file The file of the records.
+	 * @throws Exception If the capacity is invalid, or the file cannot
+	 * be mapped.
+	 */
+	public FlightRecorder(final Rocket rocket, final int capacity,
+			final File file) throws Exception {
+		checkCapacity(capacity);
+		this.rocket = rocket;
+		this.capacity = capacity;
+		final long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+			final ByteBuffer mapped = raf.getChannel()
+					.map(FileChannel.MapMode.READ_WRITE, 0, size)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			mapped.position(HEADER_BYTES);
+			buffer = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+		header.putInt(0, MAGIC);
+		header.putInt(4, RECORD_BYTES);
+		header.putInt(8, capacity);
+		header.putLong(16, 0);
+	}
+
+	private static void checkCapacity(final int capacity) throws Exception {
+		if (capacity <= 0 || capacity > MAX_CAPACITY)
+			throw new Exception(String.format(INVALID_CAPACITY_EXCEPTION,
+					MAX_CAPACITY));
+	}
+
+	/** Returns the number of records needed to keep a duration of
+	 * flight at a given engine frequency. */
+	public static int getCapacity(final double duration, final double frequency) {
+		return (int) Math.ceil(duration * frequency) + 1;
+	}
+
+	@Override
+	public void onStep(final double currentT, final List<PhysicalObject> objects) {
+		final long index = count;
+		int position = getPosition(index);
+		position = putDouble(position, currentT);
+		position = putMatrix(position, rocket.getLinearMotion());
+		position = putMatrix(position, rocket.getAngularMotion());
+		final Gimbal gimbal = rocket.getGimbal();
+		if (gimbal != null) {
+			position = putDouble(position, gimbal.getGimbalAngleX());
+			position = putDouble(position, gimbal.getGimbalAngleY());
+			position = putDouble(position, gimbal.getTargetAngleX());
+			position = putDouble(position, gimbal.getTargetAngleY());
+		} else
+			for (int i = 0; i < 4; i++)
+				position = putDouble(position, 0);
+		putDouble(position, rocket.getCurrentThrust());
+		count = index + 1;
+		if (header != null)
+			header.putLong(16, index + 1);
+
+		if (dumpDirectory != null && !dumped && !isStateValid())
+			autoDump("invalid-state");
+	}
+
+	/** Returns the position of a record in the buffer. */
+	private int getPosition(final long index) {
+		return (int) ((index % capacity) * RECORD_BYTES);
+	}
+
+	@Override
+	public void onFinish(final double currentT, final Throwable failure) {
+		if (failure != null && dumpDirectory != null && !dumped)
+			autoDump("failure");
+	}
+
+	/** Forgets the records, eg: before a new flight. Must not be called
+	 * while the engine runs. */
+	public void clear() {
+		count = 0;
+		dumped = false;
+		if (header != null)
+			header.putLong(16, 0);
+	}
+
+	/**
+	 * Sets the automatic dump of the last seconds of the flight when
+	 * the simulation fails.
+	 *
+	 * @param directory The directory of the dumps, or null to disable.
+	 * @param duration The duration dumped, in s.
+	 */
+	public void setAutoDump(final File directory, final double duration) {
+		this.dumpDirectory = directory;
+		this.dumpDuration = duration;
+	}
+
+	/** Returns the file of the last automatic dump, or null. */
+	public File getLastAutoDump() {
+		return lastDump;
+	}
+
+	/**
+	 * Copies the records of the last seconds of the flight. Can be
+	 * called from any thread while the engine runs: the records
+	 * overwritten during the copy are left out.
+	 *
+	 * @param duration The duration to copy, in s (from the last record).
+	 * @return The records, oldest first, one array of COLUMNS.length
+	 * values per record.
+	 */
+	public double[][] getLastRecords(final double duration) {
+		final long end = count;
+		final long start = Math.max(0, end - capacity);
+		final double[][] records = new double[(int) (end - start)][];
+		for (long index = start; index < end; index++) {
+			final double[] record = new double[COLUMNS.length];
+			final int position = getPosition(index);
+			for (int k = 0; k < record.length; k++)
+				record[k] = buffer.getDouble(position + 8 * k);
+			records[(int) (index - start)] = record;
+		}
+		// Java 7 has no acquire fence: a volatile write keeps the reads
+		// of the copy before the second read of count
+		fence = 0;
+		// Records overwritten by the engine during the copy
+		final int overwritten = (int) Math.max(0,
+				Math.min(records.length, count - capacity + 1 - start));
+
+		int first = overwritten;
+		if (records.length > first) {
+			final double lastT = records[records.length - 1][0];
+			while (first < records.length && records[first][0] < lastT - duration)
+				first++;
+		}
+		final double[][] result = new double[records.length - first][];
+		System.arraycopy(records, first, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Writes the last seconds of the flight in CSV (one line per step).
+	 *
+	 * @param duration The duration to write, in s.
+	 * @param out The destination.
+	 * @throws IOException On write error.
+	 */
+	public void dump(final double duration, final Writer out) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		for (int k = 0; k < COLUMNS.length; k++)
+			line.append((k > 0) ? "," : "").append(COLUMNS[k]);
+		out.write(line.append('\n').toString());
+		for (double[] record : getLastRecords(duration)) {
+			line.setLength(0);
+			for (int k = 0; k < record.length; k++)
+				line.append((k > 0) ? "," : "").append(record[k]);
+			out.write(line.append('\n').toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Saves the last seconds of the flight in a compressed telemetry
+	 * file (see TelemetryWriter).
+	 *
+	 * @param duration The duration to save, in s.
+	 * @param file The destination.
+	 * @throws IOException On write error.
+	 */
+	public void save(final double duration, final File file) throws IOException {
+		try (TelemetryWriter writer = new TelemetryWriter(
+				new FileOutputStream(file), COLUMNS)) {
+			for (double[] record : getLastRecords(duration))
+				writer.write(record);
+		}
+	}
+
+	/** Writes the last seconds of the flight in a CSV file. */
+	public void dump(final double duration, final File file) throws IOException {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), Charset.forName("UTF-8")))) {
+			dump(duration, out);
+		}
+	}
+
+	private void autoDump(final String reason) {
+		dumped = true;
+		final File file = new File(dumpDirectory, "flight-" + reason + "-"
+				+ System.currentTimeMillis() + ".csv");
+		try {
+			dump(dumpDuration, file);
+			lastDump = file;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean isStateValid() {
+		final PhysicsMatrix linear = rocket.getLinearMotion();
+		final PhysicsMatrix angular = rocket.getAngularMotion();
+		return isFinite(linear.position.x + linear.position.y + linear.position.z
+				+ linear.speed.x + linear.speed.y + linear.speed.z
+				+ angular.position.x + angular.position.y + angular.speed.x
+				+ angular.speed.y);
+	}
+
+	private static boolean isFinite(final double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	/**
+	 * Reads the state of a rocket into a record of COLUMNS.
+	 *
+	 * @param rocket The rocket.
+	 * @param currentT The time of the record, in s.
+	 * @param record The destination (COLUMNS.length values).
+	 */
+	static void readRecord(final Rocket rocket, final double currentT,
+			final double[] record) {
+		record[0] = currentT;
+		readMatrix(rocket.getLinearMotion(), record, 1);
+		readMatrix(rocket.getAngularMotion(), record, 10);
+		final Gimbal gimbal = rocket.getGimbal();
+		if (gimbal != null) {
+			record[19] = gimbal.getGimbalAngleX();
+			record[20] = gimbal.getGimbalAngleY();
+			record[21] = gimbal.getTargetAngleX();
+			record[22] = gimbal.getTargetAngleY();
+		} else
+			record[19] = record[20] = record[21] = record[22] = 0;
+		record[23] = rocket.getCurrentThrust();
+	}
+
+	private static void readMatrix(final PhysicsMatrix matrix,
+			final double[] record, final int offset) {
+		record[offset] = matrix.position.x;
+		record[offset + 1] = matrix.position.y;
+		record[offset + 2] = matrix.position.z;
+		record[offset + 3] = matrix.speed.x;
+		record[offset + 4] = matrix.speed.y;
+		record[offset + 5] = matrix.speed.z;
+		record[offset + 6] = matrix.acceleration.x;
+		record[offset + 7] = matrix.acceleration.y;
+		record[offset + 8] = matrix.acceleration.z;
+	}
+
+	private int putMatrix(int position, final PhysicsMatrix matrix) {
+		position = putDouble(position, matrix.position.x);
+		position = putDouble(position, matrix.position.y);
+		position = putDouble(position, matrix.position.z);
+		position = putDouble(position, matrix.speed.x);
+		position = putDouble(position, matrix.speed.y);
+		position = putDouble(position, matrix.speed.z);
+		position = putDouble(position, matrix.acceleration.x);
+		position = putDouble(position, matrix.acceleration.y);
+		return putDouble(position, matrix.acceleration.z);
+	}
+
+	private int putDouble(final int position, final double value) {
+		buffer.putDouble(position, value);
+		return position + 8;
+	}
+
+	// --- Getters ---
+	/** Returns the number of steps recorded since the start of the
+	 * flight (the recorder keeps the last getCapacity() ones). */
+	public long getRecordCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Rocket getRocket() {
+		return rocket;
+	}
+}
@@ -0,0 +1,108 @@
+package fr.charleslabs.impulse.simulation;
+
+/**
+ * The outcome of a headless flight simulation: the
+ * main flight figures and the performance of the
+ * simulation itself.
+ *
+ * @author Charles Grassin
+ */
+public class FlightResult {
+	/** Maximum altitude reached, in m. */
+	private final double apogee;
+	/** Maximum tilt from the vertical, in degrees. */
+	private final double maxTilt;
+	/** Simulated time from ignition to the end of the flight, in s. */
+	private final double flightTime;
+	/** Magnitude of the speed at touchdown, in m/s. */
+	private final double landingSpeed;
+	/** Horizontal position at the end of the flight, in m. */
+	private final double landingX, landingY;
+	/** True if the rocket landed before the maximum duration. */
+	private final boolean landed;
+	/** Wall-clock duration of the simulation, in ns. */
+	private final long wallTime;
+
+	/**
+	 * Constructs a FlightResult.
+	 *
+	 * @param apogee Maximum altitude reached, in m.
+	 * @param maxTilt Maximum tilt from the vertical, in degrees.
+	 * @param flightTime Simulated flight time, in s.
+	 * @param landingSpeed Speed at touchdown, in m/s.
+	 * @param landingX X position at the end of the flight, in m.
+	 * @param landingY Y position at the end of the flight, in m.
+	 * @param landed True if the rocket landed.
+	 * @param wallTime Wall-clock duration of the simulation, in ns.
+	 */
+	public FlightResult(final double apogee, final double maxTilt,
+			final double flightTime, final double landingSpeed,
+			final double landingX, final double landingY,
+			final boolean landed, final long wallTime) {
+		this.apogee = apogee;
+		this.maxTilt = maxTilt;
+		this.flightTime = flightTime;
+		this.landingSpeed = landingSpeed;
+		this.landingX = landingX;
+		this.landingY = landingY;
+		this.landed = landed;
+		this.wallTime = wallTime;
+	}
+
+	/**
+	 * Returns the simulation throughput, i.e. the number of simulated
+	 * seconds per wall-clock second.
+	 */
+	public double getThroughput() {
+		return (wallTime > 0) ? flightTime / (wallTime / 1000000000.0d)
+				: Double.POSITIVE_INFINITY;
+	}
+
+	// --- Getters ---
+	public double getApogee() {
+		return apogee;
+	}
+
+	public double getMaxTilt() {
+		return maxTilt;
+	}
+
+	public double getFlightTime() {
+		return flightTime;
+	}
+
+	public double getLandingSpeed() {
+		return landingSpeed;
+	}
+
+	public double getLandingX() {
+		return landingX;
+	}
+
+	public double getLandingY() {
+		return landingY;
+	}
+
+	/** Returns the horizontal distance between the launch pad and
+	 * the landing point, in m. */
+	public double getLandingDistance() {
+		return Math.sqrt(landingX * landingX + landingY * landingY);
+	}
+
+	public boolean isLanded() {
+		return landed;
+	}
+
+	/** Returns the wall-clock duration of the simulation, in ns. */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"apogee=%.3fm maxTilt=%.2fdeg flightTime=%.3fs landingSpeed=%.3fm/s landed=%b throughput=%.0fx",
+				apogee, maxTilt, flightTime, landingSpeed, landed,
+				getThroughput());
+	}
+}
@@ -0,0 +1,145 @@
+package fr.charleslabs.impulse.simulation;
+
+import fr.charleslabs.impulse.physics.PhysicalObject;
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.physics.PhysicsEvent;
+import fr.charleslabs.impulse.physics.PhysicsMatrix;
+import fr.charleslabs.impulse.physics.PhysicsVector;
+import fr.charleslabs.impulse.rocket.Rocket;
+
+/**
+ * Runs flights without any user interface: the PhysicsEngine
+ * is driven on the calling thread in its non real time mode,
+ * as fast as the CPU allows.
+ * <br><br>
+ * This class does not load any Swing or JavaFX class, so it
+ * can be used in batch runs and on headless machines.
+ *
+ * @author Charles Grassin
+ */
+public final class HeadlessSimulation {
+	private HeadlessSimulation() {
+	}
+
+	/**
+	 * Builds a rocket from a configuration and simulates its flight.
+	 *
+	 * @param configuration The flight to simulate.
+	 * @return The result of the flight.
+	 * @throws Exception If the rocket could not be built.
+	 */
+	public static FlightResult run(final FlightConfiguration configuration)
+			throws Exception {
+		return run(configuration.buildRocket(), configuration);
+	}
+
+	/**
+	 * Simulates the flight of an already built rocket. The rocket
+	 * is reset, then the initial angles of the configuration are
+	 * applied, as the user interface does on launch.
+	 * <br><br>
+	 * The apogee and the touchdown are located exactly with events,
+	 * whatever the step size.
+	 *
+	 * @param rocket The rocket to simulate.
+	 * @param configuration The initial conditions and engine settings.
+	 * @return The result of the flight.
+	 */
+	public static FlightResult run(final Rocket rocket,
+			final FlightConfiguration configuration) {
+		return run(rocket, configuration, new PhysicsEngine.StepListener[0]);
+	}
+
+	/**
+	 * Simulates the flight of an already built rocket (see
+	 * {@link #run(Rocket, FlightConfiguration)}), and notifies every
+	 * step of it to listeners.
+	 *
+	 * @param rocket The rocket to simulate.
+	 * @param configuration The initial conditions and engine settings.
+	 * @param listeners The listeners of the steps (eg: a FlightRecorder
+	 * or a TelemetryWriter of the rocket).
+	 * @return The result of the flight.
+	 */
+	public static FlightResult run(final Rocket rocket,
+			final FlightConfiguration configuration,
+			final PhysicsEngine.StepListener... listeners) {
+		final PhysicsEngine engine = new PhysicsEngine();
+		engine.setFrequency(configuration.getEngineFrequency());
+		engine.setIntegrator(configuration.getIntegrator());
+		engine.addObject(rocket);
+		final ApogeeEvent apogeeEvent = new ApogeeEvent();
+		final LandingEvent landingEvent = new LandingEvent();
+		engine.addEvent(rocket, apogeeEvent);
+		engine.addEvent(rocket, landingEvent);
+		for (PhysicsEngine.StepListener listener : listeners)
+			engine.addStepListener(listener);
+		engine.reset();
+		rocket.getAngularMotion().position.x += configuration.getInitialAngleX();
+		rocket.getAngularMotion().position.y += configuration.getInitialAngleY();
+
+		final PhysicsMatrix linearMotion = rocket.getLinearMotion();
+		double maxTilt = 0;
+
+		final long startTime = System.nanoTime();
+		engine.initSimulation();
+		try {
+			while (engine.getTimeSinceIgnition() < configuration.getMaxDuration()) {
+				final boolean running = engine.step();
+				final double tilt = rocket.getTiltAngle();
+				if (tilt > maxTilt)
+					maxTilt = tilt;
+				if (!running)
+					break;
+			}
+		} catch (RuntimeException e) {
+			// Tells the listeners why the flight stopped
+			engine.abortSimulation(e);
+			throw e;
+		}
+		engine.finishSimulation();
+		final long wallTime = System.nanoTime() - startTime;
+
+		final boolean landed = landingEvent.getOccurrences() > 0;
+		return new FlightResult(Math.max(apogeeEvent.apogee, linearMotion.position.z),
+				maxTilt, engine.getTimeSinceIgnition(), norm(linearMotion.speed),
+				linearMotion.position.x, linearMotion.position.y, landed, wallTime);
+	}
+
+	private static double norm(final PhysicsVector vector) {
+		return Math.sqrt(vector.x * vector.x + vector.y * vector.y + vector.z
+				* vector.z);
+	}
+
+	/** The apogee: the vertical speed falls through zero. */
+	private static final class ApogeeEvent extends PhysicsEvent {
+		/** The highest apogee, in m. */
+		private double apogee;
+
+		ApogeeEvent() {
+			super(Direction.FALLING, false);
+		}
+
+		@Override
+		public double evaluate(final PhysicalObject object, final double currentT) {
+			return object.getLinearMotion().speed.z;
+		}
+
+		@Override
+		protected void onEvent(final PhysicalObject object, final double currentT) {
+			apogee = Math.max(apogee, object.getLinearMotion().position.z);
+		}
+	}
+
+	/** The touchdown: the altitude falls through zero. Terminal. */
+	private static final class LandingEvent extends PhysicsEvent {
+		LandingEvent() {
+			super(Direction.FALLING, true);
+		}
+
+		@Override
+		public double evaluate(final PhysicalObject object, final double currentT) {
+			return object.getLinearMotion().position.z;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package fr.charleslabs.impulse.simulation;
+
+/**
+ * The outcome of a Monte Carlo dispersion run: the result
+ * of every sample, in sample order, and the statistics of
+ * the main flight figures.
+ *
+ * @author Charles Grassin
+ */
+public class MonteCarloResult {
+	/** The result of each sample (null if the sample was invalid). */
+	private final FlightResult[] results;
+	/** Wall-clock duration of the whole run, in ns. */
+	private final long wallTime;
+
+	/**
+	 * Constructs a MonteCarloResult.
+	 *
+	 * @param results The result of each sample, null for invalid samples.
+	 * @param wallTime Wall-clock duration of the whole run, in ns.
+	 */
+	public MonteCarloResult(final FlightResult[] results, final long wallTime) {
+		this.results = results;
+		this.wallTime = wallTime;
+	}
+
+	/** Returns the number of samples that could not be simulated. */
+	public int getFailureCount() {
+		int failures = 0;
+		for (FlightResult result : results)
+			if (result == null)
+				failures++;
+		return failures;
+	}
+
+	/** Returns the statistics of the apogee, in m. */
+	public SampleStatistics getApogeeStatistics() {
+		final double[] values = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			values[i] = (results[i] != null) ? results[i].getApogee() : Double.NaN;
+		return new SampleStatistics(values);
+	}
+
+	/** Returns the statistics of the maximum tilt, in degrees. */
+	public SampleStatistics getMaxTiltStatistics() {
+		final double[] values = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			values[i] = (results[i] != null) ? results[i].getMaxTilt() : Double.NaN;
+		return new SampleStatistics(values);
+	}
+
+	/** Returns the statistics of the flight time, in s. */
+	public SampleStatistics getFlightTimeStatistics() {
+		final double[] values = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			values[i] = (results[i] != null) ? results[i].getFlightTime() : Double.NaN;
+		return new SampleStatistics(values);
+	}
+
+	/** Returns the statistics of the landing speed, in m/s. */
+	public SampleStatistics getLandingSpeedStatistics() {
+		final double[] values = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			values[i] = (results[i] != null) ? results[i].getLandingSpeed() : Double.NaN;
+		return new SampleStatistics(values);
+	}
+
+	/** Returns the statistics of the distance between the launch pad
+	 * and the landing point, in m. */
+	public SampleStatistics getLandingDistanceStatistics() {
+		final double[] values = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			values[i] = (results[i] != null) ? results[i].getLandingDistance() : Double.NaN;
+		return new SampleStatistics(values);
+	}
+
+	/**
+	 * Returns the simulation throughput of the whole run, i.e. the
+	 * number of simulated seconds per wall-clock second (all threads).
+	 */
+	public double getThroughput() {
+		double simulatedTime = 0;
+		for (FlightResult result : results)
+			if (result != null)
+				simulatedTime += result.getFlightTime();
+		return simulatedTime / (wallTime / 1000000000.0d);
+	}
+
+	// --- Getters ---
+	public FlightResult[] getResults() {
+		return results;
+	}
+
+	/** Returns the wall-clock duration of the whole run, in ns. */
+	public long getWallTime() {
+		return wallTime;
+	}
+}
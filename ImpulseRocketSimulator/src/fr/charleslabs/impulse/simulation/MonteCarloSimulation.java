@@ -0,0 +1,298 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.rocket.motor.ScaledRocketMotor;
+
+/**
+ * A Monte Carlo dispersion engine: it simulates many flights
+ * around a nominal FlightConfiguration, each one with randomly
+ * dispersed parameters (Gaussian), and gathers their results.
+ * <br><br>
+ * Every sample builds its own Rocket, gimbal and PID controller
+ * and the samples are spread over all the cores with a fork-join
+ * pool. Each sample draws its parameters from its own random
+ * stream, derived from the seed and the sample index only, so a
+ * run is reproducible from its seed whatever the thread count.
+ *
+ * @author Charles Grassin
+ */
+public class MonteCarloSimulation {
+	/** Number of samples below which a task is not split anymore. */
+	private static final int SAMPLES_PER_TASK = 16;
+	/** Number of samples simulated together by a BatchSimulation. */
+	private static final int SAMPLES_PER_BATCH = 256;
+	/** Smallest mass a dispersed rocket may have, in kg. */
+	private static final double MIN_MASS = 0.001;
+	/** Smallest CoM height a dispersed rocket may have, in m. */
+	private static final double MIN_CENTER_OF_MASS_HEIGHT = 0.001;
+
+	private final FlightConfiguration nominal;
+	private final long seed;
+
+	// Standard deviations of the dispersed parameters
+	private double massDeviation, centerOfMassDeviation,
+			gimbalLimitAngleDeviation, gimbalAnglePerSDeviation,
+			thrustScaleDeviation, initialAngleDeviation;
+
+	/**
+	 * Constructs a Monte Carlo simulation without any dispersion.
+	 *
+	 * @param nominal The nominal flight (not modified).
+	 * @param seed The seed of the random streams.
+	 */
+	public MonteCarloSimulation(final FlightConfiguration nominal, final long seed) {
+		this.nominal = nominal;
+		this.seed = seed;
+	}
+
+	/**
+	 * Runs the samples on all the available cores.
+	 *
+	 * @param samples The number of flights to simulate.
+	 * @return The result of the run.
+	 */
+	public MonteCarloResult run(final int samples) {
+		return run(samples, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Runs the samples on a given number of threads.
+	 *
+	 * @param samples The number of flights to simulate.
+	 * @param parallelism The number of worker threads.
+	 * @return The result of the run.
+	 */
+	public MonteCarloResult run(final int samples, final int parallelism) {
+		final FlightResult[] results = new FlightResult[samples];
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		final long startTime = System.nanoTime();
+		try {
+			pool.invoke(new SampleTask(results, 0, samples));
+		} finally {
+			pool.shutdown();
+		}
+		return new MonteCarloResult(results, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Runs the samples with the struct-of-arrays BatchSimulation
+	 * engine, on all the available cores. The results are the same
+	 * as {@link #run(int)}, faster.
+	 *
+	 * @param samples The number of flights to simulate.
+	 * @return The result of the run.
+	 * @throws Exception If the nominal flight does not use the
+	 * semi-implicit Euler integrator (see BatchSimulation).
+	 */
+	public MonteCarloResult runBatch(final int samples) throws Exception {
+		return runBatch(samples, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Runs the samples with the struct-of-arrays BatchSimulation
+	 * engine, on a given number of threads. Each thread simulates
+	 * batches of consecutive samples.
+	 *
+	 * @param samples The number of flights to simulate.
+	 * @param parallelism The number of worker threads.
+	 * @return The result of the run.
+	 * @throws Exception If the nominal flight does not use the
+	 * semi-implicit Euler integrator (see BatchSimulation).
+	 */
+	public MonteCarloResult runBatch(final int samples, final int parallelism)
+			throws Exception {
+		// Fails early if the nominal flight cannot be batched
+		new BatchSimulation(new FlightConfiguration[] { nominal });
+
+		final FlightResult[] results = new FlightResult[samples];
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		final long startTime = System.nanoTime();
+		try {
+			pool.invoke(new BatchTask(results, 0, samples));
+		} finally {
+			pool.shutdown();
+		}
+		return new MonteCarloResult(results, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Draws the dispersed configuration of a sample. The draw only
+	 * depends on the seed and on the sample index.
+	 *
+	 * @param index The index of the sample.
+	 * @return The configuration of the sample.
+	 */
+	public FlightConfiguration createSample(final int index) {
+		final Random random = new Random(sampleSeed(seed, index));
+		final FlightConfiguration sample = new FlightConfiguration(nominal);
+
+		sample.setMass(Math.max(MIN_MASS,
+				nominal.getMass() + random.nextGaussian() * massDeviation));
+		sample.setCenterOfMassHeight(Math.min(nominal.getLength(), Math.max(
+				MIN_CENTER_OF_MASS_HEIGHT, nominal.getCenterOfMassHeight()
+						+ random.nextGaussian() * centerOfMassDeviation)));
+		sample.setGimbalLimitAngle(Math.min(90, Math.max(0,
+				nominal.getGimbalLimitAngle() + random.nextGaussian()
+						* gimbalLimitAngleDeviation)));
+		sample.setGimbalAnglePerS(Math.max(0, nominal.getGimbalAnglePerS()
+				+ random.nextGaussian() * gimbalAnglePerSDeviation));
+		final double thrustScale = Math.max(0,
+				1 + random.nextGaussian() * thrustScaleDeviation);
+		if (thrustScaleDeviation != 0)
+			sample.setMotor(new ScaledRocketMotor(nominal.getMotor(), thrustScale));
+		sample.setInitialAngleX(nominal.getInitialAngleX()
+				+ random.nextGaussian() * initialAngleDeviation);
+		sample.setInitialAngleY(nominal.getInitialAngleY()
+				+ random.nextGaussian() * initialAngleDeviation);
+		return sample;
+	}
+
+	/**
+	 * Simulates a sample. A sample whose dispersed parameters do not
+	 * describe a valid rocket gets a null result (a failure of the run);
+	 * any other error of the simulation is thrown.
+	 *
+	 * @param index The index of the sample.
+	 * @return The result of the sample, or null.
+	 */
+	private FlightResult runSample(final int index) {
+		final FlightConfiguration sample = createSample(index);
+		final Rocket rocket;
+		try {
+			rocket = sample.buildRocket();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			return null;
+		}
+		return HeadlessSimulation.run(rocket, sample);
+	}
+
+	/**
+	 * Derives the seed of a sample's random stream from the run seed
+	 * and the sample index, with the SplitMix64 finalizer so that
+	 * neighbouring indexes give uncorrelated streams.
+	 */
+	private static long sampleSeed(final long seed, final int index) {
+		long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * A fork-join task that simulates a range of samples, splitting
+	 * itself in halves until the range is small enough.
+	 */
+	private class SampleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FlightResult[] results;
+		private final int from, to;
+
+		SampleTask(final FlightResult[] results, final int from, final int to) {
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SAMPLES_PER_TASK) {
+				for (int i = from; i < to; i++)
+					results[i] = runSample(i);
+			} else {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new SampleTask(results, from, middle),
+						new SampleTask(results, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * A fork-join task that simulates a range of samples with a
+	 * BatchSimulation, splitting itself in halves until the range
+	 * fits in one batch.
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FlightResult[] results;
+		private final int from, to;
+
+		BatchTask(final FlightResult[] results, final int from, final int to) {
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SAMPLES_PER_BATCH) {
+				final FlightConfiguration[] configurations = new FlightConfiguration[to - from];
+				for (int i = from; i < to; i++)
+					configurations[i - from] = createSample(i);
+				final BatchSimulation batch;
+				try {
+					batch = new BatchSimulation(configurations);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					// Samples the batch engine cannot simulate together:
+					// simulated one by one
+					for (int i = from; i < to; i++)
+						results[i] = runSample(i);
+					return;
+				}
+				System.arraycopy(batch.run(), 0, results, from, to - from);
+			} else {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new BatchTask(results, from, middle),
+						new BatchTask(results, middle, to));
+			}
+		}
+	}
+
+	// --- Getters and Setters ---
+	public FlightConfiguration getNominal() {
+		return nominal;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/** Sets the standard deviation of the rocket mass, in kg. */
+	public void setMassDeviation(final double massDeviation) {
+		this.massDeviation = massDeviation;
+	}
+
+	/** Sets the standard deviation of the CoM height, in m. */
+	public void setCenterOfMassDeviation(final double centerOfMassDeviation) {
+		this.centerOfMassDeviation = centerOfMassDeviation;
+	}
+
+	/** Sets the standard deviation of the gimbal limit angle, in degrees. */
+	public void setGimbalLimitAngleDeviation(final double gimbalLimitAngleDeviation) {
+		this.gimbalLimitAngleDeviation = gimbalLimitAngleDeviation;
+	}
+
+	/** Sets the standard deviation of the gimbal rate, in degrees/s. */
+	public void setGimbalAnglePerSDeviation(final double gimbalAnglePerSDeviation) {
+		this.gimbalAnglePerSDeviation = gimbalAnglePerSDeviation;
+	}
+
+	/** Sets the relative standard deviation of the motor thrust (eg:
+	 * 0.05 for 5%). */
+	public void setThrustScaleDeviation(final double thrustScaleDeviation) {
+		this.thrustScaleDeviation = thrustScaleDeviation;
+	}
+
+	/** Sets the standard deviation of the initial X and Y angles, in
+	 * degrees. */
+	public void setInitialAngleDeviation(final double initialAngleDeviation) {
+		this.initialAngleDeviation = initialAngleDeviation;
+	}
+}
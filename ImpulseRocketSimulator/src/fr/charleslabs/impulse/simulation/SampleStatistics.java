@@ -0,0 +1,86 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Descriptive statistics (mean, standard deviation, extrema
+ * and percentiles) of a set of samples. NaN samples are
+ * ignored.
+ *
+ * @author Charles Grassin
+ */
+public class SampleStatistics {
+	private final double[] sorted;
+	private final double mean, standardDeviation;
+
+	/**
+	 * Computes the statistics of a set of samples.
+	 *
+	 * @param samples The samples (not modified).
+	 */
+	public SampleStatistics(final double[] samples) {
+		int count = 0;
+		final double[] values = new double[samples.length];
+		for (double sample : samples)
+			if (!Double.isNaN(sample))
+				values[count++] = sample;
+		sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+
+		// Two-pass mean and variance
+		double sum = 0;
+		for (double value : sorted)
+			sum += value;
+		mean = (count > 0) ? sum / count : Double.NaN;
+		double squares = 0;
+		for (double value : sorted)
+			squares += (value - mean) * (value - mean);
+		standardDeviation = (count > 1) ? Math.sqrt(squares / (count - 1)) : 0;
+	}
+
+	/**
+	 * Returns a percentile of the samples, with linear interpolation
+	 * between the closest ranks.
+	 *
+	 * @param percentile The percentile, between 0 and 100.
+	 */
+	public double getPercentile(final double percentile) {
+		if (sorted.length == 0)
+			return Double.NaN;
+		final double rank = percentile / 100 * (sorted.length - 1);
+		final int index = (int) Math.floor(rank);
+		if (index >= sorted.length - 1)
+			return sorted[sorted.length - 1];
+		if (index < 0)
+			return sorted[0];
+		return sorted[index] + (sorted[index + 1] - sorted[index]) * (rank - index);
+	}
+
+	// --- Getters ---
+	public int getCount() {
+		return sorted.length;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getStandardDeviation() {
+		return standardDeviation;
+	}
+
+	public double getMin() {
+		return (sorted.length > 0) ? sorted[0] : Double.NaN;
+	}
+
+	public double getMax() {
+		return (sorted.length > 0) ? sorted[sorted.length - 1] : Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("mean=%.3f sd=%.3f min=%.3f p50=%.3f p95=%.3f max=%.3f",
+				mean, standardDeviation, getMin(), getPercentile(50),
+				getPercentile(95), getMax());
+	}
+}
@@ -0,0 +1,622 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a compressed telemetry file written by a TelemetryWriter. The
+ * time index of the file is read on opening; then the blocks are read
+ * and decoded one at a time, only for the requested columns, so that
+ * files larger than the memory can be read and exported.
+ * <br><br>
+ * The exports to CSV and NumPy (.npy) are streamed block by block
+ * into a byte buffer, without any intermediate String: the NumPy
+ * export copies the doubles as they are (lossless), the CSV export
+ * writes them with a given number of significant digits.
+ * <br><br>
+ * Export a file from the command line with:
+ * <code>java fr.charleslabs.impulse.simulation.TelemetryReader flight.imt flight.npy [from] [to]</code>
+ * (or flight.csv).
+ *
+ * @author Charles Grassin
+ */
+public final class TelemetryReader implements Closeable {
+	private final static String INVALID_FILE_EXCEPTION = "Invalid telemetry file.";
+	private final static String UNKNOWN_COLUMN_EXCEPTION = "Unknown column: ";
+	private final static String INVALID_DIGITS_EXCEPTION = "The number of significant digits must be in [1, 17].";
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	/** Size of the export buffer. */
+	private final static int BUFFER_SIZE = 1 << 16;
+	private final static long[] POW10 = new long[19];
+	private final static double[] POW10_DOUBLE = new double[23];
+	/** Largest number of digits rounded in double arithmetic: the
+	 * scaled value is then below 2^53. */
+	private final static int MAX_FAST_DIGITS = 15;
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = 10 * POW10[i - 1];
+		for (int i = 0; i < POW10_DOUBLE.length; i++)
+			POW10_DOUBLE[i] = Double.parseDouble("1e" + i);
+	}
+
+	private final FileChannel channel;
+	private final String[] columns;
+	private final int blockSize, precision;
+
+	// Index
+	private final long[] blockOffsets, blockFirstRecords;
+	private final int[] blockSizes;
+	private final double[] blockFirstTimes, blockLastTimes;
+	private final long indexOffset, recordCount;
+
+	/** The bytes of the last block read. */
+	private byte[] bytes = new byte[0];
+	/** The values of the last block decoded, by column. */
+	private final double[][] values;
+	private int decodedBlock = -1;
+	private boolean[] decodedColumns;
+
+	/**
+	 * Opens a telemetry file.
+	 *
+	 * @param file The file.
+	 * @throws IOException If the file cannot be read or is invalid.
+	 */
+	public TelemetryReader(final File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			if (size < 32)
+				throw new IOException(INVALID_FILE_EXCEPTION);
+			ByteBuffer buffer = read(size - 12, 12);
+			indexOffset = buffer.getLong(0);
+			if (buffer.getInt(8) != TelemetryWriter.MAGIC || indexOffset < 20
+					|| indexOffset > size - 16)
+				throw new IOException(INVALID_FILE_EXCEPTION);
+
+			// Header
+			buffer = read(0, (int) Math.min(indexOffset, 1 << 20));
+			if (buffer.getInt(0) != TelemetryWriter.MAGIC
+					|| buffer.getInt(4) != TelemetryWriter.VERSION)
+				throw new IOException(INVALID_FILE_EXCEPTION);
+			blockSize = buffer.getInt(8);
+			precision = buffer.getInt(12);
+			columns = new String[buffer.getInt(16)];
+			buffer.position(20);
+			for (int k = 0; k < columns.length; k++) {
+				final byte[] name = new byte[buffer.getShort()];
+				buffer.get(name);
+				columns[k] = new String(name, UTF8);
+			}
+			values = new double[columns.length][blockSize];
+			decodedColumns = new boolean[columns.length];
+
+			// Index
+			buffer = read(indexOffset, (int) (size - 12 - indexOffset));
+			final int blocks = buffer.getInt(0);
+			if (blocks < 0 || 4 + 36L * blocks != buffer.limit())
+				throw new IOException(INVALID_FILE_EXCEPTION);
+			blockOffsets = new long[blocks];
+			blockFirstRecords = new long[blocks];
+			blockSizes = new int[blocks];
+			blockFirstTimes = new double[blocks];
+			blockLastTimes = new double[blocks];
+			for (int b = 0; b < blocks; b++) {
+				final int position = 4 + 36 * b;
+				blockOffsets[b] = buffer.getLong(position);
+				blockFirstRecords[b] = buffer.getLong(position + 8);
+				blockSizes[b] = buffer.getInt(position + 16);
+				blockFirstTimes[b] = buffer.getDouble(position + 20);
+				blockLastTimes[b] = buffer.getDouble(position + 28);
+				if (blockSizes[b] <= 0 || blockSizes[b] > blockSize)
+					throw new IOException(INVALID_FILE_EXCEPTION);
+			}
+			recordCount = (blocks > 0) ? blockFirstRecords[blocks - 1]
+					+ blockSizes[blocks - 1] : 0;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		} catch (RuntimeException e) {
+			channel.close();
+			throw new IOException(INVALID_FILE_EXCEPTION, e);
+		}
+	}
+
+	/** Returns the index of a column, by name. */
+	public int getColumnIndex(final String name) throws IOException {
+		for (int k = 0; k < columns.length; k++)
+			if (columns[k].equals(name))
+				return k;
+		throw new IOException(UNKNOWN_COLUMN_EXCEPTION + name);
+	}
+
+	/**
+	 * Finds the first record at or after a time, from the time index
+	 * (only one block is decoded).
+	 *
+	 * @param time The time, in s.
+	 * @return The index of the record, or getRecordCount() if all the
+	 * records are before this time.
+	 * @throws IOException On read error.
+	 */
+	public long findRecord(final double time) throws IOException {
+		// First block that ends at or after the time
+		int low = 0, high = blockSizes.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (blockLastTimes[middle] < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		if (low == blockSizes.length)
+			return recordCount;
+		final double[] time0 = decode(low, new int[] { 0 })[0];
+		int i = 0;
+		while (time0[i] < time)
+			i++;
+		return blockFirstRecords[low] + i;
+	}
+
+	/**
+	 * Reads a range of records of some columns.
+	 *
+	 * @param columns The indexes of the columns, or null for all of them.
+	 * @param from The first record.
+	 * @param count The number of records.
+	 * @return The values, one array per column.
+	 * @throws IOException On read error.
+	 */
+	public double[][] read(int[] columns, final long from, final int count)
+			throws IOException {
+		columns = getColumns(columns);
+		final double[][] result = new double[columns.length][count];
+		int done = 0;
+		for (int b = findBlock(from); done < count && b < blockSizes.length; b++) {
+			final double[][] block = decode(b, columns);
+			final int start = (int) Math.max(0, from - blockFirstRecords[b]);
+			final int length = Math.min(blockSizes[b] - start, count - done);
+			for (int k = 0; k < columns.length; k++)
+				System.arraycopy(block[columns[k]], start, result[k], done, length);
+			done += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Exports the records of a time interval to CSV (one line per
+	 * record, with a header line).
+	 *
+	 * @param columns The indexes of the columns, or null for all of them.
+	 * @param fromTime The start of the interval, in s.
+	 * @param toTime The end of the interval (included), in s.
+	 * @param digits The number of significant digits of the values
+	 * (1 to 17).
+	 * @param out The destination (not closed).
+	 * @throws IOException If the number of digits is invalid, or on
+	 * read or write error.
+	 */
+	public void exportCsv(int[] columns, final double fromTime,
+			final double toTime, final int digits, final OutputStream out)
+			throws IOException {
+		if (digits < 1 || digits > 17)
+			throw new IOException(INVALID_DIGITS_EXCEPTION);
+		columns = getColumns(columns);
+		final long from = findRecord(fromTime), to = findRecord(
+				Math.nextUp(toTime));
+		final byte[] buffer = new byte[Math.max(BUFFER_SIZE,
+				25 * columns.length)];
+		final byte[] digitBuffer = new byte[20];
+		int size = 0;
+		for (int k = 0; k < columns.length; k++) {
+			final byte[] name = (((k > 0) ? "," : "") + this.columns[columns[k]])
+					.getBytes(UTF8);
+			out.write(name);
+		}
+		out.write('\n');
+
+		for (int b = findBlock(from); b < blockSizes.length
+				&& blockFirstRecords[b] < to; b++) {
+			final double[][] block = decode(b, columns);
+			final int start = (int) Math.max(0, from - blockFirstRecords[b]);
+			final int end = (int) Math.min(blockSizes[b], to - blockFirstRecords[b]);
+			for (int i = start; i < end; i++) {
+				// A line is at most 25 bytes per value
+				if (size + 25 * columns.length > buffer.length) {
+					out.write(buffer, 0, size);
+					size = 0;
+				}
+				for (int k = 0; k < columns.length; k++) {
+					if (k > 0)
+						buffer[size++] = ',';
+					size = formatDouble(block[columns[k]][i], digits,
+							buffer, size, digitBuffer);
+				}
+				buffer[size++] = '\n';
+			}
+		}
+		out.write(buffer, 0, size);
+		out.flush();
+	}
+
+	/**
+	 * Exports the records of a time interval to a NumPy array file
+	 * (.npy, version 1.0): a 2D array of little-endian doubles, one row
+	 * per record.
+	 *
+	 * @param columns The indexes of the columns, or null for all of them.
+	 * @param fromTime The start of the interval, in s.
+	 * @param toTime The end of the interval (included), in s.
+	 * @param out The destination (not closed).
+	 * @throws IOException On read or write error.
+	 */
+	public void exportNpy(int[] columns, final double fromTime,
+			final double toTime, final OutputStream out) throws IOException {
+		columns = getColumns(columns);
+		final long from = findRecord(fromTime), to = findRecord(
+				Math.nextUp(toTime));
+		final StringBuilder header = new StringBuilder(
+				"{'descr': '<f8', 'fortran_order': False, 'shape': (")
+				.append(to - from).append(", ").append(columns.length)
+				.append("), }");
+		// Magic, version and header length take 10 bytes; the header
+		// is padded with spaces to align the data on 64 bytes
+		while ((10 + header.length() + 1) % 64 != 0)
+			header.append(' ');
+		header.append('\n');
+		out.write(new byte[] { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0,
+				(byte) header.length(), (byte) (header.length() >> 8) });
+		out.write(header.toString().getBytes(UTF8));
+
+		final ByteBuffer buffer = ByteBuffer.allocate(
+				Math.max(BUFFER_SIZE, 8 * columns.length)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		for (int b = findBlock(from); b < blockSizes.length
+				&& blockFirstRecords[b] < to; b++) {
+			final double[][] block = decode(b, columns);
+			final int start = (int) Math.max(0, from - blockFirstRecords[b]);
+			final int end = (int) Math.min(blockSizes[b], to - blockFirstRecords[b]);
+			for (int i = start; i < end; i++) {
+				if (buffer.remaining() < 8 * columns.length) {
+					out.write(buffer.array(), 0, buffer.position());
+					buffer.clear();
+				}
+				for (int k = 0; k < columns.length; k++)
+					buffer.putDouble(block[columns[k]][i]);
+			}
+		}
+		out.write(buffer.array(), 0, buffer.position());
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Writes a double in ASCII, with a number of significant digits
+	 * (trailing zeros removed): in plain notation from 1e-4 to 1e17, in
+	 * scientific notation otherwise. The value is correctly rounded
+	 * (half up): in double arithmetic when the result is certain, with
+	 * BigDecimal otherwise (near a tie, and always beyond 15 digits,
+	 * where the scaled value is not exact any more).
+	 *
+	 * @param value The value.
+	 * @param digits The number of significant digits (1 to 17).
+	 * @param out The destination.
+	 * @param position The position in the destination.
+	 * @param digitBuffer A buffer of at least 17 bytes.
+	 * @return The position after the value.
+	 */
+	static int formatDouble(double value, final int digits, final byte[] out,
+			int position, final byte[] digitBuffer) {
+		if (Double.isNaN(value))
+			return put(out, position, "NaN");
+		if (value < 0 || (value == 0 && 1 / value < 0)) {
+			out[position++] = '-';
+			value = -value;
+		}
+		if (Double.isInfinite(value))
+			return put(out, position, "Infinity");
+		if (value == 0) {
+			out[position++] = '0';
+			return position;
+		}
+
+		// Significand (digits digits) and decimal exponent
+		int exponent = (int) Math.floor(Math.log10(value));
+		double scaled = scale(value, digits - 1 - exponent);
+		if (scaled >= POW10[digits]) {
+			exponent++;
+			scaled = scale(value, digits - 1 - exponent);
+		} else if (scaled < POW10[digits - 1]) {
+			exponent--;
+			scaled = scale(value, digits - 1 - exponent);
+		}
+		long significand;
+		final double fraction = scaled - Math.floor(scaled);
+		// The scaled value is within half an ulp of the exact one when
+		// the power of 10 is exact: the rounding is certain away from
+		// the tie
+		if (digits <= MAX_FAST_DIGITS
+				&& Math.abs(digits - 1 - exponent) < POW10_DOUBLE.length
+				&& Math.abs(fraction - 0.5) > Math.ulp(scaled))
+			significand = (long) Math.floor(scaled) + ((fraction > 0.5) ? 1 : 0);
+		else {
+			final BigDecimal rounded = new BigDecimal(value).round(
+					new MathContext(digits, RoundingMode.HALF_UP));
+			exponent = rounded.precision() - 1 - rounded.scale();
+			significand = rounded.unscaledValue().longValue()
+					* POW10[digits - rounded.precision()];
+		}
+		if (significand >= POW10[digits]) { // Rounded up to a power of 10
+			exponent++;
+			significand = POW10[digits - 1];
+		}
+		int length = digits;
+		for (int i = digits - 1; i >= 0; i--) {
+			digitBuffer[i] = (byte) ('0' + significand % 10);
+			significand /= 10;
+		}
+		while (length > 1 && digitBuffer[length - 1] == '0')
+			length--;
+
+		if (exponent >= -4 && exponent < 17) {
+			if (exponent < 0) {
+				out[position++] = '0';
+				out[position++] = '.';
+				for (int i = -1; i > exponent; i--)
+					out[position++] = '0';
+				for (int i = 0; i < length; i++)
+					out[position++] = digitBuffer[i];
+			} else {
+				for (int i = 0; i <= exponent; i++)
+					out[position++] = (i < length) ? digitBuffer[i] : (byte) '0';
+				if (length > exponent + 1) {
+					out[position++] = '.';
+					for (int i = exponent + 1; i < length; i++)
+						out[position++] = digitBuffer[i];
+				}
+			}
+			return position;
+		}
+		out[position++] = digitBuffer[0];
+		if (length > 1) {
+			out[position++] = '.';
+			for (int i = 1; i < length; i++)
+				out[position++] = digitBuffer[i];
+		}
+		out[position++] = 'E';
+		return put(out, position, Integer.toString(exponent));
+	}
+
+	/** Returns value * 10^power. */
+	private static double scale(final double value, final int power) {
+		if (power >= 0 && power < POW10_DOUBLE.length)
+			return value * POW10_DOUBLE[power];
+		if (power < 0 && -power < POW10_DOUBLE.length)
+			return value / POW10_DOUBLE[-power];
+		if (power > 300) // 10^power overflows
+			return value * 1e300 * Math.pow(10, power - 300);
+		return value * Math.pow(10, power);
+	}
+
+	private static int put(final byte[] out, int position, final String text) {
+		for (int i = 0; i < text.length(); i++)
+			out[position++] = (byte) text.charAt(i);
+		return position;
+	}
+
+	private int[] getColumns(final int[] columns) throws IOException {
+		if (columns == null) {
+			final int[] all = new int[this.columns.length];
+			for (int k = 0; k < all.length; k++)
+				all[k] = k;
+			return all;
+		}
+		for (int column : columns)
+			if (column < 0 || column >= this.columns.length)
+				throw new IOException(UNKNOWN_COLUMN_EXCEPTION + column);
+		return columns;
+	}
+
+	/** Returns the block of a record. */
+	private int findBlock(final long record) {
+		int low = 0, high = blockSizes.length - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			if (blockFirstRecords[middle] <= record)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Decodes some columns of a block.
+	 *
+	 * @param block The index of the block.
+	 * @param columns The indexes of the columns to decode.
+	 * @return The values of the block, by column (only the decoded
+	 * columns are valid; reused by the next call).
+	 */
+	private double[][] decode(final int block, final int[] columns)
+			throws IOException {
+		if (block != decodedBlock) {
+			final long end = (block + 1 < blockOffsets.length) ? blockOffsets[block + 1]
+					: indexOffset;
+			final int length = (int) (end - blockOffsets[block]);
+			if (bytes.length < length)
+				bytes = new byte[length];
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, blockOffsets[block] + buffer.position()) < 0)
+					throw new IOException(INVALID_FILE_EXCEPTION);
+			decodedBlock = block;
+			Arrays.fill(decodedColumns, false);
+		}
+		try {
+			final int count = blockSizes[block];
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int position = 4;
+			for (int k = 0; k < this.columns.length; k++) {
+				final int length = buffer.getInt(position + 1);
+				if (!decodedColumns[k] && contains(columns, k)) {
+					decode(bytes, position + 5, buffer.get(position),
+							TelemetryWriter.columnPrecision(k, precision),
+							values[k], count);
+					decodedColumns[k] = true;
+				}
+				position += 5 + length;
+			}
+		} catch (RuntimeException e) {
+			throw new IOException(INVALID_FILE_EXCEPTION, e);
+		}
+		return values;
+	}
+
+	/** Decodes a column of a block (see TelemetryWriter). */
+	private static void decode(final byte[] bytes, final int offset,
+			final byte predictor, final int precision, final double[] values,
+			final int count) {
+		final BitInput bits = new BitInput(bytes, offset);
+		values[0] = Double.longBitsToDouble(bits.read(64));
+		int leading = 0, trailing = 0;
+		for (int i = 1; i < count; i++) {
+			long xor = 0;
+			if (bits.read(1) != 0) {
+				if (bits.read(1) != 0) {
+					leading = (int) bits.read(5);
+					int length = (int) bits.read(6);
+					if (length == 0)
+						length = 64;
+					trailing = 64 - leading - length;
+				}
+				xor = bits.read(64 - leading - trailing) << trailing;
+			}
+			values[i] = Double.longBitsToDouble(TelemetryWriter.predict(
+					values, i, predictor, precision) ^ xor);
+		}
+	}
+
+	private static boolean contains(final int[] array, final int value) {
+		for (int element : array)
+			if (element == value)
+				return true;
+		return false;
+	}
+
+	private ByteBuffer read(final long position, final int length)
+			throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException(INVALID_FILE_EXCEPTION);
+		buffer.flip();
+		return buffer;
+	}
+
+	/** A sequence of bits, read most significant bit first. */
+	private final static class BitInput {
+		private final byte[] bytes;
+		/** Position, in bits. */
+		private long position;
+
+		BitInput(final byte[] bytes, final int offset) {
+			this.bytes = bytes;
+			this.position = 8L * offset;
+		}
+
+		/** Reads n (1 to 64) bits. */
+		long read(int n) {
+			if (n > 32)
+				return (read(n - 32) << 32) | read(32);
+			long result = 0;
+			while (n > 0) {
+				final int used = (int) (position & 7);
+				final int available = 8 - used;
+				final int taken = Math.min(available, n);
+				final int value = (bytes[(int) (position >>> 3)] & 0xFF) >>> (available - taken);
+				result = (result << taken) | (value & ((1 << taken) - 1));
+				position += taken;
+				n -= taken;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Exports a telemetry file to CSV or NumPy, by the extension of the
+	 * destination.
+	 *
+	 * @param args The telemetry file, the destination (.csv or .npy), and
+	 * optionally the start and end times of the export.
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length != 2 && args.length != 4) {
+			System.out.println("Usage: TelemetryReader <flight.imt> <flight.csv|flight.npy> [from to]");
+			return;
+		}
+		final double from = (args.length == 4) ? Double.parseDouble(args[2])
+				: Double.NEGATIVE_INFINITY;
+		final double to = (args.length == 4) ? Double.parseDouble(args[3])
+				: Double.POSITIVE_INFINITY;
+		try (TelemetryReader reader = new TelemetryReader(new File(args[0]));
+				OutputStream out = new BufferedOutputStream(
+						new FileOutputStream(args[1]), BUFFER_SIZE)) {
+			if (args[1].endsWith(".npy"))
+				reader.exportNpy(null, from, to, out);
+			else
+				reader.exportCsv(null, from, to, 12, out);
+			System.out.println(reader.getRecordCount() + " record(s) in "
+					+ args[0]);
+		}
+	}
+
+	// --- Getters ---
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/** Returns the number of bits of the significand kept by the
+	 * writer (52 for a lossless file). */
+	public int getPrecision() {
+		return precision;
+	}
+
+	public int getBlockCount() {
+		return blockSizes.length;
+	}
+
+	/** Returns the time of the first record (NaN if there is none). */
+	public double getStartTime() {
+		return (blockSizes.length > 0) ? blockFirstTimes[0] : Double.NaN;
+	}
+
+	/** Returns the time of the last record (NaN if there is none). */
+	public double getEndTime() {
+		return (blockSizes.length > 0) ? blockLastTimes[blockSizes.length - 1]
+				: Double.NaN;
+	}
+}
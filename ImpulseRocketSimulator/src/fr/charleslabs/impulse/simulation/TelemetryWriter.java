@@ -0,0 +1,418 @@
+package fr.charleslabs.impulse.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.charleslabs.impulse.physics.PhysicalObject;
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.rocket.Rocket;
+
+/**
+ * Writes a compressed telemetry file: a sequence of records (one per
+ * step), each one made of the same columns of doubles, the first one
+ * being the time. The records are grouped in blocks, and each block
+ * stores its columns one after the other, each one compressed with
+ * the XOR scheme of Gorilla (Facebook's time series database): a
+ * value is XORed with a prediction, and only the meaningful bits of
+ * the result are written. The prediction is the previous value, or a
+ * linear extrapolation of the two previous ones, or a quadratic
+ * extrapolation of the three previous ones, whichever gives the
+ * smallest column: the slowly varying states of a flight (time,
+ * positions, speeds) are mostly predicted exactly or to a few bits,
+ * and the constant ones take a bit per value.
+ * <br><br>
+ * The compression is lossless by default. A precision (number of bits
+ * of the significand kept) can be given to round the values before
+ * their compression: the rounded bits then compress to nothing. The
+ * time column is never rounded, so the records keep their order and
+ * their exact times.
+ * <br><br>
+ * The end of the file holds a time index of the blocks, for the
+ * TelemetryReader to seek a time without decoding the file.
+ * <br><br>
+ * Format (big-endian):
+ * <ul>
+ * <li>Header: magic "IMTF", version (int), block size (int), precision
+ * (int), number of columns (int), names of the columns (short length,
+ * UTF-8).</li>
+ * <li>Blocks: number of records (int), then for each column: predictor
+ * (byte), length (int) and the bits of the values.</li>
+ * <li>Index: number of blocks (int), then for each block: offset
+ * (long), first record (long), number of records (int), first and
+ * last time (doubles).</li>
+ * <li>Trailer: offset of the index (long), magic "IMTF".</li>
+ * </ul>
+ * A writer can also record a rocket at every step of the engine, as a
+ * StepListener (with the columns of FlightRecorder).
+ *
+ * @author Charles Grassin
+ */
+public final class TelemetryWriter implements PhysicsEngine.StepListener,
+		Closeable {
+	private final static String INVALID_COLUMNS_EXCEPTION = "A telemetry file needs at least the time column.";
+	private final static String INVALID_RECORD_EXCEPTION = "Invalid record size: ";
+	private final static String TIME_EXCEPTION = "The time of the records must not decrease.";
+	private final static String CLOSED_EXCEPTION = "The telemetry file is closed.";
+	private final static String INVALID_PRECISION_EXCEPTION = "The precision must be in [1, 52] bits.";
+	final static int MAGIC = 0x494D5446; // "IMTF"
+	final static int VERSION = 2;
+	/** Predictors: previous value, linear or quadratic extrapolation. */
+	final static byte PREVIOUS = 0, LINEAR = 1, QUADRATIC = 2;
+	/** Number of bits of the significand of a double (the precision of
+	 * a lossless file). */
+	public final static int FULL_PRECISION = 52;
+	/** Number of records of a block (the granularity of the seeks). */
+	private final static int BLOCK_SIZE = 1024;
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final DataOutputStream out;
+	private final String[] columns;
+	/** Number of bits of the significand kept. */
+	private final int precision;
+	/** The rocket recorded as a StepListener, or null. */
+	private final Rocket rocket;
+	private final double[] record;
+
+	/** The records of the current block, by column. */
+	private final double[][] block;
+	private int blockCount;
+	/** The encodings of a column, by predictor. */
+	private final BitOutput[] encodings = { new BitOutput(), new BitOutput(),
+			new BitOutput() };
+
+	// Index
+	private long[] blockOffsets = new long[16], blockFirstRecords = new long[16];
+	private int[] blockSizes = new int[16];
+	private double[] blockFirstTimes = new double[16],
+			blockLastTimes = new double[16];
+	private int blocks;
+
+	private long offset, recordCount;
+	private double lastTime = Double.NEGATIVE_INFINITY;
+	private boolean closed;
+
+	/**
+	 * Constructs a writer and writes the header of the file.
+	 *
+	 * @param out The destination (closed with the writer).
+	 * @param columns The names of the columns, the time first.
+	 * @throws IOException If there is no column, or on write error.
+	 */
+	public TelemetryWriter(final OutputStream out, final String[] columns)
+			throws IOException {
+		this(out, columns, FULL_PRECISION, null);
+	}
+
+	/**
+	 * Constructs a writer that rounds the values (lossy compression)
+	 * and writes the header of the file.
+	 *
+	 * @param out The destination (closed with the writer).
+	 * @param columns The names of the columns, the time first.
+	 * @param precision The number of bits of the significand kept (1 to
+	 * 52; eg: 24 bits keep a relative precision of 6e-8).
+	 * @throws IOException If there is no column or the precision is
+	 * invalid, or on write error.
+	 */
+	public TelemetryWriter(final OutputStream out, final String[] columns,
+			final int precision) throws IOException {
+		this(out, columns, precision, null);
+	}
+
+	/**
+	 * Constructs a writer that records a rocket at every step of the
+	 * engine (add it with PhysicsEngine.addStepListener()), with the
+	 * columns of FlightRecorder.
+	 *
+	 * @param out The destination (closed with the writer).
+	 * @param rocket The rocket to record.
+	 * @param precision The number of bits of the significand kept (52
+	 * for a lossless compression).
+	 * @throws IOException If the precision is invalid, or on write error.
+	 */
+	public TelemetryWriter(final OutputStream out, final Rocket rocket,
+			final int precision) throws IOException {
+		this(out, FlightRecorder.COLUMNS, precision, rocket);
+	}
+
+	private TelemetryWriter(final OutputStream out, final String[] columns,
+			final int precision, final Rocket rocket) throws IOException {
+		if (columns.length == 0)
+			throw new IOException(INVALID_COLUMNS_EXCEPTION);
+		if (precision < 1 || precision > FULL_PRECISION)
+			throw new IOException(INVALID_PRECISION_EXCEPTION);
+		this.precision = precision;
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.columns = columns.clone();
+		this.rocket = rocket;
+		this.record = new double[columns.length];
+		this.block = new double[columns.length][BLOCK_SIZE];
+
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeInt(BLOCK_SIZE);
+		this.out.writeInt(precision);
+		this.out.writeInt(columns.length);
+		offset = 20;
+		for (String column : columns) {
+			final byte[] name = column.getBytes(UTF8);
+			this.out.writeShort(name.length);
+			this.out.write(name);
+			offset += 2 + name.length;
+		}
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @param values The values of the columns, the time first (not
+	 * decreasing).
+	 * @throws IOException If the record is invalid, or on write error.
+	 */
+	public void write(final double[] values) throws IOException {
+		if (closed)
+			throw new IOException(CLOSED_EXCEPTION);
+		if (values.length != columns.length)
+			throw new IOException(INVALID_RECORD_EXCEPTION + values.length);
+		if (values[0] < lastTime)
+			throw new IOException(TIME_EXCEPTION);
+		lastTime = values[0];
+		for (int k = 0; k < values.length; k++)
+			block[k][blockCount] = Double.longBitsToDouble(round(
+					Double.doubleToRawLongBits(values[k]),
+					columnPrecision(k, precision)));
+		recordCount++;
+		if (++blockCount == BLOCK_SIZE)
+			writeBlock();
+	}
+
+	@Override
+	public void onStep(final double currentT, final List<PhysicalObject> objects) {
+		FlightRecorder.readRecord(rocket, currentT, record);
+		try {
+			write(record);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void onFinish(final double currentT, final Throwable failure) {
+		try {
+			flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the records of the current block, even if it is not full,
+	 * and flushes the destination.
+	 *
+	 * @throws IOException On write error.
+	 */
+	public void flush() throws IOException {
+		if (closed)
+			return;
+		if (blockCount > 0)
+			writeBlock();
+		out.flush();
+	}
+
+	/**
+	 * Writes the last block and the index, and closes the destination.
+	 *
+	 * @throws IOException On write error.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			if (blockCount > 0)
+				writeBlock();
+			final long indexOffset = offset;
+			out.writeInt(blocks);
+			for (int b = 0; b < blocks; b++) {
+				out.writeLong(blockOffsets[b]);
+				out.writeLong(blockFirstRecords[b]);
+				out.writeInt(blockSizes[b]);
+				out.writeDouble(blockFirstTimes[b]);
+				out.writeDouble(blockLastTimes[b]);
+			}
+			out.writeLong(indexOffset);
+			out.writeInt(MAGIC);
+			offset += 4 + 36L * blocks + 12;
+		} finally {
+			closed = true;
+			out.close();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (blocks == blockOffsets.length) {
+			final int length = 2 * blocks;
+			blockOffsets = Arrays.copyOf(blockOffsets, length);
+			blockFirstRecords = Arrays.copyOf(blockFirstRecords, length);
+			blockSizes = Arrays.copyOf(blockSizes, length);
+			blockFirstTimes = Arrays.copyOf(blockFirstTimes, length);
+			blockLastTimes = Arrays.copyOf(blockLastTimes, length);
+		}
+		blockOffsets[blocks] = offset;
+		blockFirstRecords[blocks] = recordCount - blockCount;
+		blockSizes[blocks] = blockCount;
+		blockFirstTimes[blocks] = block[0][0];
+		blockLastTimes[blocks] = block[0][blockCount - 1];
+		blocks++;
+
+		out.writeInt(blockCount);
+		offset += 4;
+		for (int k = 0; k < columns.length; k++) {
+			byte best = PREVIOUS;
+			for (byte predictor = PREVIOUS; predictor <= QUADRATIC; predictor++) {
+				encode(block[k], blockCount, predictor,
+						columnPrecision(k, precision), encodings[predictor]);
+				if (encodings[predictor].size < encodings[best].size)
+					best = predictor;
+			}
+			out.writeByte(best);
+			out.writeInt(encodings[best].size);
+			out.write(encodings[best].bytes, 0, encodings[best].size);
+			offset += 5 + encodings[best].size;
+		}
+		blockCount = 0;
+	}
+
+	/**
+	 * Encodes a column of a block.
+	 *
+	 * @param values The values.
+	 * @param count The number of values.
+	 * @param predictor PREVIOUS, LINEAR or QUADRATIC.
+	 * @param precision The precision of the column.
+	 * @param bits The destination (reset).
+	 */
+	private static void encode(final double[] values, final int count,
+			final byte predictor, final int precision, final BitOutput bits) {
+		bits.reset();
+		bits.write(Double.doubleToRawLongBits(values[0]), 64);
+		// Window of the meaningful bits of the last XOR written
+		int leading = -1, trailing = 0;
+		for (int i = 1; i < count; i++) {
+			final long xor = Double.doubleToRawLongBits(values[i])
+					^ predict(values, i, predictor, precision);
+			if (xor == 0) {
+				bits.write(0, 1);
+				continue;
+			}
+			final int zeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			final int trailingZeros = Long.numberOfTrailingZeros(xor);
+			if (leading >= 0 && zeros >= leading && trailingZeros >= trailing) {
+				bits.write(2, 2);
+				bits.write(xor >>> trailing, 64 - leading - trailing);
+			} else {
+				leading = zeros;
+				trailing = trailingZeros;
+				final int length = 64 - leading - trailing;
+				bits.write(3, 2);
+				bits.write(leading, 5);
+				bits.write(length & 63, 6);
+				bits.write(xor >>> trailing, length);
+			}
+		}
+		bits.finish();
+	}
+
+	/** Returns the bits of the prediction of the value i of a column
+	 * (i >= 1), from the previous values, rounded to a precision. */
+	static long predict(final double[] values, final int i,
+			final byte predictor, final int precision) {
+		if (predictor == QUADRATIC && i >= 3)
+			return round(Double.doubleToLongBits(3 * (values[i - 1]
+					- values[i - 2]) + values[i - 3]), precision);
+		if (predictor != PREVIOUS && i >= 2)
+			return round(Double.doubleToLongBits(2 * values[i - 1]
+					- values[i - 2]), precision);
+		return Double.doubleToRawLongBits(values[i - 1]);
+	}
+
+	/** Returns the precision of a column of a file: the time (column
+	 * 0) is always kept at full precision. */
+	static int columnPrecision(final int column, final int precision) {
+		return column == 0 ? FULL_PRECISION : precision;
+	}
+
+	/** Rounds the bits of a double to a number of bits of significand
+	 * (to the nearest; NaN and infinities are kept). */
+	static long round(final long bits, final int precision) {
+		if (precision >= FULL_PRECISION
+				|| (bits & 0x7FF0000000000000L) == 0x7FF0000000000000L)
+			return bits;
+		final int dropped = FULL_PRECISION - precision;
+		// A carry out of the significand increments the exponent
+		return (bits + (1L << (dropped - 1))) & (-1L << dropped);
+	}
+
+	/** A growable sequence of bits, written most significant bit first. */
+	private final static class BitOutput {
+		private byte[] bytes = new byte[BLOCK_SIZE * 9];
+		/** Number of complete bytes. */
+		private int size;
+		/** The last bits written, not yet in a complete byte. */
+		private long pending;
+		private int pendingBits;
+
+		/** Writes the n (1 to 64) lowest bits of a value. */
+		void write(long value, int n) {
+			if (n > 32) {
+				write(value >>> 32, n - 32);
+				n = 32;
+			}
+			pending = (pending << n) | (value & (-1L >>> (64 - n)));
+			pendingBits += n;
+			while (pendingBits >= 8) {
+				pendingBits -= 8;
+				if (size == bytes.length)
+					bytes = Arrays.copyOf(bytes, 2 * size);
+				bytes[size++] = (byte) (pending >>> pendingBits);
+			}
+		}
+
+		/** Completes the last byte with zeros. */
+		void finish() {
+			if (pendingBits > 0)
+				write(0, 8 - pendingBits);
+		}
+
+		void reset() {
+			size = pendingBits = 0;
+			pending = 0;
+		}
+	}
+
+	// --- Getters ---
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/** Returns the number of records written. */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/** Returns the number of bytes written in the complete blocks (and
+	 * the index, once closed). */
+	public long getSize() {
+		return offset;
+	}
+}
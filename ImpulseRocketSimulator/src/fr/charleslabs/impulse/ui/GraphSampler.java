@@ -0,0 +1,155 @@
+package fr.charleslabs.impulse.ui;
+
+import java.util.List;
+
+import fr.charleslabs.impulse.physics.PhysicalObject;
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.physics.PhysicsMatrix;
+
+/**
+ * Samples the motion of an object for the graphs, on the engine
+ * thread: the first step at or after every period of simulation time
+ * is copied in a ring, and the last state of the simulation (eg: the
+ * landing) is always kept. The user interface drains the ring at its
+ * own pace, so the graphs get the real states at regular simulation
+ * times whatever the refresh rate or the time factor.
+ * <br><br>
+ * The ring has a single writer (the engine thread) and a single reader
+ * (the event dispatch thread), and neither of them locks. If the
+ * reader falls more than a ring behind, the oldest samples are lost.
+ *
+ * @author Charles Grassin
+ */
+final class GraphSampler implements PhysicsEngine.StepListener {
+	/** Number of values of a sample: linear then angular motion. */
+	private static final int SAMPLE_SIZE = 18;
+
+	private final PhysicalObject object;
+	private final double period;
+	private final int capacity;
+	/** The samples (capacity of them). */
+	private final double[] samples;
+	/** Number of samples written (engine thread) and read (reader). */
+	private volatile long written;
+	private long read;
+	/** Written by the reader between the copy of a sample and the
+	 * second read of written (see drain). */
+	private volatile int fence;
+	/** Simulation time of the next sample (NaN: the first step). */
+	private double nextT = Double.NaN;
+	/** Time of the last sample written. */
+	private double lastT = Double.NaN;
+	private volatile boolean isFinished = false;
+
+	// Reused by the reader
+	private final PhysicsMatrix linearMotion = new PhysicsMatrix(),
+			angularMotion = new PhysicsMatrix();
+
+	/**
+	 * Constructs a sampler.
+	 *
+	 * @param object The object to sample.
+	 * @param period The simulation time between two samples, in s.
+	 * @param capacity The number of samples the ring holds.
+	 */
+	GraphSampler(final PhysicalObject object, final double period,
+			final int capacity) {
+		this.object = object;
+		this.period = period;
+		this.capacity = capacity;
+		this.samples = new double[capacity * SAMPLE_SIZE];
+	}
+
+	@Override
+	public void onStep(final double currentT, final List<PhysicalObject> objects) {
+		if (currentT < nextT)
+			return;
+		write(currentT);
+		// After a step longer than the period, the samples start again
+		// from the step instead of catching up
+		nextT = (currentT - nextT < period) ? nextT + period : currentT + period;
+	}
+
+	@Override
+	public void onFinish(final double currentT, final Throwable failure) {
+		if (currentT != lastT)
+			write(currentT);
+		isFinished = true;
+	}
+
+	/** Forgets the samples, before a simulation starts. Must not be
+	 * called while the engine runs. */
+	void clear() {
+		written = read = 0;
+		nextT = lastT = Double.NaN;
+		isFinished = false;
+	}
+
+	/**
+	 * Adds the samples written since the last call to the graphs.
+	 *
+	 * @param angularGraphPanel The graphs of the angular motion.
+	 * @param linearGraphPanel The graphs of the linear motion.
+	 * @return The number of samples added.
+	 */
+	int drain(final GraphsPanel angularGraphPanel,
+			final GraphsPanel linearGraphPanel) {
+		final long end = written;
+		int added = 0;
+		for (long index = Math.max(read, end - capacity); index < end; index++) {
+			final int offset = (int) (index % capacity) * SAMPLE_SIZE;
+			readMatrix(linearMotion, offset);
+			readMatrix(angularMotion, offset + SAMPLE_SIZE / 2);
+			// Java 7 has no acquire fence: a volatile write keeps the
+			// reads of the copy before the second read of written
+			fence = 0;
+			// Overwritten by the engine during the copy
+			if (written - capacity > index)
+				continue;
+			angularGraphPanel.addPoint(angularMotion);
+			linearGraphPanel.addPoint(linearMotion);
+			added++;
+		}
+		read = end;
+		return added;
+	}
+
+	/** Returns true once the simulation has ended (its last state is
+	 * then in the ring). */
+	boolean isFinished() {
+		return isFinished;
+	}
+
+	private void write(final double currentT) {
+		final long index = written;
+		final int offset = (int) (index % capacity) * SAMPLE_SIZE;
+		writeMatrix(object.getLinearMotion(), offset);
+		writeMatrix(object.getAngularMotion(), offset + SAMPLE_SIZE / 2);
+		lastT = currentT;
+		written = index + 1;
+	}
+
+	private void writeMatrix(final PhysicsMatrix matrix, final int offset) {
+		samples[offset] = matrix.acceleration.x;
+		samples[offset + 1] = matrix.acceleration.y;
+		samples[offset + 2] = matrix.acceleration.z;
+		samples[offset + 3] = matrix.speed.x;
+		samples[offset + 4] = matrix.speed.y;
+		samples[offset + 5] = matrix.speed.z;
+		samples[offset + 6] = matrix.position.x;
+		samples[offset + 7] = matrix.position.y;
+		samples[offset + 8] = matrix.position.z;
+	}
+
+	private void readMatrix(final PhysicsMatrix matrix, final int offset) {
+		matrix.acceleration.x = samples[offset];
+		matrix.acceleration.y = samples[offset + 1];
+		matrix.acceleration.z = samples[offset + 2];
+		matrix.speed.x = samples[offset + 3];
+		matrix.speed.y = samples[offset + 4];
+		matrix.speed.z = samples[offset + 5];
+		matrix.position.x = samples[offset + 6];
+		matrix.position.y = samples[offset + 7];
+		matrix.position.z = samples[offset + 8];
+	}
+}
@@ -7,7 +7,6 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import fr.charleslabs.impulse.physics.PhysicsMatrix;
-import fr.charleslabs.impulse.physics.PhysicsVector;
 
 /**
  * A panel with 3 graphs, that plots a
@@ -30,10 +29,25 @@ public class GraphsPanel extends JPanel {
 	 * @param unit The Y axis unit.
 	 */
 	public GraphsPanel(final double timeInterval, final String unit) {
+		this(timeInterval, unit, PhysicsGraph.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a GraphsPanel that displays 3
+	 * graphs, with a given memory.
+	 * @param timeInterval The interval between 
+	 * each point.
+	 * @param unit The Y axis unit.
+	 * @param capacity The number of points kept
+	 * at full resolution by each graph (the
+	 * older ones are downsampled).
+	 */
+	public GraphsPanel(final double timeInterval, final String unit,
+			final int capacity) {
 		super(new BorderLayout());
-		accelerationGraph = new PhysicsGraph(1000.0d / timeInterval);
-		speedGraph = new PhysicsGraph(1000.0d / timeInterval);
-		positionGraph = new PhysicsGraph(1000.0d / timeInterval);
+		accelerationGraph = new PhysicsGraph(1000.0d / timeInterval, capacity);
+		speedGraph = new PhysicsGraph(1000.0d / timeInterval, capacity);
+		positionGraph = new PhysicsGraph(1000.0d / timeInterval, capacity);
 
 		// Center layout
 		final JPanel graphPane = new JPanel(new GridLayout(3, 1));
@@ -72,14 +86,15 @@ public class GraphsPanel extends JPanel {
 	}
 
 	/**
-	 * Adds a point on the 3 graphs.
+	 * Adds a point on the 3 graphs (the
+	 * values are copied).
 	 * @param matrix The PhysicsMatrix corresponding
 	 * to the current time.
 	 */
 	public void addPoint(final PhysicsMatrix matrix) {
-		accelerationGraph.add(new PhysicsVector(matrix.acceleration));
-		speedGraph.add(new PhysicsVector(matrix.speed));
-		positionGraph.add(new PhysicsVector(matrix.position));
+		accelerationGraph.add(matrix.acceleration);
+		speedGraph.add(matrix.speed);
+		positionGraph.add(matrix.position);
 	}
 
 	/**
@@ -1,15 +1,14 @@
 package fr.charleslabs.impulse.ui;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.BufferedImage;
 import javax.swing.JPanel;
 
 import fr.charleslabs.impulse.physics.PhysicsVector;
@@ -17,6 +16,17 @@ import fr.charleslabs.impulse.physics.PhysicsVector;
 /**
  * This class is a simple plot. It displays
  * any 3D data, described by a PhysicsVector.
+ * <br><br>
+ * The points are kept in a bounded store (see
+ * TimeSeriesStore): the memory does not grow
+ * with the length of the flight, the oldest
+ * points being downsampled. Each repaint draws
+ * the min and max of the points of each pixel
+ * column, at most 2 points per column.
+ * <br><br>
+ * By default, the plot is cached in an image,
+ * and a repaint only draws the new points (see
+ * setIncrementalRendering()).
  * 
  * @author Charles Grassin
  *
@@ -32,10 +42,36 @@ public class PhysicsGraph extends JPanel {
 	static final Color backgroundColor = new Color(255, 255, 255, 240);
 	static final Color gridColor = new Color(200, 200, 200, 200);
 	static final Color fontColor = new Color(200, 200, 200, 200);
+	private static final Color[] LINE_COLORS = { lineColorX, lineColorY, lineColorZ };
 	private static final Stroke GRAPH_STROKE = new BasicStroke(2f);
 	private static final int divisionSpacing = 20;
-	private List<PhysicsVector> matrix;
+	/** Default number of points kept at full resolution. */
+	static final int DEFAULT_CAPACITY = 4096;
+	private final TimeSeriesStore store;
 	private Double ySpacing = 1.0d;
+	/** The point being added (x, y and z). */
+	private final double[] point = new double[3];
+	/** The min and max of the pixel columns, and the points of a
+	 * series on screen (reused by each repaint). */
+	private double[] mins = new double[0], maxs = new double[0];
+	private int[] xPoints = new int[0], yPoints = new int[0];
+
+	// Incremental rendering
+	/** Smallest number of intervals of the x axis of the cache. */
+	private static final long MIN_SPAN = 64;
+	private boolean incremental = true;
+	/** The plot, drawn up to drawnPoints points (incremental mode). */
+	private BufferedImage cache;
+	/** Set when the cache must be redrawn (eg: cleared). */
+	private volatile boolean invalid = true;
+	private long drawnPoints, cacheSpan;
+	private double cacheMin, cacheMax;
+	/** The last point drawn on the cache, and the extent drawn in its
+	 * pixel column, by series. */
+	private final int[] lastX = new int[3], lastY = new int[3],
+			columnMinY = new int[3], columnMaxY = new int[3];
+	/** The values of the points added since the last frame. */
+	private double[] newValues = new double[16];
 	
 	/**
 	 * Constructs an empty graph.
@@ -44,62 +80,175 @@ public class PhysicsGraph extends JPanel {
 	 * vector (usually in seconds or milliseconds).
 	 */
 	public PhysicsGraph(final Double ySpacing) {
-		this.matrix = new ArrayList<PhysicsVector>();
-		this.ySpacing = ySpacing;
+		this(ySpacing, DEFAULT_CAPACITY);
 	}
 	
 	/**
-	 * Constructs a graph with a pre-filled
-	 * 3D list to display.
+	 * Constructs an empty graph with a given
+	 * memory.
 	 * 
-	 * @param matrix The matrix list to display
-	 * in the graph.
 	 * @param ySpacing The x interval between each
 	 * vector (usually in seconds or milliseconds).
+	 * @param capacity The number of points kept
+	 * at full resolution (the older ones are
+	 * downsampled).
 	 */
-	public PhysicsGraph(final List<PhysicsVector> matrix,final  Double ySpacing) {
-		this.matrix = matrix;
+	public PhysicsGraph(final Double ySpacing, final int capacity) {
+		this.store = new TimeSeriesStore(3, capacity);
 		this.ySpacing = ySpacing;
 	}
 	
 	@Override
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
+		final long size = store.getSize();
+		if (!incremental) {
+			double maxScore = getMaxValue();
+			final double minscore = getMinValue();
+			if (!(maxScore > minscore))
+				maxScore = minscore + 1;
+			paintPlot((Graphics2D) g, size, minscore, maxScore, size - 1);
+			return;
+		}
+
+		// Incremental mode: only the new points are drawn on the cache,
+		// unless the size or the scales of the plot change
+		if (invalid || cache == null || cache.getWidth() != getWidth()
+				|| cache.getHeight() != getHeight() || size < drawnPoints
+				|| size - 1 > cacheSpan || getMinValue() < cacheMin
+				|| getMaxValue() > cacheMax || !drawNewPoints(size))
+			redraw(size);
+		g.drawImage(cache, 0, 0, null);
+	}
+
+	/**
+	 * Draws the whole plot on the cache, with scales that leave room
+	 * for the next points: the x axis spans a power of two of points,
+	 * and the y axis has a margin of 1/8 of the range on each side.
+	 */
+	private void redraw(final long size) {
+		invalid = false;
+		if (cache == null || cache.getWidth() != getWidth()
+				|| cache.getHeight() != getHeight())
+			cache = new BufferedImage(Math.max(1, getWidth()),
+					Math.max(1, getHeight()), BufferedImage.TYPE_INT_ARGB);
+		cacheSpan = MIN_SPAN;
+		while (cacheSpan < size - 1)
+			cacheSpan *= 2;
+		final double minValue = getMinValue(), maxValue = getMaxValue();
+		if (size == 0) {
+			cacheMin = 0;
+			cacheMax = 1;
+		} else if (maxValue > minValue) {
+			cacheMin = minValue - (maxValue - minValue) / 8;
+			cacheMax = maxValue + (maxValue - minValue) / 8;
+		} else {
+			cacheMin = minValue - 0.5;
+			cacheMax = minValue + 0.5;
+		}
+
+		final Graphics2D g2 = cache.createGraphics();
+		g2.setComposite(AlphaComposite.Clear);
+		g2.fillRect(0, 0, cache.getWidth(), cache.getHeight());
+		g2.setComposite(AlphaComposite.SrcOver);
+		paintPlot(g2, size, cacheMin, cacheMax, cacheSpan);
+		g2.dispose();
+
+		// The last point, the start of the next segments
+		drawnPoints = size;
+		if (size > 0)
+			for (int k = 0; k < lastX.length; k++) {
+				store.getRecent(k, size - 1, size, newValues);
+				lastX[k] = toX(size - 1);
+				lastY[k] = columnMinY[k] = columnMaxY[k] = toY(newValues[0]);
+			}
+	}
+
+	/**
+	 * Draws the points added since the last frame on the cache.
+	 *
+	 * @return False if these points are no longer available at full
+	 * resolution (the plot must be redrawn).
+	 */
+	private boolean drawNewPoints(final long size) {
+		final int count = (int) (size - drawnPoints);
+		if (count == 0)
+			return true;
+		if (drawnPoints == 0 || count > store.getCapacity())
+			return false;
+		if (newValues.length < count)
+			newValues = new double[count];
+		final Graphics2D g2 = cache.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setStroke(GRAPH_STROKE);
+		try {
+			for (int k = 0; k < lastX.length; k++) {
+				if (!store.getRecent(k, drawnPoints, size, newValues))
+					return false;
+				g2.setColor(LINE_COLORS[k]);
+				for (int i = 0; i < count; i++) {
+					final int x = toX(drawnPoints + i), y = toY(newValues[i]);
+					// Nothing to draw within the extent already drawn in
+					// the pixel column
+					if (x == lastX[k] && y >= columnMinY[k] && y <= columnMaxY[k])
+						continue;
+					g2.drawLine(lastX[k], lastY[k], x, y);
+					if (x != lastX[k])
+						columnMinY[k] = columnMaxY[k] = y;
+					columnMinY[k] = Math.min(columnMinY[k], y);
+					columnMaxY[k] = Math.max(columnMaxY[k], y);
+					lastX[k] = x;
+					lastY[k] = y;
+				}
+			}
+		} finally {
+			g2.dispose();
+		}
+		drawnPoints = size;
+		return true;
+	}
+
+	/** Returns the abscissa of a point on the cache. */
+	private int toX(final long point) {
+		return (int) (point * (double) (getWidth() - (2 * padding) - yLabelPadding)
+				/ cacheSpan + padding + yLabelPadding);
+	}
+
+	/** Returns the ordinate of a value on the cache. */
+	private int toY(final double value) {
+		return (int) ((cacheMax - value)
+				* ((double) getHeight() - 2 * padding - xLabelPadding)
+				/ (cacheMax - cacheMin) + padding);
+	}
 
+	/**
+	 * Draws the whole plot.
+	 *
+	 * @param g2 The destination.
+	 * @param size The number of points.
+	 * @param minscore The value at the bottom of the plot.
+	 * @param maxScore The value at the top of the plot.
+	 * @param span The number of intervals between points on the x
+	 * axis (size - 1 to fill the width).
+	 */
+	private void paintPlot(final Graphics2D g2, final long size,
+			final double minscore, final double maxScore, final long span) {
 		// Enables the anti-aliasing
-		final Graphics2D g2 = (Graphics2D) g;
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 		
 		// Compute UI constants
-		final double maxScore = getMaxValue();
-		final double minscore = getMinValue();
 		int numberYDivisions = ((getHeight() - padding * 2 - xLabelPadding) / divisionSpacing);
 		if (numberYDivisions % 2 == 1)
 			numberYDivisions--;
 		if (numberYDivisions <= 0)
 			numberYDivisions = 1;
-		double xScale = ((double) getWidth() - (2 * padding) - yLabelPadding)
-				/ (matrix.size() - 1);
+		final int plotWidth = getWidth() - (2 * padding) - yLabelPadding;
+		double xScale = ((double) plotWidth) / span;
 		double yScale = ((double) getHeight() - 2 * padding - xLabelPadding)
 				/ (maxScore - minscore);
 
-		// Get the list of points
-		List<Point> graphPointsX = new ArrayList<Point>();
-		List<Point> graphPointsY = new ArrayList<Point>();
-		List<Point> graphPointsZ = new ArrayList<Point>();
-		for (int i = 0; i < matrix.size(); i++) {
-			graphPointsX.add(new Point(
-					(int) (i * xScale + padding + yLabelPadding),
-					(int) ((maxScore - matrix.get(i).x) * yScale + padding)));
-			graphPointsY.add(new Point(
-					(int) (i * xScale + padding + yLabelPadding),
-					(int) ((maxScore - matrix.get(i).y) * yScale + padding)));
-			graphPointsZ.add(new Point(
-					(int) (i * xScale + padding + yLabelPadding),
-					(int) ((maxScore - matrix.get(i).z) * yScale + padding)));
-		}
-
 		// Draw background
 		g2.setColor(backgroundColor);
 		g2.fillRect(padding + yLabelPadding, padding, getWidth()
@@ -112,7 +261,7 @@ public class PhysicsGraph extends JPanel {
 			int y0 = getHeight()
 					- ((i * (getHeight() - padding * 2 - xLabelPadding))
 							/ numberYDivisions + padding + xLabelPadding);
-			if (matrix.size() > 0) {
+			if (size > 0) {
 				g2.setColor(gridColor);
 				g2.drawLine(padding + yLabelPadding + 1, y0, getWidth()
 						- padding - 1, y0);
@@ -129,96 +278,145 @@ public class PhysicsGraph extends JPanel {
 		}
 
 		// and for x axis
-		if (matrix.size() > 1) {
-			for (int i = 0; i < matrix.size(); i++) {
-				int x0 = i * (getWidth() - padding * 2 - yLabelPadding)
-						/ (matrix.size() - 1) + padding + yLabelPadding - 1;
+		if (size > 1) {
+			final long labelStep = (long) ((span + 1) / 10.0) + 1;
+			for (long i = 0; i <= span; i += labelStep) {
+				int x0 = (int) (i * plotWidth / span) + padding
+						+ yLabelPadding - 1;
 				int y0 = getHeight() - padding - xLabelPadding;
-				if ((i % ((int) ((matrix.size() / 10.0)) + 1)) == 0) {
-					g2.setColor(gridColor);
-					g2.drawLine(x0, getHeight() - padding - xLabelPadding - 1,
-							x0, padding);
-					g2.setColor(fontColor);
-					String xLabel = String.format("%.0f", i * ySpacing);
-					FontMetrics metrics = g2.getFontMetrics();
-					g2.drawString(xLabel, x0 - metrics.stringWidth(xLabel) / 2,
-							y0 + metrics.getHeight() + 3);
-					g2.drawLine(x0, y0, x0, y0);
-				}
+				g2.setColor(gridColor);
+				g2.drawLine(x0, getHeight() - padding - xLabelPadding - 1,
+						x0, padding);
+				g2.setColor(fontColor);
+				String xLabel = String.format("%.0f", i * ySpacing);
+				FontMetrics metrics = g2.getFontMetrics();
+				g2.drawString(xLabel, x0 - metrics.stringWidth(xLabel) / 2,
+						y0 + metrics.getHeight() + 3);
+				g2.drawLine(x0, y0, x0, y0);
+			}
+
+			// Draw the plots (x,y and z), decimated to the width
+			g2.setStroke(GRAPH_STROKE);
+			final int bins = (int) Math.min(size, Math.max(1,
+					(long) plotWidth * (size - 1) / span));
+			for (int k = 0; k < LINE_COLORS.length; k++) {
+				g2.setColor(LINE_COLORS[k]);
+				drawSeries(g2, k, size, bins, maxScore, xScale, yScale);
 			}
 		}
+	}
 
-		// Draw the plots (x,y and z)
-		g2.setStroke(GRAPH_STROKE);
-		for (int i = 0; i < graphPointsX.size() - 1; i++) {
-			g2.setColor(lineColorX);
-			g2.drawLine(graphPointsX.get(i).x, graphPointsX.get(i).y,
-					graphPointsX.get(i + 1).x, graphPointsX.get(i + 1).y);
-			g2.setColor(lineColorY);
-			g2.drawLine(graphPointsY.get(i).x, graphPointsY.get(i).y,
-					graphPointsY.get(i + 1).x, graphPointsY.get(i + 1).y);
-			g2.setColor(lineColorZ);
-			g2.drawLine(graphPointsZ.get(i).x, graphPointsZ.get(i).y,
-					graphPointsZ.get(i + 1).x, graphPointsZ.get(i + 1).y);
+	/**
+	 * Draws a column of the store: the min and max of the points of
+	 * each bin (in the order that follows the trend of the series), or
+	 * the points themselves when there are fewer points than bins.
+	 */
+	private void drawSeries(final Graphics2D g2, final int column,
+			final long size, final int bins, final double maxScore,
+			final double xScale, final double yScale) {
+		if (mins.length < bins) {
+			mins = new double[bins];
+			maxs = new double[bins];
+			xPoints = new int[2 * bins];
+			yPoints = new int[2 * bins];
+		}
+		store.getRanges(column, bins, mins, maxs);
+		int count = 0;
+		double previous = Double.NEGATIVE_INFINITY;
+		for (int b = 0; b < bins; b++) {
+			final double low = mins[b], high = maxs[b];
+			if (Double.isNaN(low))
+				continue;
+			// Middle of the bin, in points
+			final double i = (b + 0.5) * size / bins - 0.5;
+			final int x = (int) (i * xScale + padding + yLabelPadding);
+			final double middle = (low + high) / 2;
+			final boolean rising = middle >= previous;
+			previous = middle;
+			xPoints[count] = x;
+			yPoints[count++] = (int) ((maxScore - (rising ? low : high)) * yScale + padding);
+			if (high != low) {
+				xPoints[count] = x;
+				yPoints[count++] = (int) ((maxScore - (rising ? high : low)) * yScale + padding);
+			}
 		}
+		g2.drawPolyline(xPoints, yPoints, count);
 	}
 
 	/**
-	 * Looks for the smallest value is the 
-	 * vectors.
+	 * Returns the smallest value of the vectors,
+	 * maintained by the store.
 	 * @return The smallest value in the list
 	 * of vectors. It can either be a x, y or
 	 * z value.
 	 */
 	private double getMinValue() {
-		double minValue = Double.MAX_VALUE;
-		for (PhysicsVector score : matrix) {
-			minValue = Math.min(minValue, score.x);
-			minValue = Math.min(minValue, score.y);
-			minValue = Math.min(minValue, score.z);
-		}
-		return minValue;
+		return Math.min(store.getMin(0),
+				Math.min(store.getMin(1), store.getMin(2)));
 	}
 	
 	/**
-	 * Looks for the largest value is the 
-	 * vectors.
+	 * Returns the largest value of the vectors,
+	 * maintained by the store.
 	 * @return The largest value in the list
 	 * of vectors. It can either be a x, y or
 	 * z value.
 	 */
 	private double getMaxValue() {
-		double maxValue = Double.MIN_VALUE;
-		for (PhysicsVector score : matrix) {
-			maxValue = Math.max(maxValue, score.x);
-			maxValue = Math.max(maxValue, score.y);
-			maxValue = Math.max(maxValue, score.z);
-		}
-		return maxValue;
+		return Math.max(store.getMax(0),
+				Math.max(store.getMax(1), store.getMax(2)));
 	}
 	
 	/**
 	 * Clears all the data of the plot.
 	 */
 	public void clear() {
-		this.matrix.clear();
+		store.clear();
+		invalid = true;
 	}
 
 	/**
-	 * Getter for the list of vectors.
-	 * @return The list of vector displayed
-	 * by the graph.
+	 * Sets the rendering mode. In the incremental
+	 * mode (the default), the plot is cached in an
+	 * image, and each repaint only draws the points
+	 * added since the last one: the whole plot is
+	 * only redrawn when it is resized or rescaled.
+	 * The scales leave room for the next points.
+	 * Otherwise, the whole plot is redrawn at each
+	 * repaint, and fills the panel.
+	 * @param incremental True for the incremental
+	 * mode.
 	 */
-	public List<PhysicsVector> getMatrix() {
-		return matrix;
+	public void setIncrementalRendering(final boolean incremental) {
+		this.incremental = incremental;
+		this.cache = null;
+		repaint();
+	}
+
+	public boolean isIncrementalRendering() {
+		return incremental;
+	}
+
+	/**
+	 * Returns the number of vectors added to
+	 * the plot since the last clear.
+	 */
+	public long getPointCount() {
+		return store.getSize();
 	}
 
 	/**
-	 * Adds a vector to the plot.
+	 * Adds a vector to the plot (its coordinates
+	 * are copied).
 	 * @param vector A vector to plot, with
 	 * the coordinates (ySpacing*nbPoints,x,y,z)
 	 */
 	public void add(final PhysicsVector vector) {
-		matrix.add(vector);
+		synchronized (point) {
+			point[0] = vector.x;
+			point[1] = vector.y;
+			point[2] = vector.z;
+			store.add(point);
+		}
 	}
 }
\ No newline at end of file
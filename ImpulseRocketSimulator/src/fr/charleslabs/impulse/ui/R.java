@@ -39,7 +39,18 @@ public abstract class R {
 			serialConnectionErrorDialogMessage = "Could not connect to serial port: ",
 			serialBtnTitle = "Connect...",
 			serialStopBtnTitle = "Close port",
-			serialBtnTooltip = "Connect to a rocket controller board through a serial link.";
+			serialBtnTooltip = "Connect to a rocket controller board through a serial link.",
+			timeFactorTitle = "Simulation speed",
+			timeFactorTooltip = "Speed of the simulation relative to real time (eg: 20 for 20x).",
+			achievedTimeFactorLabel = "Achieved: ",
+			achievedTimeFactorTooltip = "Speed actually reached by the simulation (lower than requested if the computer cannot keep up).",
+			recorderTitle = "Flight recorder",
+			recordCheckBoxTitle = "Record every step",
+			recordCheckBoxTooltip = "Record the last minute of the next flights at the engine frequency.",
+			saveRecordBtnTitle = "Save...",
+			saveRecordBtnTooltip = "Save the recorded flight (CSV, or compressed telemetry if the name ends with .imt).",
+			saveRecordErrorDialogTitle = "Flight recorder error",
+			saveRecordErrorDialogMessage = "Could not save the recorded flight: ";
 	// Rocket Creator menu:
 	public static final String basicConfigurationTitle = "Basic configuration",
 			massLabel = "Total mass",
@@ -51,7 +62,7 @@ public abstract class R {
 			comLabel = "    CoM height",
 			comTooltip = "The center of mass (CoM) height must be > 0 and < rocket length.",
 			diameterLabel = "Body diameter", 
-			diameterTooltip = "NOT YET USED",
+			diameterTooltip = "The diameter of the body, used for the aerodynamic drag and restoring moment.",
 			motorLabel = "Motor",
 			motorTooltip = "The motor determines the thrust curve of the rocket",
 			gimbalConfigurationTitle = "Gimbal configuration",
@@ -1,5 +1,6 @@
 package fr.charleslabs.impulse.ui;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.ConditionalFeature;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
@@ -16,10 +17,21 @@ import javafx.scene.shape.Cylinder;
 import javafx.scene.shape.Shape3D;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Translate;
+import fr.charleslabs.impulse.physics.PhysicsEngine;
+import fr.charleslabs.impulse.physics.PhysicsMatrix;
+import fr.charleslabs.impulse.physics.PhysicsSnapshot;
 
 /**
  * A 3D panel based of JavaFx, to display
  * a 3D view of the rocket's current attitude.
+ * <br><br>
+ * The scene graph is only modified on the
+ * JavaFX thread: while the view is animated
+ * (see setAnimated()), an AnimationTimer pulls
+ * the last state of the rocket (from the engine
+ * snapshots, or from setPostion()) at most once
+ * per pulse, and applies it to transforms that
+ * are created once.
  * 
  * @author Charles Grassin
  */
@@ -35,6 +47,27 @@ public class Rocket3DView extends JFXPanel {
 	// Dynamic 3D variables
 	private Shape3D rocketFx, ground;
 	private PerspectiveCamera camera;
+	private final Translate groundPosition = new Translate(0, rocketHeight / 2, 0);
+	private final Rotate rocketRotationX = new Rotate(0, Rotate.X_AXIS),
+			rocketRotationY = new Rotate(0, Rotate.Z_AXIS);
+
+	// State of the rocket
+	/** The engine whose first object is displayed, or null. */
+	private volatile PhysicsEngine source;
+	/** Snapshot of the source (JavaFX thread only). */
+	private PhysicsEngine snapshotSource;
+	private PhysicsSnapshot snapshot;
+	/** Last position given by setPostion() (height, xRot, yRot). */
+	private final double[] position = new double[3];
+	private boolean positionChanged;
+	/** Whether the timer runs (JavaFX thread only). */
+	private boolean isAnimated;
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			update();
+		}
+	};
 
 	/**
 	 * Prepare the 3D view (threaded).
@@ -72,8 +105,10 @@ public class Rocket3DView extends JFXPanel {
 		rocketFx.setMaterial(material1);
 		root.getChildren().add(rocketFx);
 
+		rocketFx.getTransforms().addAll(rocketRotationX, rocketRotationY);
+
 		ground = new Box(100, 1, 100);
-		ground.getTransforms().add(new Translate(0, rocketHeight/2, 0));
+		ground.getTransforms().add(groundPosition);
 		root.getChildren().add(ground);
 
 		Scene scene = new Scene(root, -1, -1, true,
@@ -99,22 +134,104 @@ public class Rocket3DView extends JFXPanel {
 		});
 
 		this.setScene(scene);
+		update();
+	}
+
+	/**
+	 * Starts or stops the animation of the view,
+	 * eg: while a simulation runs and the view is
+	 * visible. Can be called from any thread. A
+	 * stopped view keeps the last state of the
+	 * rocket.
+	 * @param animated true to update the view at
+	 * each pulse.
+	 */
+	public void setAnimated(final boolean animated) {
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				if (animated == isAnimated)
+					return;
+				isAnimated = animated;
+				if (animated)
+					timer.start();
+				else {
+					timer.stop();
+					update();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sets the engine whose first object (the
+	 * rocket) is displayed: its last state is
+	 * read at each pulse of the 3D view, without
+	 * blocking the engine.
+	 * @param engine The engine, or null to only
+	 * display the positions given by setPostion().
+	 */
+	public void setSource(final PhysicsEngine engine) {
+		this.source = engine;
+	}
+
+	/**
+	 * Applies the last state of the rocket to the
+	 * transforms (JavaFX thread, once per pulse
+	 * while animated).
+	 */
+	private void update() {
+		final PhysicsEngine engine = source;
+		if (engine != null) {
+			if (engine != snapshotSource) {
+				snapshot = engine.createSnapshot();
+				snapshotSource = engine;
+			}
+			if (engine.readSnapshot(snapshot) && snapshot.getObjectCount() > 0) {
+				final PhysicsMatrix angularMotion = snapshot.getAngularMotion(0);
+				apply(snapshot.getLinearMotion(0).position.z,
+						angularMotion.position.x, angularMotion.position.y);
+			}
+		}
+		synchronized (position) {
+			if (!positionChanged)
+				return;
+			positionChanged = false;
+			apply(position[0], position[1], position[2]);
+		}
+	}
+
+	private void apply(double height, double xRot, double yRot) {
+		groundPosition.setY(height + rocketHeight / 2);
+		rocketRotationX.setAngle(xRot);
+		rocketRotationY.setAngle(yRot);
 	}
 
 	/**
 	 * Updates the attitude and position of the rocket
-	 * in the 3D view.
+	 * in the 3D view. Can be called from any thread:
+	 * the last position is applied at the next pulse
+	 * (or right away when the view is not animated).
 	 * @param height The current rocket altitude relative
 	 * to ground.
 	 * @param xRot The current rotation around the x axis.
 	 * @param yRot The current rotation around the y axis.
 	 */ 
 	public void setPostion(double height, double xRot, double yRot) {
-		ground.getTransforms().clear();
-		ground.getTransforms().add(new Translate(0, height + 5, 0));
-		rocketFx.getTransforms().clear();
-		rocketFx.getTransforms().add(new Rotate(xRot, Rotate.X_AXIS));
-		rocketFx.getTransforms().add(new Rotate(yRot, Rotate.Z_AXIS));
-		this.invalidate();
+		synchronized (position) {
+			position[0] = height;
+			position[1] = xRot;
+			position[2] = yRot;
+			if (positionChanged)
+				return; // Already pending
+			positionChanged = true;
+		}
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				if (!isAnimated)
+					update();
+			}
+		});
 	}
 }
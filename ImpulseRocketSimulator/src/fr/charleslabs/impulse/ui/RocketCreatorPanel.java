@@ -19,6 +19,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 
+import fr.charleslabs.impulse.rocket.aero.Aerodynamics;
 import fr.charleslabs.impulse.rocket.gimbal.GimbalServo;
 import fr.charleslabs.impulse.rocket.motor.MotorDataBase;
 import fr.charleslabs.impulse.rocket.Rocket;
@@ -132,6 +133,7 @@ public class RocketCreatorPanel extends JPanel implements ItemListener {
 				mass, 
 				height,
 				comHeight);
+		rocket.setAerodynamics(new Aerodynamics((Double) diameterSpinner.getValue()));
 	}
 	
 	/**
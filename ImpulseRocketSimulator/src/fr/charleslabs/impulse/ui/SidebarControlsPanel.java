@@ -7,8 +7,12 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -17,9 +21,11 @@ import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.border.EmptyBorder;
 
+import fr.charleslabs.impulse.physics.PhysicsEngine;
 import fr.charleslabs.impulse.rocket.controller.PIDRocketController;
 import fr.charleslabs.impulse.rocket.controller.SerialController;
 import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.simulation.FlightRecorder;
 import jssc.SerialPortException;
 
 /**
@@ -33,19 +39,22 @@ import jssc.SerialPortException;
 public class SidebarControlsPanel extends JPanel {
 	private static final long serialVersionUID = 1L;
 	protected JSpinner xAxisUserTorque, yAxisUserTorque, pSpinner, iSpinner,
-			dSpinner, frequencySpinner;
+			dSpinner, frequencySpinner, timeFactorSpinner;
 	protected JButton startStopBtn, addTorqueBtn, serialConnectBtn,
-			pidApplyBtn;
+			pidApplyBtn, saveRecordBtn;
+	protected JCheckBox recordCheckBox;
 	private static final double defaultKP=4,defaultKI=0, defaultKD=1;
 
+	private JLabel achievedTimeFactorLabel;
+
 	private boolean isSerialConnected = false;
 	
 	/**
 	 * Constructs the sidebar's layout.
 	 * @param parent The caller of the side
 	 * bar, which must handle several actions:
-	 * startStopBtn, addTorqueBtn, serialConnectBtn
-	 * and pidApplyBtn.
+	 * startStopBtn, addTorqueBtn, serialConnectBtn,
+	 * pidApplyBtn and saveRecordBtn.
 	 */
 	public SidebarControlsPanel(final ActionListener parent) {
 		super(new BorderLayout());
@@ -73,6 +82,11 @@ public class SidebarControlsPanel extends JPanel {
 		iSpinner.setToolTipText(R.kiTooltip);
 		dSpinner.setToolTipText(R.kdTooltip);
 		frequencySpinner.setToolTipText(R.frequencyTooltip);
+		timeFactorSpinner = new JSpinner(
+				new SpinnerNumberModel(1.0d, 0.1d, 100, 1));
+		timeFactorSpinner.setToolTipText(R.timeFactorTooltip);
+		achievedTimeFactorLabel = new JLabel();
+		achievedTimeFactorLabel.setToolTipText(R.achievedTimeFactorTooltip);
 
 		addTorqueBtn = new JButton(R.addOffsetBtnTitle);
 		addTorqueBtn.addActionListener(parent);
@@ -89,6 +103,14 @@ public class SidebarControlsPanel extends JPanel {
 		pidApplyBtn = new JButton(R.setPIDBtnTitle);
 		pidApplyBtn.addActionListener(parent);
 		pidApplyBtn.setToolTipText(R.setPIDBtnTooltip);
+
+		recordCheckBox = new JCheckBox(R.recordCheckBoxTitle);
+		recordCheckBox.setToolTipText(R.recordCheckBoxTooltip);
+
+		saveRecordBtn = new JButton(R.saveRecordBtnTitle);
+		saveRecordBtn.addActionListener(parent);
+		saveRecordBtn.setToolTipText(R.saveRecordBtnTooltip);
+		saveRecordBtn.setEnabled(false);
 		
 		// Generate 
 		controls.add(RocketCreatorPanel.categoryTitle(R.controllerTitle), gbc);
@@ -106,6 +128,12 @@ public class SidebarControlsPanel extends JPanel {
 		controls.add(fieldWithLabel(xAxisUserTorque, "x"), gbc);
 		controls.add(fieldWithLabel(yAxisUserTorque, "y"), gbc);
 		controls.add(addTorqueBtn, gbc);
+		controls.add(RocketCreatorPanel.categoryTitle(R.timeFactorTitle), gbc);
+		controls.add(fieldWithLabel(timeFactorSpinner, "x"), gbc);
+		controls.add(achievedTimeFactorLabel, gbc);
+		controls.add(RocketCreatorPanel.categoryTitle(R.recorderTitle), gbc);
+		controls.add(recordCheckBox, gbc);
+		controls.add(saveRecordBtn, gbc);
 
 		this.add(controls, BorderLayout.CENTER);
 		this.add(startStopBtn, BorderLayout.SOUTH);
@@ -124,8 +152,25 @@ public class SidebarControlsPanel extends JPanel {
 		}else {
 			startStopBtn.setText(R.launchBtnTitle);
 			addTorqueBtn.setEnabled(false);
+			achievedTimeFactorLabel.setText(" ");
 		}
 	}
+
+	/**
+	 * Applies the time factor of the field to the engine (it can change
+	 * while the simulation runs), and displays the time factor the
+	 * engine actually achieves.
+	 * @param engine The engine of the simulator.
+	 */
+	protected void updateTimeFactor(final PhysicsEngine engine) {
+		final double timeFactor = (Double) this.timeFactorSpinner.getValue();
+		if (timeFactor != engine.getTimeFactor())
+			engine.setTimeFactor(timeFactor);
+		final String achieved = String.format("%s%.1fx",
+				R.achievedTimeFactorLabel, engine.getAchievedTimeFactor());
+		if (!achieved.equals(achievedTimeFactorLabel.getText()))
+			achievedTimeFactorLabel.setText(achieved);
+	}
 	
 	/**
 	 * Creates a PID controller for the rocket, based 
@@ -171,7 +216,7 @@ public class SidebarControlsPanel extends JPanel {
 		return s;
 	}
 	
-	protected void serialConnect(final JFrame caller,Rocket rocket) {
+	protected void serialConnect(final JFrame caller,Rocket rocket,PhysicsEngine engine) {
 		if(isSerialConnected) {
 			this.setPID(rocket);
 			isSerialConnected = false;
@@ -184,7 +229,7 @@ public class SidebarControlsPanel extends JPanel {
 		if (serialPort != null)
 			try {
 				rocket.setController(
-						new SerialController(serialPort,rocket));
+						new SerialController(serialPort,rocket,engine));
 				isSerialConnected = true;
 				serialConnectBtn.setText(R.serialStopBtnTitle);
 				
@@ -208,6 +253,33 @@ public class SidebarControlsPanel extends JPanel {
 		return panel;
 	}
 
+	/**
+	 * Asks for a file and saves the flight recorded by a recorder in
+	 * it: compressed telemetry if its name ends with .imt, CSV
+	 * otherwise. Can be called while the simulation runs.
+	 * @param caller The parent of the dialogs.
+	 * @param recorder The flight recorder.
+	 * @param duration The duration to save, in s (from the last step).
+	 */
+	protected void saveRecord(final JFrame caller, final FlightRecorder recorder,
+			final double duration) {
+		final JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("flight.csv"));
+		if (chooser.showSaveDialog(caller) != JFileChooser.APPROVE_OPTION)
+			return;
+		final File file = chooser.getSelectedFile();
+		try {
+			if (file.getName().endsWith(".imt"))
+				recorder.save(duration, file);
+			else
+				recorder.dump(duration, file);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(caller,
+					R.saveRecordErrorDialogMessage + e.getMessage(),
+					R.saveRecordErrorDialogTitle, JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	public void addTorque(Rocket rocket) {
 		if(rocket != null){
 			rocket.getAngularMotion().position.x += (Double) this.xAxisUserTorque.getValue();
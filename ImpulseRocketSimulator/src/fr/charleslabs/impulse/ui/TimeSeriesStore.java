@@ -0,0 +1,351 @@
+package fr.charleslabs.impulse.ui;
+
+/**
+ * A bounded store of evenly spaced points (one double per column and
+ * per point), whose memory does not grow with the number of points
+ * added. The last points are kept at full resolution in ring buffers;
+ * the points evicted from the rings are downsampled into the history:
+ * buckets of consecutive points, of which only the min and max of
+ * each column are kept. When the history is full, its buckets are
+ * merged two by two, so the history always covers all the points
+ * added since the last clear, at a resolution that halves as it
+ * fills.
+ * <br><br>
+ * The smallest and largest values of each column are maintained as
+ * the points are added (merging buckets never loses them). The store
+ * is thread-safe: points can be added while it is read.
+ * <br><br>
+ * The recent points and the history are both covered by min/max
+ * pyramids: the level l holds the min and max of every bucket of 2^l
+ * consecutive entries, and is updated as the entries are added (one
+ * bucket per level). A plot reads the coarsest level that still has
+ * a bucket per bin, so its cost depends on its width, not on the
+ * capacity.
+ *
+ * @author Charles Grassin
+ */
+final class TimeSeriesStore {
+	private final int columns, capacity;
+
+	/** The last points, by column (rings of capacity points). */
+	private final double[][] recent;
+	private int recentStart, recentSize;
+
+	/** The older points, by column: min and max of buckets of stride
+	 * points. */
+	private final double[][] historyMin, historyMax;
+	private int historySize, stride = 1;
+	/** The bucket being filled by the evicted points. */
+	private final double[] pendingMin, pendingMax;
+	private int pendingSize;
+
+	/** Number of points added. */
+	private long size;
+	private final double[] min, max;
+
+	/** Number of levels of the pyramids (above the entries). */
+	private final int levels;
+	/** Pyramids of the recent points, by column and level (from 1):
+	 * the buckets of 2^l points by index since the last clear, in rings
+	 * of at least (capacity >> l) + 2 slots (a power of 2). */
+	private final double[][][] recentLevelMin, recentLevelMax;
+	/** Pyramids of the history, by column and level (from 1): the
+	 * buckets of 2^l history buckets. */
+	private final double[][][] historyLevelMin, historyLevelMax;
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param columns The number of values of a point.
+	 * @param capacity The number of points kept at full resolution, and
+	 * the number of buckets of the history (>= 2).
+	 */
+	TimeSeriesStore(final int columns, final int capacity) {
+		this.columns = columns;
+		this.capacity = Math.max(2, capacity);
+		recent = new double[columns][this.capacity];
+		historyMin = new double[columns][this.capacity];
+		historyMax = new double[columns][this.capacity];
+		pendingMin = new double[columns];
+		pendingMax = new double[columns];
+		min = new double[columns];
+		max = new double[columns];
+		levels = 31 - Integer.numberOfLeadingZeros(this.capacity);
+		recentLevelMin = new double[columns][levels][];
+		recentLevelMax = new double[columns][levels][];
+		historyLevelMin = new double[columns][levels][];
+		historyLevelMax = new double[columns][levels][];
+		for (int c = 0; c < columns; c++)
+			for (int l = 1; l <= levels; l++) {
+				final int slots = Integer.highestOneBit(
+						((this.capacity >> l) + 2) * 2 - 1);
+				recentLevelMin[c][l - 1] = new double[slots];
+				recentLevelMax[c][l - 1] = new double[slots];
+				historyLevelMin[c][l - 1] = new double[(this.capacity >> l) + 1];
+				historyLevelMax[c][l - 1] = new double[(this.capacity >> l) + 1];
+			}
+		clear();
+	}
+
+	/**
+	 * Appends a point.
+	 *
+	 * @param values The values of the point, by column.
+	 */
+	synchronized void add(final double[] values) {
+		if (recentSize == capacity)
+			evict();
+		final int position = (recentStart + recentSize) % capacity;
+		for (int c = 0; c < columns; c++) {
+			final double value = values[c];
+			recent[c][position] = value;
+			addToLevels(recentLevelMin[c], recentLevelMax[c], size, value,
+					value, true);
+			if (value < min[c])
+				min[c] = value;
+			if (value > max[c])
+				max[c] = value;
+		}
+		recentSize++;
+		size++;
+	}
+
+	/** Moves the oldest recent point to the history. */
+	private void evict() {
+		for (int c = 0; c < columns; c++) {
+			final double value = recent[c][recentStart];
+			if (pendingSize == 0 || value < pendingMin[c])
+				pendingMin[c] = value;
+			if (pendingSize == 0 || value > pendingMax[c])
+				pendingMax[c] = value;
+		}
+		recentStart = (recentStart + 1) % capacity;
+		recentSize--;
+		if (++pendingSize < stride)
+			return;
+
+		// The bucket is complete
+		for (int c = 0; c < columns; c++) {
+			historyMin[c][historySize] = pendingMin[c];
+			historyMax[c][historySize] = pendingMax[c];
+			addToLevels(historyLevelMin[c], historyLevelMax[c], historySize,
+					pendingMin[c], pendingMax[c], false);
+		}
+		historySize++;
+		pendingSize = 0;
+		if (historySize < capacity)
+			return;
+
+		// Downsample the history. With an odd capacity, the last bucket
+		// has no pair: it becomes the start of the pending bucket
+		final boolean isOdd = historySize % 2 != 0;
+		for (int c = 0; c < columns; c++) {
+			final double[] mins = historyMin[c], maxs = historyMax[c];
+			for (int i = 0; i < historySize / 2; i++) {
+				mins[i] = Math.min(mins[2 * i], mins[2 * i + 1]);
+				maxs[i] = Math.max(maxs[2 * i], maxs[2 * i + 1]);
+			}
+			if (isOdd) {
+				pendingMin[c] = mins[historySize - 1];
+				pendingMax[c] = maxs[historySize - 1];
+			}
+		}
+		if (isOdd)
+			pendingSize = stride;
+		historySize /= 2;
+		stride *= 2;
+		// Rebuild the pyramids of the history (once every capacity *
+		// stride / 2 points)
+		for (int c = 0; c < columns; c++)
+			for (int i = 0; i < historySize; i++)
+				addToLevels(historyLevelMin[c], historyLevelMax[c], i,
+						historyMin[c][i], historyMax[c][i], false);
+	}
+
+	/**
+	 * Adds an entry to the buckets of a pyramid: the first entry of a
+	 * bucket resets it. The levels above a bucket that the entry does
+	 * not change are not changed either.
+	 *
+	 * @param levelMins The min of the buckets, by level (from 1).
+	 * @param levelMaxs The max of the buckets, by level (from 1).
+	 * @param index The index of the entry.
+	 * @param low The min of the entry.
+	 * @param high The max of the entry.
+	 * @param isRing True if the levels are rings of buckets (of a power
+	 * of 2 slots).
+	 */
+	private static void addToLevels(final double[][] levelMins,
+			final double[][] levelMaxs, final long index, final double low,
+			final double high, final boolean isRing) {
+		for (int l = 1; l <= levelMins.length; l++) {
+			final double[] mins = levelMins[l - 1], maxs = levelMaxs[l - 1];
+			final long bucket = index >> l;
+			final int slot = (int) (isRing ? bucket & (mins.length - 1) : bucket);
+			if ((index & ((1L << l) - 1)) == 0) {
+				mins[slot] = low;
+				maxs[slot] = high;
+			} else {
+				boolean changed = false;
+				if (low < mins[slot]) {
+					mins[slot] = low;
+					changed = true;
+				}
+				if (high > maxs[slot]) {
+					maxs[slot] = high;
+					changed = true;
+				}
+				if (!changed)
+					return;
+			}
+		}
+	}
+
+	/** Returns the coarsest level whose buckets have at most a given
+	 * number of entries. */
+	private int getLevel(final double entries) {
+		int level = 0;
+		while (level < levels && (2L << level) <= entries)
+			level++;
+		return level;
+	}
+
+	/** Removes all the points. */
+	synchronized void clear() {
+		recentStart = recentSize = historySize = pendingSize = 0;
+		stride = 1;
+		size = 0;
+		for (int c = 0; c < columns; c++) {
+			min[c] = Double.POSITIVE_INFINITY;
+			max[c] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Computes the min and max of a column over bins of consecutive
+	 * points (eg: the pixel columns of a plot): the bin b covers the
+	 * points from b * getSize() / bins. A bucket (of the history or of
+	 * the pyramids) is counted in the bin of its middle point; the
+	 * buckets read have at most getSize() / bins points, so about two
+	 * are read per bin.
+	 *
+	 * @param column The column.
+	 * @param bins The number of bins.
+	 * @param mins The smallest value of each bin (NaN if the bin is
+	 * empty).
+	 * @param maxs The largest value of each bin (NaN if the bin is
+	 * empty).
+	 */
+	synchronized void getRanges(final int column, final int bins,
+			final double[] mins, final double[] maxs) {
+		for (int b = 0; b < bins; b++)
+			mins[b] = maxs[b] = Double.NaN;
+		if (size == 0)
+			return;
+		final double pointsPerBin = (double) size / bins;
+
+		// History, by buckets of 2^level history buckets
+		long point = 0;
+		int level = getLevel(pointsPerBin / stride);
+		for (int i = 0; i < historySize; i += 1 << level) {
+			final int count = Math.min(1 << level, historySize - i);
+			final double low = (level == 0) ? historyMin[column][i]
+					: historyLevelMin[column][level - 1][i >> level];
+			final double high = (level == 0) ? historyMax[column][i]
+					: historyLevelMax[column][level - 1][i >> level];
+			final long length = (long) count * stride;
+			accumulate((int) ((point + (length - 1) / 2) * bins / size),
+					low, high, mins, maxs);
+			point += length;
+		}
+		// The pending bucket
+		if (pendingSize > 0) {
+			accumulate((int) ((point + (pendingSize - 1) / 2) * bins / size),
+					pendingMin[column], pendingMax[column], mins, maxs);
+			point += pendingSize;
+		}
+
+		// The recent points: one by one up to the first bucket of the
+		// level (the buckets before may have lost points), then by
+		// buckets of 2^level points
+		level = getLevel(pointsPerBin);
+		final long bucketSize = 1L << level;
+		final double[] ring = recent[column];
+		while (point < size && (point & (bucketSize - 1)) != 0) {
+			final double value = ring[(int) ((recentStart + point - (size
+					- recentSize)) % capacity)];
+			accumulate((int) (point * bins / size), value, value, mins, maxs);
+			point++;
+		}
+		for (; point < size; point += bucketSize) {
+			final long length = Math.min(bucketSize, size - point);
+			final double low, high;
+			if (level == 0)
+				low = high = ring[(int) ((recentStart + point - (size
+						- recentSize)) % capacity)];
+			else {
+				final double[] levelMins = recentLevelMin[column][level - 1];
+				final int slot = (int) ((point >> level) & (levelMins.length - 1));
+				low = levelMins[slot];
+				high = recentLevelMax[column][level - 1][slot];
+			}
+			accumulate((int) ((point + (length - 1) / 2) * bins / size),
+					low, high, mins, maxs);
+		}
+	}
+
+	/**
+	 * Copies the values of a column for a range of points, if they are
+	 * still at full resolution.
+	 *
+	 * @param column The column.
+	 * @param from The first point.
+	 * @param to The end of the range (excluded).
+	 * @param values The destination.
+	 * @return False if some points of the range have been downsampled
+	 * (or do not exist).
+	 */
+	synchronized boolean getRecent(final int column, final long from,
+			final long to, final double[] values) {
+		final long first = size - recentSize;
+		if (from < first || to > size)
+			return false;
+		final double[] ring = recent[column];
+		for (long point = from; point < to; point++)
+			values[(int) (point - from)] = ring[(int) ((recentStart
+					+ point - first) % capacity)];
+		return true;
+	}
+
+	private static void accumulate(final int bin, final double low,
+			final double high, final double[] mins, final double[] maxs) {
+		if (!(mins[bin] <= low))
+			mins[bin] = low;
+		if (!(maxs[bin] >= high))
+			maxs[bin] = high;
+	}
+
+	// --- Getters ---
+	/** Returns the number of points added since the last clear. */
+	synchronized long getSize() {
+		return size;
+	}
+
+	/** Returns the smallest value of a column (+infinity if empty). */
+	synchronized double getMin(final int column) {
+		return min[column];
+	}
+
+	/** Returns the largest value of a column (-infinity if empty). */
+	synchronized double getMax(final int column) {
+		return max[column];
+	}
+
+	int getColumnCount() {
+		return columns;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+}
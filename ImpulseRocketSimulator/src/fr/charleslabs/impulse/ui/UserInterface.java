@@ -1,6 +1,7 @@
 package fr.charleslabs.impulse.ui;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.HeadlessException;
 import java.awt.event.ActionEvent;
@@ -11,49 +12,74 @@ import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JTabbedPane;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import fr.charleslabs.impulse.physics.PhysicsEngine;
 import fr.charleslabs.impulse.rocket.Rocket;
+import fr.charleslabs.impulse.simulation.FlightRecorder;
 
 /**
  * This class is the main user interface of the simulator. It calls the other
  * user interface elements and lays out the interface. <br>
  * <br>
- * Additionally, it also calls the physics engine and runs as a thread to
- * provide the real-time display.
+ * Additionally, it also calls the physics engine and provides the real-time
+ * display. The display is refreshed by a Swing timer on the event dispatch
+ * thread: each tick adds the states sampled by the engine since the last
+ * tick to the graphs, and only repaints the tab that is visible. Ticks are
+ * skipped while the engine has not sampled anything new, and the timer
+ * slows down when the event dispatch thread cannot keep up (and speeds up
+ * again once it does).
  * 
  * @author Charles Grassin
  * 
  */
-final public class UserInterface extends JFrame implements Runnable,
-		ActionListener {
+final public class UserInterface extends JFrame implements ActionListener {
 	// Constants
 	private static final long serialVersionUID = 1L;
 	private final int refreshFrequency = 30;
+	/** Longest delay between two refreshes when the display lags, in ms. */
+	private static final int maxRefreshDelay = 250;
+	/** Number of graph samples buffered between two refreshes. */
+	private static final int sampleCapacity = 4096;
 	private static final String logoPath = "/res/logo.png";
+	/** Duration of flight kept by the flight recorder, in s. */
+	private static final double recordDuration = 60;
 	
 	// Status variables
 	private boolean isRunning = false;
+	/** System time of the last refresh, in ns. */
+	private long lastRefreshTime;
 
 	// UI - Swing variables
 	private SidebarControlsPanel controls = new SidebarControlsPanel(this);
 	private RocketCreatorPanel creatorPanel= new RocketCreatorPanel(this);
 	private Rocket3DView view3D;
+	private JTabbedPane tabs = new JTabbedPane();
 	private GraphsPanel angularGraphPanel= new GraphsPanel(1000.0d / refreshFrequency, "deg"), linearGraphPanel= new GraphsPanel(1000.0d / refreshFrequency, "m");
 
 	// Other variable
 	protected PhysicsEngine engine = new PhysicsEngine();
 	protected Rocket rocket;
+	/** Records every step when enabled in the sidebar (null until the
+	 * first recorded flight). */
+	private FlightRecorder recorder;
+	/** Samples the rocket for the graphs, on the engine thread. */
+	private GraphSampler sampler;
+	/** Drives the display refresh, on the event dispatch thread. */
+	private final Timer refreshTimer = new Timer(1000 / refreshFrequency, this);
 	
 	public UserInterface() throws HeadlessException {
 		super(R.windowTitle);
 		
 		// Load UI components
-		if (Rocket3DView.isCompatible())
+		if (Rocket3DView.isCompatible()) {
 			view3D = new Rocket3DView();
+			view3D.setSource(engine);
+		}
 
 		// Tabs
-		JTabbedPane tabs = new JTabbedPane();
 		tabs.addTab(R.angularTabTitle, null, angularGraphPanel,
 				R.angularTabTooltip);
 		tabs.addTab(R.linearTabTitle, null, linearGraphPanel,
@@ -63,6 +89,12 @@ final public class UserInterface extends JFrame implements Runnable,
 					R.view3DTabTooltip);
 		tabs.addTab(R.settingsTabTitle, null, creatorPanel,
 				R.settingsTabTooltip);
+		tabs.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				updateView3DAnimation();
+			}
+		});
 		try {
 			tabs.addTab(R.helpTabTitle, null, new HelpPanel(),
 					R.helpTabTooltip);
@@ -84,33 +116,33 @@ final public class UserInterface extends JFrame implements Runnable,
 		try {
 			rocket = new Rocket();
 			engine.addObject(rocket);
+			sampler = new GraphSampler(rocket, 1.0d / refreshFrequency,
+					sampleCapacity);
+			engine.addStepListener(sampler);
 			creatorPanel.makeRocket(rocket);
 			controls.setPID(rocket);
 		} catch (Exception ignored) {}
 	}
 
-	// --- Thread management ---
+	// --- Refresh management ---
 	/** Resets all the data displayed on the user interface. */
 	private void reset() {
 		this.angularGraphPanel.clear();
 		this.linearGraphPanel.clear();
 	}
 
-	/** Stops the running thread if it is running. */
+	/** Stops the simulation if it is running (the next refresh
+	 * terminates it). */
 	private void stop() {
 		isRunning = false;
 	}
 
-	/** Starts the user interface thread (see public void run()) */
+	/** Starts the simulation and its display refresh. */
 	private void start() {
-		if (!isRunning) {
-			isRunning = true;
-			new Thread(this).start();
-		}
-	}
+		if (isRunning)
+			return;
+		isRunning = true;
 
-	@Override
-	public void run() {
 		// Prepare UI
 		controls.updateInterface(true);
 		this.setTitle(R.windowTitle + R.runningWindowTitle);
@@ -118,46 +150,119 @@ final public class UserInterface extends JFrame implements Runnable,
 		// Init. physics engine before simulation
 		engine.reset();
 		controls.addTorque(rocket);
+		controls.updateTimeFactor(engine);
+		startRecorder();
 
 		// Simulation
+		sampler.clear();
+		lastRefreshTime = System.nanoTime();
+		refreshTimer.setDelay(1000 / refreshFrequency);
+		refreshTimer.start();
 		engine.start(true);
-		while (isRunning && engine.isRunning()) {
-			try {
-				Thread.sleep(1000 / refreshFrequency);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			refreshView((Rocket)engine.getObjects().get(0));
-			this.repaint();
+		updateView3DAnimation();
+	}
+
+	/**
+	 * Attaches the flight recorder to the engine if recording is
+	 * enabled in the sidebar (and detaches it otherwise).
+	 */
+	private void startRecorder() {
+		if (recorder != null)
+			engine.removeStepListener(recorder);
+		if (!controls.recordCheckBox.isSelected())
+			return;
+		try {
+			if (recorder == null)
+				recorder = new FlightRecorder(rocket, FlightRecorder.getCapacity(
+						recordDuration, engine.getFrequency()));
+			recorder.clear();
+			engine.addStepListener(recorder);
+			controls.saveRecordBtn.setEnabled(true);
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
+	}
+
+	/** Ends the simulation and restores the user interface. */
+	private void finish() {
+		refreshTimer.stop();
 		engine.stop();
 
 		// Post-simulation
 		isRunning = false;
 		controls.updateInterface(false);
 		this.setTitle(R.windowTitle);
+		updateView3DAnimation();
+	}
+
+	/** Animates the 3D view only while the simulation runs and the view
+	 * is the visible tab. */
+	private void updateView3DAnimation() {
+		if (view3D != null)
+			view3D.setAnimated(isRunning && tabs.getSelectedComponent() == view3D);
 	}
 
 	/**
-	 * Adds/updates the current simulator data to the interface.
-	 * 
-	 * @param rocket
-	 *            The current simulated rocket.
+	 * Refreshes the display (called by the refresh timer): adds the new
+	 * samples to the graphs, repaints the visible tab and adapts the
+	 * refresh rate to the load of the event dispatch thread. Once the
+	 * engine has finished, the last samples (eg: the landing) are
+	 * displayed and the simulation ends.
 	 */
-	private void refreshView(final Rocket rocket) {
-		if (view3D != null)
-			view3D.setPostion(rocket.getLinearMotion().position.z,
-					rocket.getAngularMotion().position.x,
-					rocket.getAngularMotion().position.y);
+	private void refresh() {
+		final boolean isFinished = !isRunning || sampler.isFinished();
+		if (!isFinished) {
+			adaptRefreshDelay();
+			controls.updateTimeFactor(engine);
+		}
+
+		// Nothing new: nothing to repaint
+		if (refreshView() > 0) {
+			// The 3D view animates itself, the other tabs are static
+			final Component visible = tabs.getSelectedComponent();
+			if (visible instanceof GraphsPanel)
+				visible.repaint();
+		}
+		if (isFinished)
+			finish();
+	}
+
+	/**
+	 * Slows the refresh timer down when its ticks come late (the event
+	 * dispatch thread is busy: ticks are coalesced), and brings it back
+	 * to the refresh frequency when they are on time.
+	 */
+	private void adaptRefreshDelay() {
+		final long now = System.nanoTime();
+		final double interval = (now - lastRefreshTime) / 1e6;
+		lastRefreshTime = now;
+
+		final int delay = refreshTimer.getDelay(), minDelay = 1000 / refreshFrequency;
+		if (interval > 1.5 * delay)
+			refreshTimer.setDelay(Math.min(maxRefreshDelay, delay * 3 / 2));
+		else if (delay > minDelay && interval < 1.1 * delay)
+			refreshTimer.setDelay(Math.max(minDelay, delay * 7 / 8));
+	}
 
-		this.angularGraphPanel.addPoint(rocket.getAngularMotion());
-		this.linearGraphPanel.addPoint(rocket.getLinearMotion());
+	/**
+	 * Adds/updates the current simulator data to the interface. The graphs
+	 * get the states the sampler took every 1 / refreshFrequency s of
+	 * simulation time, whatever the actual refresh rate and time factor.
+	 * 
+	 * @return The number of points added to the graphs.
+	 */
+	private int refreshView() {
+		return sampler.drain(angularGraphPanel, linearGraphPanel);
 	}
 
 	@Override
 	public void actionPerformed(ActionEvent event) {
+		// Refresh timer
+		if (event.getSource() == refreshTimer) {
+			refresh();
+		}
 		// Start and Stop btn
-		if (event.getSource() == controls.startStopBtn) {
+		else if (event.getSource() == controls.startStopBtn) {
 			if (!this.isRunning) {
 				this.reset();
 				this.start();
@@ -168,10 +273,15 @@ final public class UserInterface extends JFrame implements Runnable,
 		else if (event.getSource() == controls.addTorqueBtn) {
 			controls.addTorque(rocket);
 		}
+		// Save the recorded flight btn
+		else if (event.getSource() == controls.saveRecordBtn) {
+			if (recorder != null)
+				controls.saveRecord(this, recorder, recordDuration);
+		}
 		// Connect to serial port btn
 		else if (event.getSource() == controls.serialConnectBtn) {
 			this.stop();
-			controls.serialConnect(this,rocket);
+			controls.serialConnect(this,rocket,engine);
 		}
 		// PID Apply Btn
 		else if (event.getSource() == controls.pidApplyBtn) {
@@ -82,6 +82,36 @@ public class SimplyPID {
         return checkLimits((kP * error) + (kI * integralError) + (kD * derivativeError));
     }
     
+    /** Number of values of the dynamic state of the controller. */
+    public static final int STATE_SIZE = 3;
+
+    /**
+     * Copies the dynamic state of the controller (previous time, last
+     * error and integral error) in an array, to restore it later.
+     *
+     * @param state The destination array.
+     * @param offset The index of the first value ({@link #STATE_SIZE}
+     * values are written).
+     */
+    public void saveState(final double[] state, final int offset) {
+        state[offset] = previousTime;
+        state[offset + 1] = lastError;
+        state[offset + 2] = integralError;
+    }
+
+    /**
+     * Restores the dynamic state of the controller from an array
+     * written by {@link #saveState(double[], int)}.
+     *
+     * @param state The source array.
+     * @param offset The index of the first value.
+     */
+    public void restoreState(final double[] state, final int offset) {
+        previousTime = state[offset];
+        lastError = state[offset + 1];
+        integralError = state[offset + 2];
+    }
+
     /**
      * Resets the integral and derivative errors.
      */